@@ -136,12 +136,8 @@ public class ClusteringDemoActivity extends BaseDemoActivity {
             }
 
             public void onStopTrackingTouch(SeekBar seekBar) {
-                setProvider();
-                if (getMap() != null) {
-                    getMap().clear();
-                }
-                mOverlay = getMap().addTileOverlay(new TileOverlayOptions().tileProvider(mProvider));
-                changeClusters();
+                GradientUtils.showYear(mProvider, progressChangedValue);
+                mOverlay.clearTileCache();
 
 
                 Toast.makeText(ClusteringDemoActivity.this, "Seek bar progress is : 201" + progressChangedValue,
@@ -149,7 +145,7 @@ public class ClusteringDemoActivity extends BaseDemoActivity {
             }
 
             private void setProvider() {
-                mProvider = GradientUtils.makeProvider(progressChangedValue,
+                mProvider = GradientUtils.makeTimedProvider(progressChangedValue,
                         getResources(), getPackageName());
             }
 
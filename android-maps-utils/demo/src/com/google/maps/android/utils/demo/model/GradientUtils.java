@@ -1,21 +1,23 @@
 package com.google.maps.android.utils.demo.model;
 
+import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Color;
 
-import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.heatmaps.BoxBlurConvolver;
+import com.google.maps.android.heatmaps.ColumnarPointStore;
 import com.google.maps.android.heatmaps.Gradient;
 import com.google.maps.android.heatmaps.HeatmapTileProvider;
-import com.google.maps.android.heatmaps.WeightedLatLng;
+import com.google.maps.android.heatmaps.IndexedPngTileEncoder;
+import com.google.maps.android.heatmaps.MappedPointStore;
+import com.google.maps.android.heatmaps.TimedPointStore;
+import com.google.maps.android.heatmaps.WeightedLatLngReader;
+import com.google.maps.android.quadtree.PointIndexQuadTree;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Scanner;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 
 
 public class GradientUtils {
@@ -38,40 +40,116 @@ public class GradientUtils {
 
     private static final double ALT_HEATMAP_OPACITY = 1;
 
-    public static HeatmapTileProvider makeProvider(int yearId, Resources res, String packName) {
+    private static final int TILE_CACHE_SIZE = 8 * 1024 * 1024;
+
+    private static final int FIRST_YEAR = 2010;
+
+    private static final int YEAR_COUNT = 10;
+
+    /**
+     * Makes a provider of the data of a year, memory-mapped from a point file converted from
+     * the JSON resource on first use, with its index read from a snapshot.
+     */
+    public static HeatmapTileProvider makeProvider(int yearId, Context context) {
         try {
-            return new HeatmapTileProvider.Builder()
-                    .weightedData(getListOnPos(yearId, res, packName))
-                    .radius(ALT_HEATMAP_RADIUS)
-                    .opacity(ALT_HEATMAP_OPACITY)
-                    .gradient(GradientUtils.ALT_HEATMAP_GRADIENT)
+            File file = new File(context.getCacheDir(), "d201" + yearId + ".wpts");
+            MappedPointStore store;
+            try {
+                store = MappedPointStore.map(file);
+            } catch (IOException e) {
+                // Missing, or written in an older format
+                convertYear(yearId, context.getResources(), context.getPackageName(), file);
+                store = MappedPointStore.map(file);
+            }
+            PointIndexQuadTree index = PointIndexQuadTree.load(store,
+                    new File(context.getCacheDir(), "d201" + yearId + ".index"),
+                    PointIndexQuadTree.hash(store));
+            return makeBuilder()
+                    .pointStore(store, index)
                     .build();
-        } catch (JSONException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
 
         return null;
     }
 
-    private static List<WeightedLatLng> getListOnPos(int pos, Resources res, String packName) throws JSONException {
-        ArrayList<WeightedLatLng> list = new ArrayList<>();
-        String file = "d201" + Integer.toString(pos);
+    /**
+     * Makes a provider of the data of every year, timestamped with its year, showing one year.
+     * Years are then switched with showYear, without loading or indexing the data again.
+     */
+    public static HeatmapTileProvider makeTimedProvider(int yearId, Resources res, String packName) {
         try {
-            int sourceId = res.getIdentifier(file, "raw", packName);
-            InputStream inputStream = res.openRawResource(sourceId);
-            String json = new Scanner(inputStream).useDelimiter("\\A").next();
-            JSONArray array = new JSONArray(json);
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject object = array.getJSONObject(i);
-                double lat = object.getDouble("lat");
-                double lng = object.getDouble("lng");
-                double weight = object.getDouble("weight");
-                list.add(new WeightedLatLng(new LatLng(lat, lng), weight));
+            ColumnarPointStore store = new ColumnarPointStore();
+            long[] times = new long[0];
+            for (int pos = 0; pos < YEAR_COUNT; pos++) {
+                int start = store.size();
+                readYear(pos, res, packName, store);
+                times = Arrays.copyOf(times, store.size());
+                Arrays.fill(times, start, store.size(), FIRST_YEAR + pos);
             }
-            return list;
-        } catch (Resources.NotFoundException err) {
+            HeatmapTileProvider provider = makeBuilder()
+                    .pointStore(new TimedPointStore(store, times, 1))
+                    .build();
+            showYear(provider, yearId);
+            return provider;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    public static void showYear(HeatmapTileProvider provider, int yearId) {
+        provider.setTimeWindow(FIRST_YEAR + yearId, FIRST_YEAR + yearId + 1);
+    }
+
+    private static HeatmapTileProvider.Builder makeBuilder() {
+        return new HeatmapTileProvider.Builder()
+                .radius(ALT_HEATMAP_RADIUS)
+                .opacity(ALT_HEATMAP_OPACITY)
+                .gradient(GradientUtils.ALT_HEATMAP_GRADIENT)
+                .convolver(new BoxBlurConvolver())
+                .tileEncoder(new IndexedPngTileEncoder())
+                .tileCacheSize(TILE_CACHE_SIZE);
+    }
+
+    /**
+     * Converts the JSON resource of a year into a point file.
+     */
+    private static void convertYear(int pos, Resources res, String packName, File file)
+            throws IOException {
+        ColumnarPointStore store = new ColumnarPointStore();
+        readYear(pos, res, packName, store);
+        // Written aside first, so that an interrupted conversion is not taken for a point file
+        File partial = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(partial);
+        try {
+            MappedPointStore.write(store, out);
+        } finally {
+            out.close();
+        }
+        if (!partial.renameTo(file)) {
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    /**
+     * Streams the points of a year into a store, without reading the whole file into memory.
+     */
+    private static void readYear(int pos, Resources res, String packName,
+                                 ColumnarPointStore store) throws IOException {
+        String file = "d201" + Integer.toString(pos);
+        int sourceId = res.getIdentifier(file, "raw", packName);
+        if (sourceId == 0) {
             System.out.println(file);
-            return null;
+            return;
+        }
+        WeightedLatLngReader reader = new WeightedLatLngReader(res.openRawResource(sourceId));
+        try {
+            reader.readInto(store);
+        } finally {
+            reader.close();
         }
     }
 }
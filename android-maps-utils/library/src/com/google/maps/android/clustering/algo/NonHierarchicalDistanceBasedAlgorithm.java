@@ -31,7 +31,9 @@ import com.google.maps.android.clustering.ClusterItem;
 import com.google.maps.android.geometry.Bounds;
 import com.google.maps.android.geometry.Point;
 import com.google.maps.android.projection.SphericalMercatorProjection;
+import com.google.maps.android.quadtree.FlatPointQuadTree;
 import com.google.maps.android.quadtree.PointQuadTree;
+import com.google.maps.android.quadtree.PointTree;
 
 /**
  * A simple clustering algorithm with O(nlog n) performance. Resulting clusters are not
@@ -57,7 +59,8 @@ public class NonHierarchicalDistanceBasedAlgorithm<T extends ClusterItem> implem
     /**
      * Any modifications should be synchronized on mQuadTree.
      */
-    private final PointQuadTree<QuadItem<T>> mQuadTree = new PointQuadTree<QuadItem<T>>(0, 1, 0, 1);
+    private final PointTree<QuadItem<T>> mQuadTree =
+            new FlatPointQuadTree<QuadItem<T>>(0, 1, 0, 1);
 
     private static final SphericalMercatorProjection PROJECTION = new SphericalMercatorProjection(1);
 
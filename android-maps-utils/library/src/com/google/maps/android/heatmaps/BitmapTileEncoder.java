@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import android.graphics.Bitmap;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encodes tiles with Bitmap.compress, by default into PNG.
+ * <p/>
+ * The quality is ignored for PNG, which is always lossless. WEBP is usually smaller, but slower
+ * to encode.
+ */
+public class BitmapTileEncoder implements TileEncoder {
+
+    private final Bitmap.CompressFormat mFormat;
+
+    private final int mQuality;
+
+    /**
+     * Creates an encoder producing PNG tiles.
+     */
+    public BitmapTileEncoder() {
+        this(Bitmap.CompressFormat.PNG, 100);
+    }
+
+    /**
+     * @param format  Image format to compress into
+     * @param quality Compression quality in [0, 100], for lossy formats
+     */
+    public BitmapTileEncoder(Bitmap.CompressFormat format, int quality) {
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("Quality not within bounds.");
+        }
+        mFormat = format;
+        mQuality = quality;
+    }
+
+    @Override
+    public byte[] encode(int[] pixels, int dim, int[] palette) {
+        TileBuffers buffers = TileBuffers.get();
+        int[] colors = pixels;
+        if (palette != null) {
+            colors = buffers.colors(dim * dim);
+            for (int i = 0; i < dim * dim; i++) {
+                colors[i] = palette[pixels[i]];
+            }
+        }
+
+        // Every pixel of the reused bitmap is overwritten
+        Bitmap bitmap = buffers.bitmap(dim);
+        // (int[] pixels, int offset, int stride, int x, int y, int width, int height)
+        bitmap.setPixels(colors, 0, dim, 0, 0, dim, dim);
+
+        // Compress into the reused stream; the returned array is the only copy made
+        ByteArrayOutputStream stream = buffers.stream();
+        bitmap.compress(mFormat, mQuality, stream);
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Approximates a bell shaped kernel by three successive box blurs in each direction.
+ * <p/>
+ * Box widths are chosen so that the combined blur has the same variance as the given kernel,
+ * and the result is scaled to the same total weight. Each box blur uses a running sum, so the
+ * cost per pixel does not depend on the radius. The result is close to, but not the same as,
+ * that of {@link ExactConvolver}, and closest for a {@link GaussianKernel}: other kernels get
+ * a bell of the same variance, which loses their edge at the radius.
+ */
+public class BoxBlurConvolver implements Convolver {
+
+    /**
+     * Number of box blurs applied in each direction.
+     */
+    private static final int PASSES = 3;
+
+    @Override
+    public void convolve(float[] grid, int paddedDim, double[] kernel, float[] output) {
+        int radius = kernel.length / 2;
+        int dim = paddedDim - 2 * radius;
+
+        // Match the variance and the total weight of the kernel
+        double mass = 0;
+        double moment = 0;
+        for (int i = -radius; i <= radius; i++) {
+            mass += kernel[i + radius];
+            moment += i * i * kernel[i + radius];
+        }
+        int[] boxRadii = boxRadii(moment / mass, radius);
+        double scale = mass;
+        for (int boxRadius : boxRadii) {
+            scale /= 2 * boxRadius + 1;
+        }
+        // Scale applies once per direction
+        scale *= scale;
+
+        TileBuffers buffers = TileBuffers.get();
+        int size = paddedDim * paddedDim;
+        float[] scratch = buffers.scratch(size);
+        double[] sums = buffers.sums(paddedDim);
+
+        // Horizontal passes over every row, ping-ponging between grid and scratch
+        float[] source = grid;
+        float[] target = scratch;
+        float[] swap;
+        for (int boxRadius : boxRadii) {
+            blurRows(source, target, paddedDim, boxRadius);
+            swap = source;
+            source = target;
+            target = swap;
+        }
+        // Vertical passes over the non padded columns, adding and removing whole rows from the
+        // running sums. Only the last pass needs to crop the padded rows.
+        for (int i = 0; i < PASSES - 1; i++) {
+            blurColumns(source, target, paddedDim, boxRadii[i], sums, radius, dim, 0, paddedDim,
+                    paddedDim, 0, 1);
+            swap = source;
+            source = target;
+            target = swap;
+        }
+        blurColumns(source, output, paddedDim, boxRadii[PASSES - 1], sums, radius, dim, radius,
+                dim, dim, radius, scale);
+    }
+
+    /**
+     * Box sizes for a given variance, after http://www.peterkovesi.com/papers/FastGaussianSmoothing.pdf
+     *
+     * @param variance  variance of the kernel to approximate
+     * @param maxRadius combined radius of the boxes may not exceed this
+     * @return radius of each box
+     */
+    static int[] boxRadii(double variance, int maxRadius) {
+        double idealWidth = Math.sqrt(12 * variance / PASSES + 1);
+        int lowerWidth = (int) Math.floor(idealWidth);
+        if (lowerWidth % 2 == 0) lowerWidth--;
+        int upperWidth = lowerWidth + 2;
+        int lowerCount = (int) Math.round((12 * variance - PASSES * lowerWidth * lowerWidth
+                - 4 * PASSES * lowerWidth - 3 * PASSES) / (-4 * lowerWidth - 4));
+
+        int[] radii = new int[PASSES];
+        int total = 0;
+        for (int i = 0; i < PASSES; i++) {
+            radii[i] = ((i < lowerCount) ? lowerWidth : upperWidth) / 2;
+            total += radii[i];
+        }
+        // Never spread further than the padding allows
+        for (int i = PASSES - 1; total > maxRadius; i = (i + PASSES - 1) % PASSES) {
+            if (radii[i] > 0) {
+                radii[i]--;
+                total--;
+            }
+        }
+        return radii;
+    }
+
+    /**
+     * Box blurs every row of a grid, treating values outside the grid as zero.
+     */
+    private static void blurRows(float[] source, float[] target, int dim, int boxRadius) {
+        int row, x;
+        double sum;
+        for (int y = 0; y < dim; y++) {
+            row = y * dim;
+            sum = 0;
+            for (x = 0; x < boxRadius && x < dim; x++) {
+                sum += source[row + x];
+            }
+            for (x = 0; x < dim; x++) {
+                if (x + boxRadius < dim) sum += source[row + x + boxRadius];
+                target[row + x] = (float) sum;
+                if (x - boxRadius >= 0) sum -= source[row + x - boxRadius];
+            }
+        }
+    }
+
+    /**
+     * Box blurs columns [first, first + count) of a grid, treating values outside the grid as zero.
+     * Rows [firstRow, firstRow + rowCount) are written to the target, where column x of row y ends
+     * up at index (y - firstRow) * stride + x - shift.
+     */
+    private static void blurColumns(float[] source, float[] target, int dim, int boxRadius,
+                                    double[] sums, int first, int count, int firstRow,
+                                    int rowCount, int stride, int shift, double scale) {
+        int end = first + count;
+        int lastRow = firstRow + rowCount;
+        int x, y, row;
+        for (x = first; x < end; x++) {
+            sums[x] = 0;
+        }
+        for (y = firstRow - boxRadius - 1; y < firstRow + boxRadius; y++) {
+            // Pre-fill the running sums with the window preceding the first written row
+            if (y < 0 || y >= dim) continue;
+            row = y * dim;
+            for (x = first; x < end; x++) {
+                sums[x] += source[row + x];
+            }
+        }
+        for (y = firstRow; y < lastRow; y++) {
+            if (y + boxRadius < dim) {
+                row = (y + boxRadius) * dim;
+                for (x = first; x < end; x++) {
+                    sums[x] += source[row + x];
+                }
+            }
+            if (y - boxRadius - 1 >= 0) {
+                row = (y - boxRadius - 1) * dim;
+                for (x = first; x < end; x++) {
+                    sums[x] -= source[row + x];
+                }
+            }
+            row = (y - firstRow) * stride - shift;
+            for (x = first; x < end; x++) {
+                target[row + x] = (float) (sums[x] * scale);
+            }
+        }
+    }
+}
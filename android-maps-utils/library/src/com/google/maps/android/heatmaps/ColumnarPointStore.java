@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.projection.SphericalMercatorProjection;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Stores weighted points in parallel primitive arrays: 20 bytes per point, instead of the
+ * WeightedLatLng, Point and LatLng objects of each point otherwise.
+ * Points can be added but not removed. This class is not thread safe for writes.
+ */
+public class ColumnarPointStore implements WeightedPointStore {
+
+    private static final SphericalMercatorProjection sProjection =
+            new SphericalMercatorProjection(HeatmapTileProvider.WORLD_WIDTH);
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private double[] mX;
+
+    private double[] mY;
+
+    private float[] mIntensity;
+
+    private int mSize;
+
+    public ColumnarPointStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of points to allocate room for
+     */
+    public ColumnarPointStore(int capacity) {
+        mX = new double[capacity];
+        mY = new double[capacity];
+        mIntensity = new float[capacity];
+    }
+
+    /**
+     * Creates a store of LatLngs with the default intensity.
+     */
+    public static ColumnarPointStore fromLatLngs(Collection<LatLng> data) {
+        ColumnarPointStore store = new ColumnarPointStore(data.size());
+        for (LatLng latLng : data) {
+            store.add(latLng);
+        }
+        return store;
+    }
+
+    /**
+     * Creates a store of WeightedLatLngs.
+     */
+    public static ColumnarPointStore fromWeightedLatLngs(Collection<WeightedLatLng> data) {
+        ColumnarPointStore store = new ColumnarPointStore(data.size());
+        for (WeightedLatLng weightedLatLng : data) {
+            Point point = weightedLatLng.getPoint();
+            store.addPoint(point.x, point.y, weightedLatLng.getIntensity());
+        }
+        return store;
+    }
+
+    /**
+     * Adds a LatLng with the default intensity.
+     */
+    public void add(LatLng latLng) {
+        add(latLng, WeightedLatLng.DEFAULT_INTENSITY);
+    }
+
+    /**
+     * Adds a LatLng.
+     *
+     * @param latLng    location of the point
+     * @param intensity intensity of the point: see {@link WeightedLatLng}
+     */
+    public void add(LatLng latLng, double intensity) {
+        Point point = sProjection.toPoint(latLng);
+        addPoint(point.x, point.y, intensity);
+    }
+
+    /**
+     * Adds a point already in world coordinates.
+     *
+     * @param x         x coordinate, in [0, WORLD_WIDTH]
+     * @param y         y coordinate, in [0, WORLD_WIDTH]
+     * @param intensity intensity of the point; the default intensity if negative
+     */
+    public void addPoint(double x, double y, double intensity) {
+        if (mSize == mX.length) {
+            grow(Math.max(DEFAULT_CAPACITY, mSize + (mSize >> 1)));
+        }
+        mX[mSize] = x;
+        mY[mSize] = y;
+        mIntensity[mSize] = (float) (intensity >= 0 ? intensity : WeightedLatLng.DEFAULT_INTENSITY);
+        mSize++;
+    }
+
+    /**
+     * Releases the room allocated beyond the points added.
+     */
+    public void trimToSize() {
+        grow(mSize);
+    }
+
+    private void grow(int capacity) {
+        mX = Arrays.copyOf(mX, capacity);
+        mY = Arrays.copyOf(mY, capacity);
+        mIntensity = Arrays.copyOf(mIntensity, capacity);
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public double getX(int index) {
+        return mX[index];
+    }
+
+    @Override
+    public double getY(int index) {
+        return mY[index];
+    }
+
+    @Override
+    public double getIntensity(int index) {
+        return mIntensity[index];
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import android.graphics.Color;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+import com.google.maps.android.geometry.Bounds;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.quadtree.PointIndexQuadTree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Tile provider blending several heatmap layers, each with its own gradient and weight, into a
+ * single tile overlay.
+ * <p/>
+ * Compared to an overlay per layer, the points of every layer are found in one search of a
+ * shared index, and each tile is colored and encoded once. Each layer is bucketed into its own
+ * grid and convolved separately, skipping layers with no points near the tile. The colors of
+ * the layers are then averaged, weighted by their alpha and the weight of their layer.
+ */
+public class CompositeHeatmapTileProvider implements TileProvider {
+
+    /**
+     * Maximum number of layers
+     */
+    public static final int MAX_LAYERS = 32;
+
+    /**
+     * Values per pixel of a blend: sums of red, green, blue and alpha weighted by alpha, then
+     * the combined coverage
+     */
+    static final int BLEND_CHANNELS = 5;
+
+    private final LayeredPoints mPoints;
+
+    private final PointIndexQuadTree mTree;
+
+    private final int mRadius;
+
+    private final double[] mKernel;
+
+    private final Convolver mConvolver;
+
+    private final TileEncoder mTileEncoder;
+
+    /**
+     * Color map of each layer
+     */
+    private final int[][] mColorMaps;
+
+    /**
+     * Maximum intensity of each layer, for each zoom level
+     */
+    private final double[][] mMaxIntensity;
+
+    /**
+     * Weight of each layer; replaced rather than modified
+     */
+    private volatile double[] mWeights;
+
+    /**
+     * Builder class for the CompositeHeatmapTileProvider.
+     */
+    public static class Builder {
+        private final List<Collection<WeightedLatLng>> layers =
+                new ArrayList<Collection<WeightedLatLng>>();
+        private final List<Gradient> gradients = new ArrayList<Gradient>();
+        private final List<Double> weights = new ArrayList<Double>();
+
+        private int radius = HeatmapTileProvider.DEFAULT_RADIUS;
+        private double opacity = HeatmapTileProvider.DEFAULT_OPACITY;
+        private Kernel kernel = new GaussianKernel();
+        private Convolver convolver = new ExactConvolver();
+        private TileEncoder tileEncoder = new BitmapTileEncoder();
+
+        /**
+         * Constructor for builder.
+         * No required parameters here, but user must add at least one layer.
+         */
+        public Builder() {
+        }
+
+        /**
+         * Adds a layer in builder.
+         *
+         * @param data     Points of the layer. Should be non-empty.
+         * @param gradient Gradient to color the layer with
+         * @param weight   Weight of the layer in the blend, in range [0, 1]: 1 blends it at the
+         *                 opacity of its gradient, 0 hides it
+         * @return updated builder object
+         */
+        public Builder layer(Collection<WeightedLatLng> data, Gradient gradient, double weight) {
+            if (data.isEmpty()) {
+                throw new IllegalArgumentException("No input points.");
+            }
+            if (layers.size() == MAX_LAYERS) {
+                throw new IllegalArgumentException("Too many layers.");
+            }
+            checkWeight(weight);
+            layers.add(data);
+            gradients.add(gradient);
+            weights.add(weight);
+            return this;
+        }
+
+        /**
+         * Setter for radius in builder
+         *
+         * @param val Radius of convolution to use, in terms of pixels.
+         *            Must be within minimum and maximum values of 10 to 50 inclusive.
+         * @return updated builder object
+         */
+        public Builder radius(int val) {
+            radius = val;
+            // Check that radius is within bounds.
+            if (radius < HeatmapTileProvider.MIN_RADIUS
+                    || radius > HeatmapTileProvider.MAX_RADIUS) {
+                throw new IllegalArgumentException("Radius not within bounds.");
+            }
+            return this;
+        }
+
+        /**
+         * Setter for opacity in builder
+         *
+         * @param val Opacity of the entire heatmap in range [0, 1]
+         * @return updated builder object
+         */
+        public Builder opacity(double val) {
+            opacity = val;
+            // Check that opacity is in range
+            if (opacity < 0 || opacity > 1) {
+                throw new IllegalArgumentException("Opacity must be in range [0, 1]");
+            }
+            return this;
+        }
+
+        /**
+         * Setter for kernel in builder
+         *
+         * @param val Shape of the kernel. Defaults to a {@link GaussianKernel}.
+         * @return updated builder object
+         */
+        public Builder kernel(Kernel val) {
+            if (val == null) {
+                throw new IllegalArgumentException("Kernel must not be null.");
+            }
+            kernel = val;
+            return this;
+        }
+
+        /**
+         * Setter for convolver in builder
+         *
+         * @param val Convolution engine to smoothen layers with. Defaults to an
+         *            {@link ExactConvolver}.
+         * @return updated builder object
+         */
+        public Builder convolver(Convolver val) {
+            convolver = val;
+            return this;
+        }
+
+        /**
+         * Setter for tile encoder in builder
+         *
+         * @param val Encoder of blended tiles into images. Defaults to a
+         *            {@link BitmapTileEncoder} producing PNG. Tiles have no palette, so indexed
+         *            encoders fall back to RGBA.
+         * @return updated builder object
+         */
+        public Builder tileEncoder(TileEncoder val) {
+            tileEncoder = val;
+            return this;
+        }
+
+        /**
+         * Call when all desired options have been set.
+         *
+         * @return CompositeHeatmapTileProvider created with desired options.
+         */
+        public CompositeHeatmapTileProvider build() {
+            if (layers.isEmpty()) {
+                throw new IllegalStateException("No layers: you must add at least one layer " +
+                        "before building");
+            }
+            return new CompositeHeatmapTileProvider(this);
+        }
+    }
+
+    private CompositeHeatmapTileProvider(Builder builder) {
+        mRadius = builder.radius;
+        mKernel = builder.kernel.getWeights(mRadius);
+        mConvolver = builder.convolver;
+        mTileEncoder = builder.tileEncoder;
+
+        int layerCount = builder.layers.size();
+        mPoints = new LayeredPoints(builder.layers);
+        mTree = new PointIndexQuadTree(mPoints);
+
+        mColorMaps = new int[layerCount][];
+        mMaxIntensity = new double[layerCount][];
+        double[] weights = new double[layerCount];
+        for (int layer = 0; layer < layerCount; layer++) {
+            mColorMaps[layer] = builder.gradients.get(layer).generateColorMap(builder.opacity);
+            mMaxIntensity[layer] = MaxIntensityPyramid.computeMaxima(mPoints.layer(layer),
+                    HeatmapTileProvider.MAX_ZOOM_LEVEL, mRadius, HeatmapTileProvider.TILE_DIM);
+            weights[layer] = builder.weights.get(layer);
+        }
+        mWeights = weights;
+    }
+
+    private static void checkWeight(double weight) {
+        if (weight < 0 || weight > 1) {
+            throw new IllegalArgumentException("Weight must be in range [0, 1]");
+        }
+    }
+
+    /**
+     * @return number of layers
+     */
+    public int getLayerCount() {
+        return mColorMaps.length;
+    }
+
+    /**
+     * Setter for the weight of a layer.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param layer  Index of the layer, in the order added
+     * @param weight Weight of the layer in range [0, 1]; layers of weight 0 are not rendered
+     */
+    public void setLayerWeight(int layer, double weight) {
+        checkWeight(weight);
+        double[] weights = mWeights.clone();
+        weights[layer] = weight;
+        mWeights = weights;
+    }
+
+    /**
+     * Creates tile.
+     *
+     * @param x    X coordinate of tile.
+     * @param y    Y coordinate of tile.
+     * @param zoom Zoom level.
+     * @return image in Tile format
+     */
+    public Tile getTile(int x, int y, int zoom) {
+        final int tileDim = HeatmapTileProvider.TILE_DIM;
+        final double worldWidth = HeatmapTileProvider.WORLD_WIDTH;
+
+        // Same tile geometry as HeatmapTileProvider
+        double tileWidth = worldWidth / Math.pow(2, zoom);
+        double padding = tileWidth * mRadius / tileDim;
+        double tileWidthPadded = tileWidth + 2 * padding;
+        double bucketWidth = tileWidthPadded / (tileDim + mRadius * 2);
+
+        double minX = x * tileWidth - padding;
+        double maxX = (x + 1) * tileWidth + padding;
+        double minY = y * tileWidth - padding;
+        double maxY = (y + 1) * tileWidth + padding;
+
+        Bounds bounds = mTree.getBounds();
+        Bounds paddedBounds = new Bounds(bounds.minX - padding, bounds.maxX + padding,
+                bounds.minY - padding, bounds.maxY + padding);
+        if (!paddedBounds.intersects(minX, maxX, minY, maxY)) {
+            return TileProvider.NO_TILE;
+        }
+
+        // Bucket every layer in one search, into a grid per layer
+        double[] weights = mWeights;
+        int layerCount = weights.length;
+        int paddedDim = tileDim + mRadius * 2;
+        int gridSize = paddedDim * paddedDim;
+        TileBuffers buffers = TileBuffers.get();
+        float[] channels = buffers.channels(gridSize * layerCount);
+        GridExtent extent = buffers.extent(0);
+        LayerBucketer bucketer = new LayerBucketer(mPoints, weights, minX, minY, bucketWidth,
+                paddedDim, channels, extent);
+        mTree.search(new Bounds(minX, maxX, minY, maxY), bucketer);
+        // Deal with overlap across lat = 180, as in HeatmapTileProvider
+        if (minX < 0) {
+            bucketer.xOffset = -worldWidth;
+            mTree.search(new Bounds(minX + worldWidth, worldWidth, minY, maxY), bucketer);
+        }
+        // At zoom 0 the padded tile crosses both edges, so both wraps may apply
+        if (maxX > worldWidth) {
+            bucketer.xOffset = worldWidth;
+            mTree.search(new Bounds(0, maxX - worldWidth, minY, maxY), bucketer);
+        }
+        if (extent.isEmpty()) {
+            return TileProvider.NO_TILE;
+        }
+
+        // Convolution spreads each bucket by the radius, less the padding cropped off
+        int fromX = Math.max(extent.minX - 2 * mRadius, 0);
+        int toX = Math.min(extent.maxX, tileDim - 1);
+        int fromY = Math.max(extent.minY - 2 * mRadius, 0);
+        int toY = Math.min(extent.maxY, tileDim - 1);
+
+        // Convolve each layer with points, and add its colors into the blend
+        float[] blend = buffers.blend(BLEND_CHANNELS * tileDim * tileDim);
+        float[] convolved = buffers.output(tileDim * tileDim);
+        for (int layer = 0; layer < layerCount; layer++) {
+            if (!bucketer.found[layer]) {
+                continue;
+            }
+            float[] grid = buffers.grid(gridSize);
+            System.arraycopy(channels, layer * gridSize, grid, 0, gridSize);
+            mConvolver.convolve(grid, paddedDim, mKernel, convolved);
+            addLayer(convolved, tileDim, mColorMaps[layer], mMaxIntensity[layer][zoom],
+                    weights[layer], fromX, toX, fromY, toY, blend);
+        }
+
+        int[] pixels = buffers.pixels(tileDim * tileDim);
+        resolveBlend(blend, tileDim, pixels);
+        return new Tile(tileDim, tileDim, mTileEncoder.encode(pixels, tileDim, null));
+    }
+
+    /**
+     * Colors a convolved layer, and adds it into the blend.
+     *
+     * @param grid     convolved intensities of the layer
+     * @param dim      dimension of the grid
+     * @param colorMap colors of the layer's gradient
+     * @param max      intensity mapped to the last color
+     * @param weight   weight of the layer
+     * @param blend    blend sums: BLEND_CHANNELS values per pixel
+     */
+    static void addLayer(float[] grid, int dim, int[] colorMap, double max, double weight,
+                         int fromX, int toX, int fromY, int toY, float[] blend) {
+        float colorMapScaling = (float) ((colorMap.length - 1) / max);
+        int maxColor = colorMap.length - 1;
+        float alphaScaling = (float) (weight / 255);
+        for (int y = fromY; y <= toY; y++) {
+            for (int index = y * dim + fromX; index <= y * dim + toX; index++) {
+                float val = grid[index];
+                if (val == 0) {
+                    continue;
+                }
+                int color = colorMap[Math.min((int) (val * colorMapScaling), maxColor)];
+                float alpha = Color.alpha(color) * alphaScaling;
+                if (alpha == 0) {
+                    continue;
+                }
+                int offset = index * BLEND_CHANNELS;
+                blend[offset] += alpha * Color.red(color);
+                blend[offset + 1] += alpha * Color.green(color);
+                blend[offset + 2] += alpha * Color.blue(color);
+                blend[offset + 3] += alpha;
+                blend[offset + 4] += alpha - blend[offset + 4] * alpha;
+            }
+        }
+    }
+
+    /**
+     * Turns blend sums into ARGB colors: the alpha-weighted average color of the layers, as
+     * opaque as all of them on top of each other.
+     */
+    static void resolveBlend(float[] blend, int dim, int[] pixels) {
+        for (int index = 0; index < dim * dim; index++) {
+            int offset = index * BLEND_CHANNELS;
+            float alphaSum = blend[offset + 3];
+            if (alphaSum == 0) {
+                pixels[index] = Color.TRANSPARENT;
+                continue;
+            }
+            pixels[index] = Color.argb(Math.round(blend[offset + 4] * 255),
+                    Math.round(blend[offset] / alphaSum),
+                    Math.round(blend[offset + 1] / alphaSum),
+                    Math.round(blend[offset + 2] / alphaSum));
+        }
+    }
+
+    /**
+     * Points of every layer in parallel arrays, each layer's points after the previous one's.
+     */
+    private static class LayeredPoints implements WeightedPointStore {
+        private final double[] mX;
+        private final double[] mY;
+        private final float[] mIntensity;
+        private final byte[] mLayer;
+
+        /**
+         * Index of the first point of each layer, followed by the number of points
+         */
+        private final int[] mLayerStart;
+
+        LayeredPoints(List<Collection<WeightedLatLng>> layers) {
+            mLayerStart = new int[layers.size() + 1];
+            int size = 0;
+            for (int layer = 0; layer < layers.size(); layer++) {
+                mLayerStart[layer] = size;
+                size += layers.get(layer).size();
+            }
+            mLayerStart[layers.size()] = size;
+
+            mX = new double[size];
+            mY = new double[size];
+            mIntensity = new float[size];
+            mLayer = new byte[size];
+            int index = 0;
+            for (int layer = 0; layer < layers.size(); layer++) {
+                for (WeightedLatLng l : layers.get(layer)) {
+                    Point p = l.getPoint();
+                    mX[index] = p.x;
+                    mY[index] = p.y;
+                    mIntensity[index] = (float) l.getIntensity();
+                    mLayer[index] = (byte) layer;
+                    index++;
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return mX.length;
+        }
+
+        @Override
+        public double getX(int index) {
+            return mX[index];
+        }
+
+        @Override
+        public double getY(int index) {
+            return mY[index];
+        }
+
+        @Override
+        public double getIntensity(int index) {
+            return mIntensity[index];
+        }
+
+        int getLayer(int index) {
+            return mLayer[index];
+        }
+
+        /**
+         * @return the points of a layer, indexed from 0
+         */
+        WeightedPointStore layer(final int layer) {
+            final int start = mLayerStart[layer];
+            final int end = mLayerStart[layer + 1];
+            return new WeightedPointStore() {
+                @Override
+                public int size() {
+                    return end - start;
+                }
+
+                @Override
+                public double getX(int index) {
+                    return mX[start + index];
+                }
+
+                @Override
+                public double getY(int index) {
+                    return mY[start + index];
+                }
+
+                @Override
+                public double getIntensity(int index) {
+                    return mIntensity[start + index];
+                }
+            };
+        }
+    }
+
+    /**
+     * Adds the points of a search into the grid of their layer.
+     */
+    private static class LayerBucketer implements PointIndexQuadTree.Visitor {
+        private final LayeredPoints mPoints;
+        private final double[] mWeights;
+        private final double mMinX;
+        private final double mMinY;
+        private final double mBucketWidth;
+        private final int mPaddedDim;
+        private final float[] mChannels;
+        private final GridExtent mExtent;
+
+        /**
+         * Added to the x coordinate of points, for points across the antimeridian
+         */
+        double xOffset;
+
+        /**
+         * Whether each layer has points in the tile
+         */
+        final boolean[] found;
+
+        LayerBucketer(LayeredPoints points, double[] weights, double minX, double minY,
+                      double bucketWidth, int paddedDim, float[] channels, GridExtent extent) {
+            mPoints = points;
+            mWeights = weights;
+            mMinX = minX;
+            mMinY = minY;
+            mBucketWidth = bucketWidth;
+            mPaddedDim = paddedDim;
+            mChannels = channels;
+            mExtent = extent;
+            found = new boolean[weights.length];
+        }
+
+        @Override
+        public void visit(int index) {
+            int layer = mPoints.getLayer(index);
+            if (mWeights[layer] == 0) {
+                return;
+            }
+            int bucketX = (int) ((mPoints.getX(index) + xOffset - mMinX) / mBucketWidth);
+            int bucketY = (int) ((mPoints.getY(index) - mMinY) / mBucketWidth);
+            mChannels[(layer * mPaddedDim + bucketY) * mPaddedDim + bucketX] +=
+                    mPoints.getIntensity(index);
+            mExtent.include(bucketX, bucketY);
+            found[layer] = true;
+        }
+    }
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.projection.SphericalMercatorProjection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts contours of the density of a heatmap, as rings of LatLngs, with marching squares.
+ * <p/>
+ * Tiles are rendered one at a time, row by row, and only their last row and column are kept to
+ * stitch contours across the seams, so the raster of a whole region is never held in memory.
+ * Contours are closed at the edges of the region. Rings go counter-clockwise around denser
+ * areas and clockwise around holes in them, and are reported as soon as they are closed.
+ * <p/>
+ * Thresholds are relative to the maximum intensity of the zoom level, like the start points of
+ * a {@link Gradient}: the contour at 0.5 outlines where the heatmap is colored beyond the
+ * middle of the gradient.
+ */
+public class ContourExtractor {
+
+    /**
+     * Receives contours as they are closed.
+     */
+    public interface Listener {
+        /**
+         * @param level index of the threshold of the contour
+         * @param ring  vertices of the contour, without repeating the first one at the end
+         */
+        void onContour(int level, List<LatLng> ring);
+    }
+
+    private static final SphericalMercatorProjection PROJECTION =
+            new SphericalMercatorProjection(HeatmapTileProvider.WORLD_WIDTH);
+
+    private static final int TOP = 0;
+    private static final int RIGHT = 1;
+    private static final int BOTTOM = 2;
+    private static final int LEFT = 3;
+
+    /**
+     * Segments of each case of a cell, as pairs of edges, each directed with the dense side on
+     * its left on the map. Cases have a bit for each corner above the threshold: 8 top left, 4
+     * top right, 2 bottom right and 1 bottom left.
+     */
+    private static final int[][] SEGMENTS = {
+            {},
+            {BOTTOM, LEFT},
+            {RIGHT, BOTTOM},
+            {RIGHT, LEFT},
+            {TOP, RIGHT},
+            {TOP, RIGHT, BOTTOM, LEFT},
+            {TOP, BOTTOM},
+            {TOP, LEFT},
+            {LEFT, TOP},
+            {BOTTOM, TOP},
+            {LEFT, TOP, RIGHT, BOTTOM},
+            {RIGHT, TOP},
+            {LEFT, RIGHT},
+            {BOTTOM, RIGHT},
+            {LEFT, BOTTOM},
+            {}
+    };
+
+    /**
+     * Segments of the saddle cases 5 and 10 when the center of the cell is above the threshold,
+     * joining the corners above it instead of cutting them off
+     */
+    private static final int[] SADDLE_5_JOINED = {TOP, LEFT, BOTTOM, RIGHT};
+    private static final int[] SADDLE_10_JOINED = {RIGHT, TOP, LEFT, BOTTOM};
+
+    private final HeatmapTileProvider mProvider;
+
+    private final double[] mThresholds;
+
+    /**
+     * @param provider   heatmap to extract contours from
+     * @param thresholds intensities to outline, relative to the maximum intensity of the zoom
+     *                   level, above 0
+     */
+    public ContourExtractor(HeatmapTileProvider provider, double... thresholds) {
+        for (double threshold : thresholds) {
+            if (!(threshold > 0)) {
+                throw new IllegalArgumentException("Thresholds must be above 0.");
+            }
+        }
+        mProvider = provider;
+        mThresholds = thresholds.clone();
+    }
+
+    /**
+     * Extracts the contours of a region.
+     *
+     * @param bounds region to extract, widened to whole tiles
+     * @param zoom   zoom level of the heatmap to outline
+     * @return the contours of each threshold, in the order of the thresholds
+     */
+    public List<List<List<LatLng>>> extract(LatLngBounds bounds, int zoom) {
+        final List<List<List<LatLng>>> contours = new ArrayList<List<List<LatLng>>>();
+        for (int i = 0; i < mThresholds.length; i++) {
+            contours.add(new ArrayList<List<LatLng>>());
+        }
+        extract(bounds, zoom, new Listener() {
+            @Override
+            public void onContour(int level, List<LatLng> ring) {
+                contours.get(level).add(ring);
+            }
+        });
+        return contours;
+    }
+
+    /**
+     * Extracts the contours of a region, streaming them to a listener.
+     *
+     * @param bounds   region to extract, widened to whole tiles
+     * @param zoom     zoom level of the heatmap to outline
+     * @param listener receives each contour as soon as it is closed
+     */
+    public void extract(LatLngBounds bounds, int zoom, Listener listener) {
+        int tileCount = 1 << zoom;
+        Point southWest = PROJECTION.toPoint(bounds.southwest);
+        Point northEast = PROJECTION.toPoint(bounds.northeast);
+        int minX = tileIndex(southWest.x, tileCount);
+        int maxX = tileIndex(northEast.x, tileCount);
+        if (bounds.southwest.longitude > bounds.northeast.longitude) {
+            // Crosses the antimeridian
+            maxX += tileCount;
+        }
+        // Tile y grows southwards
+        extract(zoom, minX, tileIndex(northEast.y, tileCount), Math.min(maxX,
+                minX + tileCount - 1), tileIndex(southWest.y, tileCount), listener);
+    }
+
+    /**
+     * Extracts the contours of a range of tiles, streaming them to a listener.
+     *
+     * @param zoom     zoom level of the heatmap to outline
+     * @param minX     X coordinate of the first column of tiles
+     * @param minY     Y coordinate of the first row of tiles
+     * @param maxX     X coordinate of the last column of tiles, inclusive, possibly wrapped
+     *                 around past the last tile of the zoom level
+     * @param maxY     Y coordinate of the last row of tiles, inclusive
+     * @param listener receives each contour as soon as it is closed
+     */
+    public void extract(int zoom, int minX, int minY, int maxX, int maxY, Listener listener) {
+        new Pass(zoom, minX, minY, maxX - minX + 1, maxY - minY + 1, listener).run();
+    }
+
+    private static int tileIndex(double world, int tileCount) {
+        return (int) Math.max(0, Math.min(Math.floor(world * tileCount), tileCount - 1));
+    }
+
+    /**
+     * One extraction, walking the tiles of a region row by row.
+     * <p/>
+     * Samples are the pixels of the region, with a border of zeros around it so that every
+     * contour closes. A cell joins four samples, and belongs to the tile of its bottom right
+     * sample; cells of the bottom and right border belong to the last row and column of tiles.
+     */
+    private class Pass {
+        private static final int DIM = HeatmapTileProvider.TILE_DIM;
+
+        private final int mZoom;
+        private final int mOriginX;
+        private final int mOriginY;
+        private final int mWidth;
+        private final int mHeight;
+        private final Listener mListener;
+
+        /**
+         * Intensities of the current tile
+         */
+        private final float[] mTile = new float[DIM * DIM];
+
+        /**
+         * Last row of the previous row of tiles, across the region
+         */
+        private final float[] mAbove;
+
+        /**
+         * Last column of the previous tile in the row
+         */
+        private final float[] mLeft = new float[DIM];
+
+        /**
+         * Bottom right sample of the tile above and to the left
+         */
+        private float mCorner;
+
+        /**
+         * Position of the current tile within the region, in samples
+         */
+        private int mTileX;
+        private int mTileY;
+
+        private final Tracer[] mTracers;
+
+        Pass(int zoom, int originX, int originY, int tilesWide, int tilesHigh,
+             Listener listener) {
+            mZoom = zoom;
+            mOriginX = originX;
+            mOriginY = originY;
+            mWidth = tilesWide * DIM;
+            mHeight = tilesHigh * DIM;
+            mListener = listener;
+            mAbove = new float[mWidth];
+            mTracers = new Tracer[mThresholds.length];
+            for (int i = 0; i < mTracers.length; i++) {
+                mTracers[i] = new Tracer(i, (float) mThresholds[i]);
+            }
+        }
+
+        void run() {
+            int tileCount = 1 << mZoom;
+            for (mTileY = 0; mTileY < mHeight; mTileY += DIM) {
+                for (mTileX = 0; mTileX < mWidth; mTileX += DIM) {
+                    int x = ((mOriginX + mTileX / DIM) % tileCount + tileCount) % tileCount;
+                    boolean found = mProvider.getRelativeIntensity(x, mOriginY + mTileY / DIM,
+                            mZoom, mTile);
+                    // Cells from the sample before the tile to its last one, and the border
+                    int endX = mTileX + DIM - 1 == mWidth - 1 ? mWidth : mTileX + DIM - 1;
+                    int endY = mTileY + DIM - 1 == mHeight - 1 ? mHeight : mTileY + DIM - 1;
+                    for (Tracer tracer : mTracers) {
+                        if (found) {
+                            march(tracer, mTileX - 1, mTileY - 1, endX, endY);
+                        } else {
+                            // Only the cells across the seams can be above the threshold
+                            march(tracer, mTileX - 1, mTileY - 1, endX, mTileY);
+                            march(tracer, mTileX - 1, mTileY, mTileX, endY);
+                        }
+                    }
+                    keepEdges();
+                }
+            }
+        }
+
+        /**
+         * Traces the cells with top left samples within [minX, maxX) by [minY, maxY).
+         */
+        private void march(Tracer tracer, int minX, int minY, int maxX, int maxY) {
+            float threshold = tracer.mThreshold;
+            for (int y = minY; y < maxY; y++) {
+                for (int x = minX; x < maxX; x++) {
+                    float topLeft = sample(x, y);
+                    float topRight = sample(x + 1, y);
+                    float bottomRight = sample(x + 1, y + 1);
+                    float bottomLeft = sample(x, y + 1);
+                    int index = (topLeft > threshold ? 8 : 0) | (topRight > threshold ? 4 : 0)
+                            | (bottomRight > threshold ? 2 : 0)
+                            | (bottomLeft > threshold ? 1 : 0);
+                    int[] segments = SEGMENTS[index];
+                    if ((index == 5 || index == 10)
+                            && (topLeft + topRight + bottomRight + bottomLeft) / 4 > threshold) {
+                        segments = index == 5 ? SADDLE_5_JOINED : SADDLE_10_JOINED;
+                    }
+                    for (int i = 0; i < segments.length; i += 2) {
+                        tracer.addSegment(x, y, segments[i], segments[i + 1]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the sample at (x, y) of the region, reachable from the current tile
+         */
+        private float sample(int x, int y) {
+            if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+                return 0;
+            }
+            int tileX = x - mTileX;
+            int tileY = y - mTileY;
+            if (tileX >= 0 && tileY >= 0) {
+                return mTile[tileY * DIM + tileX];
+            } else if (tileX < 0 && tileY < 0) {
+                return mCorner;
+            } else if (tileY < 0) {
+                return mAbove[x];
+            }
+            return mLeft[tileY];
+        }
+
+        /**
+         * Keeps the last row and column of the current tile for the cells across its seams.
+         */
+        private void keepEdges() {
+            // The corner of the next tile is overwritten by this one's last row
+            mCorner = mAbove[mTileX + DIM - 1];
+            System.arraycopy(mTile, (DIM - 1) * DIM, mAbove, mTileX, DIM);
+            for (int y = 0; y < DIM; y++) {
+                mLeft[y] = mTile[y * DIM + DIM - 1];
+            }
+        }
+
+        /**
+         * @return the point where the contour crosses an edge of the cell with the top left
+         * sample (x, y), interpolated between its two samples
+         */
+        private LatLng crossing(int x, int y, int edge, float threshold) {
+            // Samples of the edge, from left to right or from top to bottom
+            int fromX = edge == RIGHT ? x + 1 : x;
+            int fromY = edge == BOTTOM ? y + 1 : y;
+            int toX = edge == LEFT ? x : x + 1;
+            int toY = edge == TOP ? y : y + 1;
+            float from = sample(fromX, fromY);
+            float to = sample(toX, toY);
+            double t = (threshold - from) / (to - from);
+            // Samples are at the centers of pixels
+            double pixelX = mOriginX * (double) DIM + fromX + (toX - fromX) * t + 0.5;
+            double pixelY = mOriginY * (double) DIM + fromY + (toY - fromY) * t + 0.5;
+            double worldDim = (double) DIM * (1 << mZoom) / HeatmapTileProvider.WORLD_WIDTH;
+            return PROJECTION.toLatLng(new Point(pixelX / worldDim, pixelY / worldDim));
+        }
+
+        /**
+         * @return an id of an edge of the cell with the top left sample (x, y), shared with
+         * the neighbouring cell
+         */
+        private long edgeKey(int x, int y, int edge) {
+            // Bottom and right edges are the top and left edges of the next cells
+            if (edge == BOTTOM) {
+                y++;
+            } else if (edge == RIGHT) {
+                x++;
+            }
+            boolean vertical = edge == LEFT || edge == RIGHT;
+            return (((long) (y + 1) * (mWidth + 2) + (x + 1)) << 1) | (vertical ? 1 : 0);
+        }
+
+        /**
+         * Joins the segments of one threshold into rings.
+         */
+        private class Tracer {
+            private final int mLevel;
+            private final float mThreshold;
+
+            /**
+             * Contours still open, by the edge they start and end on
+             */
+            private final Map<Long, Chain> mByStart = new HashMap<Long, Chain>();
+            private final Map<Long, Chain> mByEnd = new HashMap<Long, Chain>();
+
+            Tracer(int level, float threshold) {
+                mLevel = level;
+                mThreshold = threshold;
+            }
+
+            /**
+             * Adds the segment of a cell from one of its edges to another.
+             */
+            void addSegment(int x, int y, int fromEdge, int toEdge) {
+                long from = edgeKey(x, y, fromEdge);
+                long to = edgeKey(x, y, toEdge);
+                Chain before = mByEnd.remove(from);
+                Chain after = mByStart.remove(to);
+                if (before == null && after == null) {
+                    Chain chain = new Chain(from, to);
+                    chain.mPoints.add(crossing(x, y, fromEdge, mThreshold));
+                    chain.mPoints.add(crossing(x, y, toEdge, mThreshold));
+                    mByStart.put(from, chain);
+                    mByEnd.put(to, chain);
+                } else if (after == null) {
+                    before.mPoints.addLast(crossing(x, y, toEdge, mThreshold));
+                    before.mEnd = to;
+                    mByEnd.put(to, before);
+                } else if (before == null) {
+                    after.mPoints.addFirst(crossing(x, y, fromEdge, mThreshold));
+                    after.mStart = from;
+                    mByStart.put(from, after);
+                } else if (before == after) {
+                    mListener.onContour(mLevel, new ArrayList<LatLng>(before.mPoints));
+                } else if (before.mPoints.size() >= after.mPoints.size()) {
+                    before.mPoints.addAll(after.mPoints);
+                    before.mEnd = after.mEnd;
+                    mByEnd.put(before.mEnd, before);
+                } else {
+                    Iterator<LatLng> points = before.mPoints.descendingIterator();
+                    while (points.hasNext()) {
+                        after.mPoints.addFirst(points.next());
+                    }
+                    after.mStart = before.mStart;
+                    mByStart.put(after.mStart, after);
+                }
+            }
+        }
+    }
+
+    /**
+     * A contour still open, from the edge it starts on to the edge it ends on.
+     */
+    private static class Chain {
+        private final ArrayDeque<LatLng> mPoints = new ArrayDeque<LatLng>();
+        private long mStart;
+        private long mEnd;
+
+        Chain(long start, long end) {
+            mStart = start;
+            mEnd = end;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Smooths the bucketed intensity grid of a heatmap tile.
+ * <p/>
+ * Grids are flat, row-major float arrays: the value at (x, y) of a grid of dimension dim is
+ * stored at index y * dim + x.
+ */
+public interface Convolver {
+    /**
+     * Convolves a padded grid with a separable kernel, writing the result cropped of padding.
+     *
+     * @param grid      Raw input grid: paddedDim * paddedDim values, ie dim * dim with padding of
+     *                  size radius on every side. Implementations may use it as scratch space.
+     * @param paddedDim Dimension of the input grid
+     * @param kernel    Pre-computed 1D kernel of size radius * 2 + 1
+     * @param output    Grid to write into: at least dim * dim values, where
+     *                  dim = paddedDim - kernel.length + 1. Every value is overwritten.
+     */
+    void convolve(float[] grid, int paddedDim, double[] kernel, float[] output);
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import android.graphics.Color;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+import com.google.maps.android.geometry.Bounds;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.quadtree.PointIndexQuadTree;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Tile provider showing the change from one dataset to another, such as from one year to the
+ * next, as the signed difference of their heatmaps colored with a diverging gradient.
+ * <p/>
+ * Convolution is linear, so the difference of the two convolved densities is the convolution
+ * of the difference of their points: the points of the first dataset are bucketed with negated
+ * intensities alongside those of the second into a single grid, which is convolved once.
+ */
+public class DifferenceHeatmapTileProvider implements TileProvider {
+
+    /**
+     * Colors for the default diverging gradient: decreases, no change, increases.
+     */
+    private static final int[] DEFAULT_DIVERGING_GRADIENT_COLORS = {
+            Color.rgb(33, 102, 172),
+            Color.argb(0, 247, 247, 247),
+            Color.rgb(178, 24, 43)
+    };
+
+    private static final float[] DEFAULT_DIVERGING_GRADIENT_START_POINTS = {
+            0f, 0.5f, 1f
+    };
+
+    /**
+     * Default diverging gradient: blue where density fell, red where it rose.
+     */
+    public static final Gradient DEFAULT_DIVERGING_GRADIENT = new Gradient(
+            DEFAULT_DIVERGING_GRADIENT_COLORS, DEFAULT_DIVERGING_GRADIENT_START_POINTS);
+
+    private final SignedPoints mPoints;
+
+    private final PointIndexQuadTree mTree;
+
+    private final int mRadius;
+
+    private final double[] mKernel;
+
+    private final Convolver mConvolver;
+
+    private final KernelFootprint mFootprint;
+
+    private final int mSparseThreshold;
+
+    private final TileEncoder mTileEncoder;
+
+    /**
+     * Transparent, then the gradient's color map from the largest decrease to the largest
+     * increase
+     */
+    private final int[] mPalette;
+
+    /**
+     * Largest absolute difference for each zoom level
+     */
+    private final double[] mMaxDifference;
+
+    /**
+     * Builder class for the DifferenceHeatmapTileProvider.
+     */
+    public static class Builder {
+        private Collection<WeightedLatLng> from;
+        private Collection<WeightedLatLng> to;
+
+        private int radius = HeatmapTileProvider.DEFAULT_RADIUS;
+        private Gradient gradient = DEFAULT_DIVERGING_GRADIENT;
+        private double opacity = HeatmapTileProvider.DEFAULT_OPACITY;
+        private Kernel kernel = new GaussianKernel();
+        private Convolver convolver = new ExactConvolver();
+        private TileEncoder tileEncoder = new BitmapTileEncoder();
+        private int sparseThreshold = HeatmapTileProvider.DEFAULT_SPARSE_THRESHOLD;
+
+        /**
+         * Constructor for builder.
+         * No required parameters here, but user must call weightedData().
+         */
+        public Builder() {
+        }
+
+        /**
+         * Setter for the datasets to compare in builder. Must call this.
+         *
+         * @param fromVal Points before the change, such as one year's
+         * @param toVal   Points after the change, such as the next year's
+         * @return updated builder object
+         */
+        public Builder weightedData(Collection<WeightedLatLng> fromVal,
+                                    Collection<WeightedLatLng> toVal) {
+            if (fromVal.isEmpty() && toVal.isEmpty()) {
+                throw new IllegalArgumentException("No input points.");
+            }
+            from = fromVal;
+            to = toVal;
+            return this;
+        }
+
+        /**
+         * Setter for radius in builder
+         *
+         * @param val Radius of convolution to use, in terms of pixels.
+         *            Must be within minimum and maximum values of 10 to 50 inclusive.
+         * @return updated builder object
+         */
+        public Builder radius(int val) {
+            radius = val;
+            // Check that radius is within bounds.
+            if (radius < HeatmapTileProvider.MIN_RADIUS
+                    || radius > HeatmapTileProvider.MAX_RADIUS) {
+                throw new IllegalArgumentException("Radius not within bounds.");
+            }
+            return this;
+        }
+
+        /**
+         * Setter for gradient in builder
+         *
+         * @param val Diverging gradient: 0 is the largest decrease, 0.5 no change and 1 the
+         *            largest increase. Defaults to {@link #DEFAULT_DIVERGING_GRADIENT}.
+         * @return updated builder object
+         */
+        public Builder gradient(Gradient val) {
+            gradient = val;
+            return this;
+        }
+
+        /**
+         * Setter for opacity in builder
+         *
+         * @param val Opacity of the entire heatmap in range [0, 1]
+         * @return updated builder object
+         */
+        public Builder opacity(double val) {
+            opacity = val;
+            // Check that opacity is in range
+            if (opacity < 0 || opacity > 1) {
+                throw new IllegalArgumentException("Opacity must be in range [0, 1]");
+            }
+            return this;
+        }
+
+        /**
+         * Setter for kernel in builder
+         *
+         * @param val Shape of the kernel. Defaults to a {@link GaussianKernel}.
+         * @return updated builder object
+         */
+        public Builder kernel(Kernel val) {
+            if (val == null) {
+                throw new IllegalArgumentException("Kernel must not be null.");
+            }
+            kernel = val;
+            return this;
+        }
+
+        /**
+         * Setter for convolver in builder
+         *
+         * @param val Convolution engine to smoothen tiles with. Defaults to an
+         *            {@link ExactConvolver}.
+         * @return updated builder object
+         */
+        public Builder convolver(Convolver val) {
+            convolver = val;
+            return this;
+        }
+
+        /**
+         * Setter for tile encoder in builder
+         *
+         * @param val Encoder of colored tiles into images. Defaults to a
+         *            {@link BitmapTileEncoder} producing PNG.
+         * @return updated builder object
+         */
+        public Builder tileEncoder(TileEncoder val) {
+            tileEncoder = val;
+            return this;
+        }
+
+        /**
+         * Setter for sparse threshold in builder.
+         *
+         * @param val Number of grid cells, or 0 to always convolve: see
+         *            {@link HeatmapTileProvider.Builder#sparseThreshold(int)}
+         * @return updated builder object
+         */
+        public Builder sparseThreshold(int val) {
+            sparseThreshold = val;
+            if (sparseThreshold < 0) {
+                throw new IllegalArgumentException("Sparse threshold must not be negative.");
+            }
+            return this;
+        }
+
+        /**
+         * Call when all desired options have been set.
+         *
+         * @return DifferenceHeatmapTileProvider created with desired options.
+         */
+        public DifferenceHeatmapTileProvider build() {
+            if (from == null) {
+                throw new IllegalStateException("No input data: you must use .weightedData " +
+                        "before building");
+            }
+            return new DifferenceHeatmapTileProvider(this);
+        }
+    }
+
+    private DifferenceHeatmapTileProvider(Builder builder) {
+        mRadius = builder.radius;
+        mKernel = builder.kernel.getWeights(mRadius);
+        mConvolver = builder.convolver;
+        mFootprint = new KernelFootprint(mConvolver, mKernel);
+        mSparseThreshold = builder.sparseThreshold;
+        mTileEncoder = builder.tileEncoder;
+
+        int[] colorMap = builder.gradient.generateColorMap(builder.opacity);
+        mPalette = new int[colorMap.length + 1];
+        mPalette[0] = Color.TRANSPARENT;
+        System.arraycopy(colorMap, 0, mPalette, 1, colorMap.length);
+
+        mPoints = new SignedPoints(builder.from, builder.to);
+        mTree = new PointIndexQuadTree(mPoints);
+        mMaxDifference = getMaxDifferences(mPoints, mRadius);
+    }
+
+    /**
+     * Gets the largest absolute difference for each zoom level, estimated the same way as the
+     * maximum intensities of a heatmap, for both increases and decreases.
+     */
+    static double[] getMaxDifferences(final WeightedPointStore points, int radius) {
+        double[] increase = MaxIntensityPyramid.computeMaxima(points,
+                HeatmapTileProvider.MAX_ZOOM_LEVEL, radius, HeatmapTileProvider.TILE_DIM);
+        double[] decrease = MaxIntensityPyramid.computeMaxima(new WeightedPointStore() {
+            @Override
+            public int size() {
+                return points.size();
+            }
+
+            @Override
+            public double getX(int index) {
+                return points.getX(index);
+            }
+
+            @Override
+            public double getY(int index) {
+                return points.getY(index);
+            }
+
+            @Override
+            public double getIntensity(int index) {
+                return -points.getIntensity(index);
+            }
+        }, HeatmapTileProvider.MAX_ZOOM_LEVEL, radius, HeatmapTileProvider.TILE_DIM);
+        double[] max = new double[increase.length];
+        for (int zoom = 0; zoom < max.length; zoom++) {
+            max[zoom] = Math.max(increase[zoom], decrease[zoom]);
+        }
+        return max;
+    }
+
+    /**
+     * Creates tile.
+     *
+     * @param x    X coordinate of tile.
+     * @param y    Y coordinate of tile.
+     * @param zoom Zoom level.
+     * @return image in Tile format
+     */
+    public Tile getTile(int x, int y, int zoom) {
+        final int tileDim = HeatmapTileProvider.TILE_DIM;
+        final double worldWidth = HeatmapTileProvider.WORLD_WIDTH;
+
+        // Same tile geometry as HeatmapTileProvider
+        double tileWidth = worldWidth / Math.pow(2, zoom);
+        double padding = tileWidth * mRadius / tileDim;
+        double tileWidthPadded = tileWidth + 2 * padding;
+        double bucketWidth = tileWidthPadded / (tileDim + mRadius * 2);
+
+        double minX = x * tileWidth - padding;
+        double maxX = (x + 1) * tileWidth + padding;
+        double minY = y * tileWidth - padding;
+        double maxY = (y + 1) * tileWidth + padding;
+
+        Bounds bounds = mTree.getBounds();
+        Bounds paddedBounds = new Bounds(bounds.minX - padding, bounds.maxX + padding,
+                bounds.minY - padding, bounds.maxY + padding);
+        if (!paddedBounds.intersects(minX, maxX, minY, maxY)) {
+            return TileProvider.NO_TILE;
+        }
+
+        // Bucket both datasets into one grid, the first negated
+        int paddedDim = tileDim + mRadius * 2;
+        TileBuffers buffers = TileBuffers.get();
+        float[] intensity = buffers.grid(paddedDim * paddedDim);
+        GridExtent extent = buffers.extent(mSparseThreshold);
+        HeatmapTileProvider.StoreBucketer bucketer = new HeatmapTileProvider.StoreBucketer(
+                mPoints, minX, minY, bucketWidth, paddedDim, intensity, extent);
+        mTree.search(new Bounds(minX, maxX, minY, maxY), bucketer);
+        // Deal with overlap across lat = 180, as in HeatmapTileProvider
+        if (minX < 0) {
+            bucketer.xOffset = -worldWidth;
+            mTree.search(new Bounds(minX + worldWidth, worldWidth, minY, maxY), bucketer);
+        }
+        // At zoom 0 the padded tile crosses both edges, so both wraps may apply
+        if (maxX > worldWidth) {
+            bucketer.xOffset = worldWidth;
+            mTree.search(new Bounds(0, maxX - worldWidth, minY, maxY), bucketer);
+        }
+        if (!bucketer.found) {
+            return TileProvider.NO_TILE;
+        }
+
+        // Convolve the difference once
+        float[] convolved = buffers.output(tileDim * tileDim);
+        if (extent.getCellCount() <= mSparseThreshold) {
+            mFootprint.stamp(intensity, paddedDim, extent, convolved, tileDim);
+        } else {
+            mConvolver.convolve(intensity, paddedDim, mKernel, convolved);
+        }
+
+        // Convolution spreads each bucket by the radius, less the padding cropped off
+        extent.minX -= 2 * mRadius;
+        extent.minY -= 2 * mRadius;
+        int[] pixels = buffers.pixels(tileDim * tileDim);
+        colorizeDifference(convolved, tileDim, mPalette.length - 1, mMaxDifference[zoom], extent,
+                pixels);
+        return new Tile(tileDim, tileDim, mTileEncoder.encode(pixels, tileDim, mPalette));
+    }
+
+    /**
+     * Converts a grid of signed differences into palette indices, mapping -max to the first
+     * color of the color map, no change to the middle one and max to the last one.
+     * Cells without any point nearby, which are exactly 0, are transparent.
+     *
+     * @param grid         convolved differences, row-major
+     * @param dim          dimension of the grid
+     * @param colorMapSize size of the color map
+     * @param max          largest absolute difference
+     * @param extent       cells that may be non-zero; everything outside is transparent
+     * @param pixels       palette indices to write: dim * dim values
+     */
+    static void colorizeDifference(float[] grid, int dim, int colorMapSize, double max,
+                                   GridExtent extent, int[] pixels) {
+        float center = (colorMapSize - 1) / 2f;
+        float colorMapScaling = (float) (center / max);
+        int maxColor = colorMapSize - 1;
+
+        Arrays.fill(pixels, 0, dim * dim, 0);
+        int minX = Math.max(extent.minX, 0);
+        int maxX = Math.min(extent.maxX, dim - 1);
+        int minY = Math.max(extent.minY, 0);
+        int maxY = Math.min(extent.maxY, dim - 1);
+        for (int y = minY; y <= maxY; y++) {
+            for (int index = y * dim + minX; index <= y * dim + maxX; index++) {
+                float val = grid[index];
+                if (val == 0) {
+                    continue;
+                }
+                int color = Math.round(center + val * colorMapScaling);
+                pixels[index] = Math.max(0, Math.min(color, maxColor)) + 1;
+            }
+        }
+    }
+
+    /**
+     * Points of both datasets, those of the first with negated intensities.
+     */
+    private static class SignedPoints implements WeightedPointStore {
+        private final double[] mX;
+        private final double[] mY;
+        private final float[] mIntensity;
+
+        SignedPoints(Collection<WeightedLatLng> from, Collection<WeightedLatLng> to) {
+            int size = from.size() + to.size();
+            mX = new double[size];
+            mY = new double[size];
+            mIntensity = new float[size];
+            int index = 0;
+            for (WeightedLatLng l : from) {
+                index = set(index, l, -1);
+            }
+            for (WeightedLatLng l : to) {
+                index = set(index, l, 1);
+            }
+        }
+
+        private int set(int index, WeightedLatLng l, int sign) {
+            Point p = l.getPoint();
+            mX[index] = p.x;
+            mY[index] = p.y;
+            mIntensity[index] = (float) (sign * l.getIntensity());
+            return index + 1;
+        }
+
+        @Override
+        public int size() {
+            return mX.length;
+        }
+
+        @Override
+        public double getX(int index) {
+            return mX[index];
+        }
+
+        @Override
+        public double getY(int index) {
+            return mY[index];
+        }
+
+        @Override
+        public double getIntensity(int index) {
+            return mIntensity[index];
+        }
+    }
+}
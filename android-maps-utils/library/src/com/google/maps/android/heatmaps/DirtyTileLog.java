@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Log of the changes to a heatmap, read separately for each zoom level.
+ * <p/>
+ * Each zoom level has its own cursor into the log, so a zoom level only pays for working out
+ * its dirty tiles when they are drained. Changes read by every zoom level are dropped. Once the
+ * log holds more changed points than its capacity, the oldest changes are dropped too, and zoom
+ * levels that had not read them yet must refresh every tile.
+ */
+class DirtyTileLog {
+
+    private final List<DirtyTiles> mChanges = new ArrayList<DirtyTiles>();
+
+    /**
+     * Sequence number of the first change in mChanges
+     */
+    private long mFirst;
+
+    /**
+     * Sequence number of the next change to read, for each zoom level
+     */
+    private final long[] mCursors;
+
+    /**
+     * Maximum number of changed points kept
+     */
+    private final int mCapacity;
+
+    /**
+     * Size of mChanges, counted in changed points
+     */
+    private int mPointCount;
+
+    /**
+     * @param zoomLevels number of zoom levels
+     * @param capacity   maximum number of changed points kept
+     */
+    DirtyTileLog(int zoomLevels, int capacity) {
+        mCursors = new long[zoomLevels];
+        mCapacity = capacity;
+    }
+
+    /**
+     * Appends a change.
+     */
+    synchronized void record(DirtyTiles dirty) {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        mChanges.add(dirty);
+        mPointCount += size(dirty);
+        while (mPointCount > mCapacity && !mChanges.isEmpty()) {
+            mPointCount -= size(mChanges.remove(0));
+            mFirst++;
+        }
+    }
+
+    /**
+     * Reads the changes a zoom level has not read yet.
+     *
+     * @param zoom Zoom level
+     * @return tiles changed since the last call for this zoom level, or null if every tile of the
+     * zoom level may have changed
+     */
+    synchronized Set<TileCoordinate> drain(int zoom) {
+        long cursor = mCursors[zoom];
+        long end = mFirst + mChanges.size();
+        mCursors[zoom] = end;
+        Set<TileCoordinate> tiles = null;
+        if (cursor >= mFirst) {
+            tiles = new HashSet<TileCoordinate>();
+            for (long i = cursor; i < end; i++) {
+                DirtyTiles dirty = mChanges.get((int) (i - mFirst));
+                if (dirty.isZoomDirty(zoom)) {
+                    tiles = null;
+                    break;
+                }
+                tiles.addAll(dirty.getTiles(zoom));
+            }
+        }
+        trim();
+        return tiles;
+    }
+
+    /**
+     * Drops every change, as read by every zoom level.
+     */
+    synchronized void clear() {
+        mFirst += mChanges.size();
+        mChanges.clear();
+        mPointCount = 0;
+        Arrays.fill(mCursors, mFirst);
+    }
+
+    /**
+     * Counts a change with no points, such as a whole zoom level changing, as one point so the
+     * log stays bounded.
+     */
+    private static int size(DirtyTiles dirty) {
+        return dirty.getPointCount() + 1;
+    }
+
+    /**
+     * Drops the changes every zoom level has read.
+     */
+    private void trim() {
+        long min = Long.MAX_VALUE;
+        for (long cursor : mCursors) {
+            min = Math.min(min, cursor);
+        }
+        while (mFirst < min && !mChanges.isEmpty()) {
+            mPointCount -= size(mChanges.remove(0));
+            mFirst++;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The tiles of a heatmap affected by a change to its data.
+ * <p/>
+ * A tile is affected if a changed point lies within its bounds padded by the heatmap radius.
+ * Tiles are worked out per zoom level on request, so only the zoom levels being displayed cost
+ * anything. When the maximum intensity of a zoom level changes, every tile of that zoom level
+ * changes color and should be refreshed.
+ */
+public class DirtyTiles {
+
+    /**
+     * Tile dimension, in pixels
+     */
+    private final int mTileDim;
+
+    /**
+     * Radius of the heatmap when the points changed, in pixels
+     */
+    private final int mRadius;
+
+    /**
+     * World coordinates of the changed points
+     */
+    private final double[] mX;
+
+    private final double[] mY;
+
+    /**
+     * Zoom levels whose tiles all changed
+     */
+    private final boolean[] mZoomDirty;
+
+    DirtyTiles(double[] x, double[] y, int radius, int tileDim, boolean[] zoomDirty) {
+        mX = x;
+        mY = y;
+        mRadius = radius;
+        mTileDim = tileDim;
+        mZoomDirty = zoomDirty;
+    }
+
+    /**
+     * @return a change to every tile of every zoom level
+     */
+    static DirtyTiles all(int radius, int tileDim, int zoomLevels) {
+        boolean[] zoomDirty = new boolean[zoomLevels];
+        Arrays.fill(zoomDirty, true);
+        return new DirtyTiles(new double[0], new double[0], radius, tileDim, zoomDirty);
+    }
+
+    /**
+     * @return number of changed points
+     */
+    int getPointCount() {
+        return mX.length;
+    }
+
+    /**
+     * @return whether nothing changed
+     */
+    public boolean isEmpty() {
+        if (mX.length > 0) return false;
+        for (boolean dirty : mZoomDirty) {
+            if (dirty) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param zoom Zoom level
+     * @return whether every tile of the zoom level changed, ie the overlay's whole tile cache
+     * should be cleared (using clearTileCache()) when showing this zoom level
+     */
+    public boolean isZoomDirty(int zoom) {
+        return zoom < mZoomDirty.length && mZoomDirty[zoom];
+    }
+
+    /**
+     * Tiles of a zoom level that contain a changed point within their padded bounds.
+     * If isZoomDirty(zoom) holds, every other tile of the zoom level changed too.
+     *
+     * @param zoom Zoom level
+     * @return coordinates of the changed tiles
+     */
+    public Set<TileCoordinate> getTiles(int zoom) {
+        Set<TileCoordinate> tiles = new HashSet<TileCoordinate>();
+        long tileCount = 1L << zoom;
+        double worldDim = (double) mTileDim * tileCount / HeatmapTileProvider.WORLD_WIDTH;
+        for (int i = 0; i < mX.length; i++) {
+            double pixelX = mX[i] * worldDim;
+            double pixelY = mY[i] * worldDim;
+            long minTileX = (long) Math.floor((pixelX - mRadius) / mTileDim);
+            long maxTileX = (long) Math.floor((pixelX + mRadius) / mTileDim);
+            long minTileY = Math.max(0, (long) Math.floor((pixelY - mRadius) / mTileDim));
+            long maxTileY = Math.min(tileCount - 1, (long) Math.floor((pixelY + mRadius) / mTileDim));
+            for (long tileX = minTileX; tileX <= maxTileX; tileX++) {
+                // Wrap around across the antimeridian
+                int wrappedX = (int) (((tileX % tileCount) + tileCount) % tileCount);
+                for (long tileY = minTileY; tileY <= maxTileY; tileY++) {
+                    tiles.add(new TileCoordinate(wrappedX, (int) tileY, zoom));
+                }
+            }
+        }
+        return tiles;
+    }
+}
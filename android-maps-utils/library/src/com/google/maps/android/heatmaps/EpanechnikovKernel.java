@@ -0,0 +1,32 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Epanechnikov kernel, 1 - d^2 along each axis for a distance d as a fraction of the radius.
+ * <p/>
+ * It falls to zero exactly at the radius, so points have no influence beyond it, and
+ * convolution skips the zero weights at the ends.
+ */
+public class EpanechnikovKernel extends Kernel {
+
+    @Override
+    protected double weight(double distance) {
+        return 1 - distance * distance;
+    }
+}
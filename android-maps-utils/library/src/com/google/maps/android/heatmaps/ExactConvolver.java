@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import java.util.Arrays;
+
+/**
+ * Exact two pass convolution, applying every kernel weight to every non-zero value.
+ * Cost grows with the number of non-zero values times the kernel size.
+ */
+public class ExactConvolver implements Convolver {
+
+    @Override
+    public void convolve(float[] grid, int paddedDim, double[] kernel, float[] output) {
+        // Calculate radius size
+        int radius = kernel.length / 2;
+        // Calculate final (non padded) dimension
+        int dim = paddedDim - 2 * radius;
+        // Zero weights at both ends of the kernel, as for kernels with compact support
+        int skip = 0;
+        while (skip < radius && kernel[skip] == 0 && kernel[kernel.length - 1 - skip] == 0) {
+            skip++;
+        }
+
+        TileBuffers buffers = TileBuffers.get();
+        // Horizontal pass keeps only the non padded columns: paddedDim rows of dim values
+        float[] intermediate = buffers.scratch(paddedDim * dim);
+        Arrays.fill(intermediate, 0, paddedDim * dim, 0);
+        // Range of non-zero columns in each intermediate row, so the vertical pass can skip
+        // empty rows and columns
+        int[] rowStart = buffers.rowStart(paddedDim);
+        int[] rowEnd = buffers.rowEnd(paddedDim);
+
+        int x, y, x2, y2, lower, upper, row;
+        float val;
+        for (y = 0; y < paddedDim; y++) {
+            row = y * paddedDim;
+            rowStart[y] = dim;
+            rowEnd[y] = 0;
+            for (x = 0; x < paddedDim; x++) {
+                val = grid[row + x];
+                // only bother if something there
+                if (val != 0) {
+                    // apply the kernel from x to every column in
+                    // max(0, x - 2 * radius) to min(dim - 1, x), in non padded coordinates,
+                    // less the zero weights at the ends
+                    lower = (x - 2 * radius + skip > 0) ? x - 2 * radius + skip : 0;
+                    upper = (x - skip < dim - 1) ? x - skip : dim - 1;
+                    if (lower > upper) continue;
+                    for (x2 = lower; x2 <= upper; x2++) {
+                        // multiplier for column x2 (padded x2 + radius) is
+                        // kernel[(x2 + radius) - (x - radius)]
+                        intermediate[y * dim + x2] += val * kernel[x2 - x + 2 * radius];
+                    }
+                    if (lower < rowStart[y]) rowStart[y] = lower;
+                    if (upper + 1 > rowEnd[y]) rowEnd[y] = upper + 1;
+                }
+            }
+        }
+
+        // Vertical pass, adding whole rows at a time
+        Arrays.fill(output, 0, dim * dim, 0);
+        int start, end, offset, target;
+        double weight;
+        for (y = 0; y < paddedDim; y++) {
+            start = rowStart[y];
+            end = rowEnd[y];
+            if (start >= end) continue;
+            offset = y * dim;
+            lower = (y - 2 * radius + skip > 0) ? y - 2 * radius + skip : 0;
+            upper = (y - skip < dim - 1) ? y - skip : dim - 1;
+            for (y2 = lower; y2 <= upper; y2++) {
+                weight = kernel[y2 - y + 2 * radius];
+                target = y2 * dim;
+                for (x = start; x < end; x++) {
+                    output[target + x] += intermediate[offset + x] * weight;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Halves the intensity of points every half-life. Points after now are not displayed.
+ */
+public class ExponentialDecay implements TimeDecay {
+
+    private final long mHalfLife;
+
+    /**
+     * Decay rate, per unit of time
+     */
+    private final double mRate;
+
+    /**
+     * @param halfLife time it takes for the intensity of a point to halve
+     */
+    public ExponentialDecay(long halfLife) {
+        if (halfLife <= 0) {
+            throw new IllegalArgumentException("Half-life must be positive.");
+        }
+        mHalfLife = halfLife;
+        mRate = Math.log(2) / halfLife;
+    }
+
+    public long getHalfLife() {
+        return mHalfLife;
+    }
+
+    @Override
+    public double getWeight(long age) {
+        if (age < 0) {
+            return 0;
+        }
+        return Math.exp(-mRate * age);
+    }
+}
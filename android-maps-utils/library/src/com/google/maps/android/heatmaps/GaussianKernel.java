@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Gaussian kernel, cut off at the radius. The default kernel of heatmaps.
+ * <p/>
+ * Its tails are not zero at the radius, so points reach the edge of the kernel with a small
+ * weight: about 1% for the default standard deviation of a third of the radius.
+ */
+public class GaussianKernel extends Kernel {
+
+    /**
+     * Standard deviation of the default kernel, as a fraction of the radius
+     */
+    public static final double DEFAULT_SIGMA = 1 / 3.0;
+
+    private final double mSigma;
+
+    /**
+     * Creates a Gaussian kernel with a standard deviation of a third of the radius.
+     */
+    public GaussianKernel() {
+        this(DEFAULT_SIGMA);
+    }
+
+    /**
+     * @param sigma standard deviation, as a fraction of the radius
+     */
+    public GaussianKernel(double sigma) {
+        if (!(sigma > 0)) {
+            throw new IllegalArgumentException("Standard deviation must be positive.");
+        }
+        mSigma = sigma;
+    }
+
+    @Override
+    protected double weight(double distance) {
+        return Math.exp(-distance * distance / (2 * mSigma * mSigma));
+    }
+}
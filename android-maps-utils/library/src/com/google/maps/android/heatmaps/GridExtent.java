@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Smallest rectangle of grid cells containing every cell written to, inclusive.
+ * Lets later stages skip the empty rows and columns of a tile.
+ * <p/>
+ * Also remembers the cells written to, up to a capacity, so that tiles with few cells can be
+ * rendered cell by cell.
+ */
+class GridExtent {
+    int minX;
+    int minY;
+    int maxX;
+    int maxY;
+
+    private int[] mCellX;
+
+    private int[] mCellY;
+
+    /**
+     * Number of writes, including any beyond the capacity
+     */
+    private int mCellCount;
+
+    GridExtent() {
+        this(0);
+    }
+
+    /**
+     * @param capacity number of cells to remember
+     */
+    GridExtent(int capacity) {
+        mCellX = new int[capacity];
+        mCellY = new int[capacity];
+        reset();
+    }
+
+    /**
+     * Empties the extent.
+     */
+    void reset() {
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        maxY = Integer.MIN_VALUE;
+        mCellCount = 0;
+    }
+
+    /**
+     * Empties the extent, making sure it can remember the given number of cells.
+     */
+    void reset(int capacity) {
+        if (mCellX.length < capacity) {
+            mCellX = new int[capacity];
+            mCellY = new int[capacity];
+        }
+        reset();
+    }
+
+    void include(int x, int y) {
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+        if (mCellCount < mCellX.length) {
+            mCellX[mCellCount] = x;
+            mCellY[mCellCount] = y;
+        }
+        mCellCount++;
+    }
+
+    boolean isEmpty() {
+        return minX > maxX;
+    }
+
+    /**
+     * @return number of writes, which may include the same cell several times
+     */
+    int getCellCount() {
+        return mCellCount;
+    }
+
+    /**
+     * @return whether every write was remembered
+     */
+    boolean hasAllCells() {
+        return mCellCount <= mCellX.length;
+    }
+
+    int getCellX(int i) {
+        return mCellX[i];
+    }
+
+    int getCellY(int i) {
+        return mCellY[i];
+    }
+}
@@ -16,21 +16,32 @@
 
 package com.google.maps.android.heatmaps;
 
-import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.support.v4.util.LongSparseArray;
+import android.support.v4.util.LruCache;
 
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Tile;
 import com.google.android.gms.maps.model.TileProvider;
+import com.google.maps.android.SphericalUtil;
 import com.google.maps.android.geometry.Bounds;
 import com.google.maps.android.geometry.Point;
+import com.google.maps.android.projection.SphericalMercatorProjection;
+import com.google.maps.android.quadtree.FlatPointQuadTree;
+import com.google.maps.android.quadtree.PointIndexQuadTree;
 import com.google.maps.android.quadtree.PointQuadTree;
+import com.google.maps.android.quadtree.PointTree;
 
-import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Tile provider that creates heatmap tiles.
@@ -80,57 +91,142 @@ public class HeatmapTileProvider implements TileProvider {
     /**
      * Tile dimension, in pixels.
      */
-    private static final int TILE_DIM = 512;
+    static final int TILE_DIM = 512;
 
     /**
-     * Assumed screen size (pixels)
+     * Maximum zoom level possible on a map.
      */
-    private static final int SCREEN_SIZE = 1280;
+    static final int MAX_ZOOM_LEVEL = 22;
 
     /**
-     * Default (and minimum possible) minimum zoom level at which to calculate maximum intensities
+     * Default highest zoom level at which tiles are filled from the intensity pyramid
      */
-    private static final int DEFAULT_MIN_ZOOM = 5;
+    public static final int DEFAULT_PYRAMID_MAX_ZOOM = 10;
 
     /**
-     * Default (and maximum possible) maximum zoom level at which to calculate maximum intensities
+     * Default number of grid cells up to which tiles are rendered cell by cell
      */
-    private static final int DEFAULT_MAX_ZOOM = 11;
+    public static final int DEFAULT_SPARSE_THRESHOLD = 64;
 
     /**
-     * Maximum zoom level possible on a map.
+     * Minimum radius value.
      */
-    private static final int MAX_ZOOM_LEVEL = 22;
+    static final int MIN_RADIUS = 10;
 
     /**
-     * Minimum radius value.
+     * Maximum radius value.
      */
-    private static final int MIN_RADIUS = 10;
+    static final int MAX_RADIUS = 50;
 
     /**
-     * Maximum radius value.
+     * Relative change of the estimated maximum intensity of a zoom level, after adding or
+     * removing points, beyond which the tiles of the zoom level are recolored
+     */
+    private static final double MAX_INTENSITY_TOLERANCE = 0.1;
+
+    /**
+     * Number of changed points kept for drainDirtyTiles, beyond which the zoom levels that have
+     * not been drained are refreshed entirely
+     */
+    private static final int MAX_DIRTY_POINTS = 10000;
+
+    /**
+     * Number of local maxima kept across tiles for getHotspots
+     */
+    private static final int MAX_CACHED_PEAKS = 1 << 18;
+
+    /**
+     * Pixels of the neighbouring tiles convolved around a tile, which tell maxima on the edges
+     * of the tile from slopes
      */
-    private static final int MAX_RADIUS = 50;
+    private static final int PEAK_MARGIN = 1;
+
+    private static final SphericalMercatorProjection PROJECTION =
+            new SphericalMercatorProjection(WORLD_WIDTH);
+
+    /**
+     * Number of cells kept by densityAt
+     */
+    private static final int DENSITY_CACHE_SIZE = 4096;
 
     /**
-     * Quad tree of all the points to display in the heatmap
+     * Quad tree of all the points to display in the heatmap, or null if they are in mStore
      */
-    private PointQuadTree<WeightedLatLng> mTree;
+    private PointTree<WeightedLatLng> mTree;
 
     /**
-     * Collection of all the data.
+     * Points to display in the heatmap when set as a point store, or null
      */
-    private Collection<WeightedLatLng> mData;
+    private WeightedPointStore mStore;
+
+    /**
+     * Quad tree of the indices of mStore, or null if there is none or it is a TimedPointStore
+     */
+    private PointIndexQuadTree mStoreTree;
+
+    /**
+     * Points of mStore within the time window when it is a TimedPointStore, or null
+     */
+    private TimedPointStore.Window mWindow;
 
     /**
      * Bounds of the quad tree
      */
+    private Bounds mTreeBounds;
+
+    /**
+     * Bounds of the data. Grows when points are added, but does not shrink when points are
+     * removed.
+     */
     private Bounds mBounds;
 
     /**
-     * Heatmap point radius.
+     * Cells behind the maximum intensity estimates, kept once points are added or removed
+     * incrementally; null otherwise
+     */
+    private MaxIntensityPyramids mMaxIntensityPyramids;
+
+    /**
+     * Guards the quad tree, the intensity pyramid and the bins against concurrent changes while
+     * tiles are rendered
+     */
+    private final ReadWriteLock mDataLock = new ReentrantReadWriteLock();
+
+    /**
+     * Incremented whenever points are added or removed
+     */
+    private volatile int mMutationCount;
+
+    /**
+     * Fades out points as they age, or null to display them all at full intensity
+     */
+    private TimeDecay mTimeDecay;
+
+    /**
+     * Time the age of points is measured from, which only follows the time set with setNow
+     * once it moves by the refresh interval
+     */
+    private long mDecayTime;
+
+    /**
+     * How far setNow must move from mDecayTime before points are decayed again
+     */
+    private long mDecayRefreshInterval;
+
+    /**
+     * Intensities pre-binned per tile pixel for the coarse zoom levels, or null if disabled
+     */
+    private IntensityPyramid mPyramid;
+
+    /**
+     * Highest zoom level at which tiles are filled from the intensity pyramid, or -1 to disable it
      */
-    private int mRadius;
+    private int mPyramidMaxZoom;
+
+    /**
+     * Heatmap point radius and kernel of each zoom level
+     */
+    private volatile RadiusSchedule mRadiusSchedule;
 
     /**
      * Gradient of the color map
@@ -138,14 +234,34 @@ public class HeatmapTileProvider implements TileProvider {
     private Gradient mGradient;
 
     /**
-     * Color map to use to color tiles
+     * Palette of tile pixels: transparent, followed by the color map of the gradient
      */
-    private int[] mColorMap;
+    private int[] mPalette;
 
     /**
-     * Kernel to use for convolution
+     * Kernel that spreads each point over the pixels around it
      */
-    private double[] mKernel;
+    private Kernel mKernel;
+
+    /**
+     * Convolution engine used to smoothen tiles
+     */
+    private Convolver mConvolver;
+
+    /**
+     * Encoder of colored tiles into image data
+     */
+    private TileEncoder mTileEncoder;
+
+    /**
+     * Number of grid cells up to which tiles are rendered by stamping mFootprints
+     */
+    private int mSparseThreshold;
+
+    /**
+     * Response of the convolver to a single cell for each zoom level, or null until needed
+     */
+    private final KernelFootprint[] mFootprints = new KernelFootprint[MAX_ZOOM_LEVEL];
 
     /**
      * Opacity of the overall heatmap overlay [0...1]
@@ -157,17 +273,77 @@ public class HeatmapTileProvider implements TileProvider {
      */
     private double[] mMaxIntensity;
 
+    /**
+     * Cache of encoded tiles, or null if disabled
+     */
+    private TileCache<Tile> mTileCache;
+
+    /**
+     * Cache of the local maxima of tiles, for getHotspots
+     */
+    private final TileCache<TilePeaks> mPeakCache = TilePeaks.newCache(MAX_CACHED_PEAKS);
+
+    /**
+     * Cache of densityAt, keyed by the data it was evaluated on
+     */
+    private final LruCache<DensityCell, Double> mDensityCache =
+            new LruCache<DensityCell, Double>(DENSITY_CACHE_SIZE);
+
+    /**
+     * Incremented whenever the gradient, opacity or rendering settings change
+     */
+    private volatile int mStyleVersion;
+
+    /**
+     * Incremented whenever the data changes
+     */
+    private volatile int mDataVersion;
+
+    /**
+     * Changes not yet drained, for each zoom level
+     */
+    private final DirtyTileLog mDirtyTileLog = new DirtyTileLog(MAX_ZOOM_LEVEL, MAX_DIRTY_POINTS);
+
+    /**
+     * Notified of each change, or null
+     */
+    private volatile OnDirtyTilesListener mOnDirtyTilesListener;
+
+    /**
+     * Called when tiles of the heatmap change.
+     */
+    public interface OnDirtyTilesListener {
+        /**
+         * Called after the data or appearance of the heatmap changed, on the thread that
+         * changed it.
+         *
+         * @param dirtyTiles the tiles that changed
+         */
+        void onDirtyTiles(DirtyTiles dirtyTiles);
+    }
+
     /**
      * Builder class for the HeatmapTileProvider.
      */
     public static class Builder {
         // Required parameters - not final, as there are 2 ways to set it
         private Collection<WeightedLatLng> data;
+        private WeightedPointStore pointStore;
+        private PointIndexQuadTree pointIndex;
 
         // Optional, initialised to default values
-        private int radius = DEFAULT_RADIUS;
+        private RadiusSchedule radiusSchedule = RadiusSchedule.fixed(DEFAULT_RADIUS);
         private Gradient gradient = DEFAULT_GRADIENT;
         private double opacity = DEFAULT_OPACITY;
+        private Kernel kernel = new GaussianKernel();
+        private Convolver convolver = new ExactConvolver();
+        private TileEncoder tileEncoder = new BitmapTileEncoder();
+        private int sparseThreshold = DEFAULT_SPARSE_THRESHOLD;
+        private int pyramidMaxZoom = DEFAULT_PYRAMID_MAX_ZOOM;
+        private int tileCacheSize = 0;
+        private TimeDecay timeDecay;
+        private long now = System.currentTimeMillis();
+        private long decayRefreshInterval = 0;
 
         /**
          * Constructor for builder.
@@ -196,6 +372,8 @@ public class HeatmapTileProvider implements TileProvider {
          */
         public Builder weightedData(Collection<WeightedLatLng> val) {
             this.data = val;
+            this.pointStore = null;
+            this.pointIndex = null;
 
             // Check that points is non empty
             if (this.data.isEmpty()) {
@@ -204,6 +382,39 @@ public class HeatmapTileProvider implements TileProvider {
             return this;
         }
 
+        /**
+         * Setter for point store in builder, instead of data or weightedData.
+         * Points are indexed and rendered straight from the store, without an object per point,
+         * but can't be added or removed afterwards.
+         *
+         * @param val Points to use in the heatmap
+         * @return updated builder object
+         */
+        public Builder pointStore(WeightedPointStore val) {
+            return pointStore(val, null);
+        }
+
+        /**
+         * Setter for point store in builder with a tree of its points, such as one read from a
+         * snapshot with {@link PointIndexQuadTree#load}, so that the points aren't indexed again.
+         *
+         * @param val   Points to use in the heatmap
+         * @param index Tree of all the points of val, or null to index them
+         * @return updated builder object
+         */
+        public Builder pointStore(WeightedPointStore val, PointIndexQuadTree index) {
+            checkIndex(val, index);
+            this.pointStore = val;
+            this.pointIndex = index;
+            this.data = null;
+
+            // Check that points is non empty
+            if (this.pointStore.size() == 0) {
+                throw new IllegalArgumentException("No input points.");
+            }
+            return this;
+        }
+
         /**
          * Setter for radius in builder
          *
@@ -212,11 +423,20 @@ public class HeatmapTileProvider implements TileProvider {
          * @return updated builder object
          */
         public Builder radius(int val) {
-            radius = val;
-            // Check that radius is within bounds.
-            if (radius < MIN_RADIUS || radius > MAX_RADIUS) {
-                throw new IllegalArgumentException("Radius not within bounds.");
-            }
+            // Checks that radius is within bounds.
+            radiusSchedule = RadiusSchedule.fixed(val);
+            return this;
+        }
+
+        /**
+         * Setter for a radius that changes with the zoom level in builder
+         *
+         * @param val Radius of each zoom level, such as {@link RadiusSchedule#meters} to cover
+         *            the same distance on the ground at every zoom level
+         * @return updated builder object
+         */
+        public Builder radiusSchedule(RadiusSchedule val) {
+            radiusSchedule = val;
             return this;
         }
 
@@ -246,6 +466,138 @@ public class HeatmapTileProvider implements TileProvider {
             return this;
         }
 
+        /**
+         * Setter for kernel in builder
+         *
+         * @param val Shape of the kernel. Defaults to a {@link GaussianKernel}; an
+         *            {@link EpanechnikovKernel} or a {@link QuarticKernel} has no influence
+         *            beyond the radius.
+         * @return updated builder object
+         */
+        public Builder kernel(Kernel val) {
+            if (val == null) {
+                throw new IllegalArgumentException("Kernel must not be null.");
+            }
+            kernel = val;
+            return this;
+        }
+
+        /**
+         * Setter for convolver in builder
+         *
+         * @param val Convolution engine to smoothen tiles with. Defaults to an
+         *            {@link ExactConvolver}; a {@link BoxBlurConvolver} is faster for large radii.
+         * @return updated builder object
+         */
+        public Builder convolver(Convolver val) {
+            convolver = val;
+            return this;
+        }
+
+        /**
+         * Setter for tile encoder in builder
+         *
+         * @param val Encoder of colored tiles into images. Defaults to a {@link BitmapTileEncoder}
+         *            producing PNG; an {@link IndexedPngTileEncoder} is faster and smaller.
+         * @return updated builder object
+         */
+        public Builder tileEncoder(TileEncoder val) {
+            tileEncoder = val;
+            return this;
+        }
+
+        /**
+         * Setter for sparse threshold in builder.
+         * Tiles whose points fall into at most this many grid cells skip the convolution,
+         * and have the smoothed footprint of each cell added in instead.
+         *
+         * @param val Number of grid cells, or 0 to always convolve
+         * @return updated builder object
+         */
+        public Builder sparseThreshold(int val) {
+            sparseThreshold = val;
+            if (sparseThreshold < 0) {
+                throw new IllegalArgumentException("Sparse threshold must not be negative.");
+            }
+            return this;
+        }
+
+        /**
+         * Setter for the highest zoom level served from the intensity pyramid in builder.
+         * Up to this zoom level, points are binned per tile pixel once when the data is set, so
+         * the cost of a tile no longer grows with the number of points. Each level costs memory
+         * proportional to the number of distinct pixels covered by the points.
+         *
+         * @param val Zoom level in [0, 22), or -1 to always search the points
+         * @return updated builder object
+         */
+        public Builder pyramidMaxZoom(int val) {
+            pyramidMaxZoom = val;
+            if (pyramidMaxZoom < -1 || pyramidMaxZoom >= MAX_ZOOM_LEVEL) {
+                throw new IllegalArgumentException("Pyramid zoom level not within bounds.");
+            }
+            return this;
+        }
+
+        /**
+         * Setter for the tile cache size in builder.
+         * Encoded tiles are kept until this many bytes are used, then the least recently used
+         * ones are evicted. The cache is invalidated whenever the data or appearance changes.
+         *
+         * @param val Byte budget of the cache, or 0 (the default) to disable it
+         * @return updated builder object
+         */
+        public Builder tileCacheSize(int val) {
+            tileCacheSize = val;
+            if (tileCacheSize < 0) {
+                throw new IllegalArgumentException("Tile cache size must not be negative");
+            }
+            return this;
+        }
+
+        /**
+         * Setter for time decay in builder.
+         * The intensity of each point is multiplied by the weight of its age, from the time
+         * given by {@link WeightedLatLng#getTime()} or a {@link TimedPointStore} to now.
+         * Points of other point stores don't decay.
+         *
+         * @param val Decay to apply, or null (the default) for none
+         * @return updated builder object
+         */
+        public Builder timeDecay(TimeDecay val) {
+            timeDecay = val;
+            return this;
+        }
+
+        /**
+         * Setter for the time the age of points is measured from in builder.
+         *
+         * @param val Time, in the unit of point times. Defaults to the current time in
+         *            milliseconds since the epoch.
+         * @return updated builder object
+         */
+        public Builder now(long val) {
+            now = val;
+            return this;
+        }
+
+        /**
+         * Setter for the decay refresh interval in builder.
+         * Points are only decayed again once now moves by this much, so tiles can stay cached
+         * while now is updated frequently.
+         *
+         * @param val Interval, in the unit of point times, or 0 (the default) to decay points
+         *            again whenever now changes
+         * @return updated builder object
+         */
+        public Builder decayRefreshInterval(long val) {
+            decayRefreshInterval = val;
+            if (decayRefreshInterval < 0) {
+                throw new IllegalArgumentException("Decay refresh interval must not be negative.");
+            }
+            return this;
+        }
+
         /**
          * Call when all desired options have been set.
          * Note: you must set data using data or weightedData before this!
@@ -253,125 +605,991 @@ public class HeatmapTileProvider implements TileProvider {
          * @return HeatmapTileProvider created with desired options.
          */
         public HeatmapTileProvider build() {
-            // Check if data or weightedData has been called
-            if (data == null) {
-                throw new IllegalStateException("No input data: you must use either .data or " +
-                        ".weightedData before building");
+            // Check if data, weightedData or pointStore has been called
+            if (data == null && pointStore == null) {
+                throw new IllegalStateException("No input data: you must use either .data, " +
+                        ".weightedData or .pointStore before building");
             }
 
             return new HeatmapTileProvider(this);
         }
     }
 
-    private HeatmapTileProvider(Builder builder) {
-        // Get parameters from builder
-        mData = builder.data;
+    private HeatmapTileProvider(Builder builder) {
+        // Get parameters from builder
+        mRadiusSchedule = builder.radiusSchedule;
+        mGradient = builder.gradient;
+        mOpacity = builder.opacity;
+        mKernel = builder.kernel;
+        mConvolver = builder.convolver;
+        mTileEncoder = builder.tileEncoder;
+        mSparseThreshold = builder.sparseThreshold;
+        mPyramidMaxZoom = builder.pyramidMaxZoom;
+        mTimeDecay = builder.timeDecay;
+        mDecayTime = builder.now;
+        mDecayRefreshInterval = builder.decayRefreshInterval;
+        if (builder.tileCacheSize > 0) {
+            mTileCache = TileCache.forTiles(builder.tileCacheSize);
+        }
+
+        // Generate color map
+        setGradient(mGradient);
+
+        // Set the data
+        if (builder.pointStore != null) {
+            setPointStore(builder.pointStore, builder.pointIndex);
+        } else {
+            setWeightedData(builder.data);
+        }
+
+        // Nothing has been displayed yet
+        mDirtyTileLog.clear();
+    }
+
+    /**
+     * Changes the dataset the heatmap is portraying. Weighted.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param data Data set of points to use in the heatmap, as LatLngs.
+     *             Note: Editing data without calling setWeightedData again will not update the data
+     *             displayed on the map; use addWeightedData and removeWeightedData instead.
+     *             Outside of changing the data, max intensity values are calculated only upon
+     *             changing the radius.
+     */
+    public void setWeightedData(Collection<WeightedLatLng> data) {
+        // Check point set is OK
+        if (data.isEmpty()) {
+            throw new IllegalArgumentException("No input points.");
+        }
+
+        mDataLock.writeLock().lock();
+        try {
+            mMutationCount++;
+            replaceData(data);
+        } finally {
+            mDataLock.writeLock().unlock();
+        }
+
+        mDataVersion++;
+        onAllTilesChanged();
+    }
+
+    /**
+     * Changes the dataset the heatmap is portraying to a point store.
+     * Points are indexed and rendered straight from the store, without an object per point.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param store Points to use in the heatmap. The store must not change afterwards, and
+     *              points can't be added or removed with addWeightedData and removeWeightedData.
+     *              All the points of a TimedPointStore are displayed until
+     *              {@link #setTimeWindow(long, long)} is called.
+     */
+    public void setPointStore(WeightedPointStore store) {
+        setPointStore(store, null);
+    }
+
+    /**
+     * Changes the dataset the heatmap is portraying to a point store, with a tree of its points
+     * such as one read from a snapshot with {@link PointIndexQuadTree#load}.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param store Points to use in the heatmap: see {@link #setPointStore(WeightedPointStore)}
+     * @param index Tree of all the points of store, or null to index them. Unused for a
+     *              TimedPointStore, which is already indexed.
+     */
+    public void setPointStore(WeightedPointStore store, PointIndexQuadTree index) {
+        checkIndex(store, index);
+        // Check point set is OK
+        if (store.size() == 0) {
+            throw new IllegalArgumentException("No input points.");
+        }
+
+        mDataLock.writeLock().lock();
+        try {
+            mMutationCount++;
+            mStore = store;
+            mTree = null;
+            if (store instanceof TimedPointStore) {
+                // Already indexed per time bucket
+                TimedPointStore timedStore = (TimedPointStore) store;
+                mStoreTree = null;
+                mWindow = timedStore.window(Long.MIN_VALUE, Long.MAX_VALUE);
+                mBounds = timedStore.getBounds();
+            } else {
+                mStoreTree = index != null ? index : new PointIndexQuadTree(store);
+                mWindow = null;
+                mBounds = mStoreTree.getBounds();
+            }
+            mTreeBounds = mBounds;
+            mPyramid = buildPyramid();
+            mMaxIntensityPyramids = null;
+            mMaxIntensity = getMaxIntensities();
+        } finally {
+            mDataLock.writeLock().unlock();
+        }
+
+        mDataVersion++;
+        onAllTilesChanged();
+    }
+
+    /**
+     * Checks that a tree indexes all the points of a store.
+     */
+    private static void checkIndex(WeightedPointStore store, PointIndexQuadTree index) {
+        if (index != null && (index.getPoints() != store || index.size() != store.size())) {
+            throw new IllegalArgumentException("Index is not of all the points of the store.");
+        }
+    }
+
+    /**
+     * Only displays the points of a time window, which must be in a {@link TimedPointStore}.
+     * Nothing is re-indexed: only the pyramid and the max intensities are computed again, from
+     * the points of the window.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param from start of the window, inclusive
+     * @param to   end of the window, exclusive
+     */
+    public void setTimeWindow(long from, long to) {
+        if (from > to) {
+            throw new IllegalArgumentException("Time window ends before it starts.");
+        }
+
+        mDataLock.writeLock().lock();
+        try {
+            if (!(mStore instanceof TimedPointStore)) {
+                throw new IllegalStateException("Time windows need a TimedPointStore.");
+            }
+            mWindow = ((TimedPointStore) mStore).window(from, to);
+            refreshIntensities();
+        } finally {
+            mDataLock.writeLock().unlock();
+        }
+
+        mDataVersion++;
+        onAllTilesChanged();
+    }
+
+    /**
+     * Setter for the time decay, which fades out points as they age.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param decay Decay to apply, or null for none: see {@link Builder#timeDecay(TimeDecay)}
+     */
+    public void setTimeDecay(TimeDecay decay) {
+        mDataLock.writeLock().lock();
+        try {
+            mTimeDecay = decay;
+            refreshIntensities();
+        } finally {
+            mDataLock.writeLock().unlock();
+        }
+
+        mDataVersion++;
+        onAllTilesChanged();
+    }
+
+    /**
+     * Setter for how far now must move before points are decayed again.
+     *
+     * @param interval Interval, in the unit of point times: see
+     *                 {@link Builder#decayRefreshInterval(long)}
+     */
+    public void setDecayRefreshInterval(long interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Decay refresh interval must not be negative.");
+        }
+        mDecayRefreshInterval = interval;
+    }
+
+    /**
+     * Sets the time the age of points is measured from, when a time decay is set.
+     * Meant to be called on every tick: points are only decayed again, and tiles changed, once
+     * now has moved by the decay refresh interval since the last time they were.
+     *
+     * @param now Time, in the unit of point times
+     * @return whether the heatmap changed, in which case the user should clear the overlay's
+     * tile cache (using clearTileCache())
+     */
+    public boolean setNow(long now) {
+        mDataLock.writeLock().lock();
+        try {
+            if (mTimeDecay == null) {
+                mDecayTime = now;
+                return false;
+            }
+            if (now == mDecayTime || Math.abs(now - mDecayTime) < mDecayRefreshInterval) {
+                // Keep the points decayed to the previous time until the refresh is due
+                return false;
+            }
+            mDecayTime = now;
+            refreshIntensities();
+        } finally {
+            mDataLock.writeLock().unlock();
+        }
+
+        mDataVersion++;
+        onAllTilesChanged();
+        return true;
+    }
+
+    /**
+     * Recomputes the pyramid and the max intensities after intensities change.
+     * Must hold the write lock.
+     */
+    private void refreshIntensities() {
+        mMutationCount++;
+        mPyramid = buildPyramid();
+        mMaxIntensityPyramids = null;
+        mMaxIntensity = getMaxIntensities();
+    }
+
+    /**
+     * Rebuilds the quad tree, pyramid and max intensities from a dataset.
+     * Must hold the write lock.
+     */
+    private void replaceData(Collection<WeightedLatLng> data) {
+
+        // Because quadtree bounds are final once the quadtree is created, we cannot add
+        // points outside of those bounds to the quadtree after creation.
+        // As quadtree creation is actually quite lightweight/fast as compared to other functions
+        // called in heatmap creation, re-creating the quadtree is an acceptable solution here.
+
+        // Make the quad tree
+        mBounds = getBounds(data);
+        mTreeBounds = mBounds;
+
+        mTree = new FlatPointQuadTree<WeightedLatLng>(mTreeBounds);
+        mStore = null;
+        mStoreTree = null;
+        mWindow = null;
+
+        // Add points to quad tree
+        for (WeightedLatLng l : data) {
+            mTree.add(l);
+        }
+
+        // Pre-bin the coarse zoom levels
+        mPyramid = buildPyramid(data);
+
+        // Calculate reasonable maximum intensity for color scale (user can also specify)
+        // Get max intensities
+        mMaxIntensityPyramids = null;
+        mMaxIntensity = getMaxIntensities(data);
+    }
+
+    /**
+     * Adds points to the dataset, without rebuilding it.
+     * Only the tiles near the new points change, unless the maximum intensity of a zoom level
+     * changes noticeably: see {@link DirtyTiles}.
+     *
+     * @param data Points to add
+     * @return the tiles that changed, which should be refreshed
+     */
+    public DirtyTiles addWeightedData(Collection<WeightedLatLng> data) {
+        return updateData(data, true);
+    }
+
+    /**
+     * Removes points from the dataset, without rebuilding it.
+     * Only the tiles near the removed points change, unless the maximum intensity of a zoom level
+     * changes noticeably: see {@link DirtyTiles}.
+     *
+     * @param data Points to remove: the same objects previously added
+     * @return the tiles that changed, which should be refreshed
+     */
+    public DirtyTiles removeWeightedData(Collection<WeightedLatLng> data) {
+        return updateData(data, false);
+    }
+
+    private DirtyTiles updateData(Collection<WeightedLatLng> data, boolean add) {
+        double[] changedX = new double[data.size()];
+        double[] changedY = new double[data.size()];
+        int changed = 0;
+        boolean[] zoomDirty = new boolean[MAX_ZOOM_LEVEL];
+        int maxRadius;
+
+        mDataLock.writeLock().lock();
+        try {
+            if (mStore != null) {
+                throw new IllegalStateException(
+                        "Points can't be added to or removed from a point store.");
+            }
+            mMutationCount++;
+            maxRadius = mRadiusSchedule.getMaxRadius();
+            if (mMaxIntensityPyramids == null) {
+                // Keep the cells from now on, so the estimates can be updated in place
+                mMaxIntensityPyramids = new MaxIntensityPyramids(MAX_ZOOM_LEVEL, mRadiusSchedule,
+                        TILE_DIM);
+                if (mTimeDecay != null) {
+                    mMaxIntensityPyramids.addAll(decay(getData()));
+                } else {
+                    mMaxIntensityPyramids.addAll(getData());
+                }
+            }
+            if (add && !data.isEmpty()) {
+                Bounds added = getBounds(data);
+                mBounds = union(mBounds, added);
+                if (!mTreeBounds.contains(added)) {
+                    growTree(added);
+                }
+            }
+
+            for (WeightedLatLng l : data) {
+                double intensity = getDecayedIntensity(l);
+                if (add) {
+                    mTree.add(l);
+                } else if (mTree.remove(l)) {
+                    intensity = -intensity;
+                } else {
+                    // Not part of the dataset
+                    continue;
+                }
+                Point p = l.getPoint();
+                if (mPyramid != null) {
+                    mPyramid.add(p.x, p.y, intensity);
+                }
+                mMaxIntensityPyramids.add(p.x, p.y, intensity);
+                changedX[changed] = p.x;
+                changedY[changed] = p.y;
+                changed++;
+            }
+
+            // Only recolor whole zoom levels when their maximum moved noticeably
+            double[] maxIntensity = mMaxIntensity.clone();
+            for (int zoom = 0; zoom < MAX_ZOOM_LEVEL; zoom++) {
+                double estimate = mMaxIntensityPyramids.getMax(zoom);
+                if (Math.abs(estimate - maxIntensity[zoom])
+                        > MAX_INTENSITY_TOLERANCE * maxIntensity[zoom]) {
+                    maxIntensity[zoom] = estimate;
+                    zoomDirty[zoom] = true;
+                }
+            }
+            mMaxIntensity = maxIntensity;
+        } finally {
+            mDataLock.writeLock().unlock();
+        }
+
+        changedX = Arrays.copyOf(changedX, changed);
+        changedY = Arrays.copyOf(changedY, changed);
+        DirtyTiles dirty = new DirtyTiles(changedX, changedY, maxRadius, TILE_DIM, zoomDirty);
+        if (mTileCache != null) {
+            mTileCache.invalidate(dirty);
+        }
+        // Peaks are found with a margin of one pixel around their tile
+        mPeakCache.invalidate(new DirtyTiles(changedX, changedY, maxRadius + 1, TILE_DIM,
+                zoomDirty));
+        onTilesChanged(dirty);
+        return dirty;
+    }
+
+    /**
+     * Rebuilds the quad tree with bounds that also cover the given bounds, with some margin so
+     * that further additions nearby don't need another rebuild.
+     * Must hold the write lock.
+     */
+    private void growTree(Bounds added) {
+        Bounds bounds = union(mTreeBounds, added);
+        double marginX = (bounds.maxX - bounds.minX) / 2;
+        double marginY = (bounds.maxY - bounds.minY) / 2;
+        Bounds grown = new Bounds(Math.max(0, bounds.minX - marginX),
+                Math.min(WORLD_WIDTH, bounds.maxX + marginX),
+                Math.max(0, bounds.minY - marginY),
+                Math.min(WORLD_WIDTH, bounds.maxY + marginY));
+
+        Collection<WeightedLatLng> points = getData();
+        mTreeBounds = grown;
+        mTree = new FlatPointQuadTree<WeightedLatLng>(mTreeBounds);
+        for (WeightedLatLng l : points) {
+            mTree.add(l);
+        }
+    }
+
+    /**
+     * @return all points of the dataset. Must hold the lock.
+     */
+    private Collection<WeightedLatLng> getData() {
+        return mTree.search(mTreeBounds);
+    }
+
+    private static Bounds union(Bounds a, Bounds b) {
+        return new Bounds(Math.min(a.minX, b.minX), Math.max(a.maxX, b.maxX),
+                Math.min(a.minY, b.minY), Math.max(a.maxY, b.maxY));
+    }
+
+    /**
+     * Changes the dataset the heatmap is portraying. Unweighted.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param data Data set of points to use in the heatmap, as LatLngs.
+     */
+    public void setData(Collection<LatLng> data) {
+        // Turn them into WeightedLatLngs and delegate.
+        setWeightedData(wrapData(data));
+    }
+
+    /**
+     * Builds the intensity pyramid of the current points.
+     * Must hold the write lock.
+     */
+    private IntensityPyramid buildPyramid() {
+        return buildPyramid(mStore == null ? getData() : null);
+    }
+
+    /**
+     * Helper function - bins points into an intensity pyramid, decayed if need be.
+     *
+     * @param data Points to bin, or null for the points of mStore to display
+     * @return the pyramid, or null if disabled
+     */
+    private IntensityPyramid buildPyramid(Collection<WeightedLatLng> data) {
+        if (mPyramidMaxZoom < 0) {
+            return null;
+        }
+        IntensityPyramid pyramid = new IntensityPyramid(mPyramidMaxZoom, TILE_DIM);
+        if (data == null) {
+            pyramid.addAll(getStorePoints());
+        } else if (mTimeDecay != null) {
+            pyramid.addAll(decay(data));
+        } else {
+            pyramid.addAll(data);
+        }
+        return pyramid;
+    }
+
+    /**
+     * @return the points of mStore to display
+     */
+    private WeightedPointStore getStorePoints() {
+        if (mWindow == null) {
+            return mStore;
+        }
+        if (mTimeDecay != null) {
+            return new DecayedWindow(mWindow, mTimeDecay, mDecayTime);
+        }
+        return mWindow;
+    }
+
+    /**
+     * @return the intensity of a point, decayed by its age if need be
+     */
+    private double getDecayedIntensity(WeightedLatLng point) {
+        TimeDecay decay = mTimeDecay;
+        if (decay == null) {
+            return point.getIntensity();
+        }
+        return point.getIntensity() * decay.getWeight(mDecayTime - point.getTime());
+    }
+
+    /**
+     * Copies points with their intensities decayed by their age.
+     */
+    private WeightedPointStore decay(Collection<WeightedLatLng> data) {
+        ColumnarPointStore store = new ColumnarPointStore(data.size());
+        for (WeightedLatLng l : data) {
+            Point p = l.getPoint();
+            store.addPoint(p.x, p.y, getDecayedIntensity(l));
+        }
+        return store;
+    }
+
+    /**
+     * Helper function - wraps LatLngs into WeightedLatLngs.
+     *
+     * @param data Data to wrap (LatLng)
+     * @return Data, in WeightedLatLng form
+     */
+    private static Collection<WeightedLatLng> wrapData(Collection<LatLng> data) {
+        // Use an ArrayList as it is a nice collection
+        ArrayList<WeightedLatLng> weightedData = new ArrayList<WeightedLatLng>();
+
+        for (LatLng l : data) {
+            weightedData.add(new WeightedLatLng(l));
+        }
+
+        return weightedData;
+    }
+
+    /**
+     * Creates tile, or returns it from the tile cache if enabled.
+     *
+     * @param x    X coordinate of tile.
+     * @param y    Y coordinate of tile.
+     * @param zoom Zoom level.
+     * @return image in Tile format
+     */
+    public Tile getTile(int x, int y, int zoom) {
+        TileCache<Tile> cache = mTileCache;
+        if (cache == null) {
+            return renderTile(x, y, zoom);
+        }
+        // Versions are read before rendering, so a tile rendered from state that changes in the
+        // meantime is stored under a key that is never looked up again
+        TileCache.Key key = new TileCache.Key(x, y, zoom, mRadiusSchedule.getRadius(zoom),
+                mStyleVersion, mDataVersion);
+        Tile tile = cache.get(key);
+        if (tile == null) {
+            // Points added or removed while rendering may already have invalidated this tile
+            int mutationCount = mMutationCount;
+            tile = renderTile(x, y, zoom);
+            if (mutationCount == mMutationCount) {
+                cache.put(key, tile);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Creates tile.
+     *
+     * @param x    X coordinate of tile.
+     * @param y    Y coordinate of tile.
+     * @param zoom Zoom level.
+     * @return image in Tile format
+     */
+    private Tile renderTile(int x, int y, int zoom) {
+        // Convolved with the margin the peaks need, so that rendered tiles fill the peak cache
+        TileCache.Key peakKey = peakKey(x, y, zoom);
+        int mutationCount = mMutationCount;
+        int dim = TILE_DIM + 2 * PEAK_MARGIN;
+        TileBuffers buffers = TileBuffers.get();
+        float[] convolved = buffers.output(dim * dim);
+        GridExtent extent = convolveTile(x, y, zoom, PEAK_MARGIN, buffers, convolved);
+        if (mPeakCache.get(peakKey) == null) {
+            TilePeaks peaks = extent == null
+                    ? TilePeaks.EMPTY : TilePeaks.find(convolved, dim, PEAK_MARGIN, extent);
+            if (mutationCount == mMutationCount) {
+                mPeakCache.put(peakKey, peaks);
+            }
+        }
+        // If no points, return blank tile
+        if (extent == null) {
+            return TileProvider.NO_TILE;
+        }
+        cropMargin(convolved, dim, PEAK_MARGIN, extent);
+
+        // Color it into palette indices
+        int[] palette = mPalette;
+        int[] pixels = buffers.pixels(TILE_DIM * TILE_DIM);
+        colorize(convolved, TILE_DIM, palette.length - 1, mMaxIntensity[zoom], extent, pixels);
+
+        // Encode into a tile and return
+        return new Tile(TILE_DIM, TILE_DIM, mTileEncoder.encode(pixels, TILE_DIM, palette));
+    }
+
+    /**
+     * Moves the pixels of a tile convolved with a margin to the start of its grid, as a grid of
+     * TILE_DIM, and moves its extent with them.
+     */
+    private static void cropMargin(float[] grid, int dim, int margin, GridExtent extent) {
+        // Rows only move towards the start, so each is read before it is overwritten
+        for (int row = 0; row < TILE_DIM; row++) {
+            System.arraycopy(grid, (row + margin) * dim + margin, grid, row * TILE_DIM, TILE_DIM);
+        }
+        extent.minX -= margin;
+        extent.maxX -= margin;
+        extent.minY -= margin;
+        extent.maxY -= margin;
+    }
+
+    /**
+     * Computes the intensity of a tile relative to the maximum intensity of its zoom level,
+     * where 1 maps to the last color of the gradient.
+     *
+     * @param x    X coordinate of tile.
+     * @param y    Y coordinate of tile.
+     * @param zoom Zoom level.
+     * @param out  row-major grid to write, TILE_DIM * TILE_DIM values
+     * @return whether the tile has any points
+     */
+    boolean getRelativeIntensity(int x, int y, int zoom, float[] out) {
+        TileBuffers buffers = TileBuffers.get();
+        float[] convolved = buffers.output(TILE_DIM * TILE_DIM);
+        GridExtent extent = convolveTile(x, y, zoom, 0, buffers, convolved);
+        Arrays.fill(out, 0, TILE_DIM * TILE_DIM, 0);
+        if (extent == null) {
+            return false;
+        }
+        // Only the part of the grid within the extent is written
+        float scale = (float) (1 / mMaxIntensity[zoom]);
+        int minX = Math.max(extent.minX, 0);
+        int maxX = Math.min(extent.maxX, TILE_DIM - 1);
+        for (int row = Math.max(extent.minY, 0); row <= Math.min(extent.maxY, TILE_DIM - 1);
+             row++) {
+            for (int index = row * TILE_DIM + minX; index <= row * TILE_DIM + maxX; index++) {
+                out[index] = convolved[index] * scale;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the densest spots of a region: the local maxima of the intensity of the heatmap at a
+     * zoom level, strongest first. Maxima within the radius of the zoom level from a stronger
+     * one are suppressed, as part of the same hotspot.
+     * The maxima of each tile are cached, and found whenever a tile is rendered, so a region
+     * whose tiles are on screen is answered from the cache, as is a region searched before once
+     * panned. Other tiles are convolved again to search them, which takes about as long as
+     * rendering them.
+     *
+     * @param bounds region to search, such as the visible region of the map
+     * @param zoom   zoom level of the heatmap to search
+     * @param count  maximum number of hotspots to return
+     * @return up to count hotspots, strongest first
+     */
+    public List<Hotspot> getHotspots(LatLngBounds bounds, int zoom, int count) {
+        if (zoom < 0 || zoom >= MAX_ZOOM_LEVEL) {
+            throw new IllegalArgumentException("Zoom level not within bounds.");
+        }
+        if (count <= 0) {
+            throw new IllegalArgumentException("Count must be positive.");
+        }
+        // Pixels of the region, x possibly wrapped around past the antimeridian
+        long worldDim = (long) TILE_DIM << zoom;
+        Point southWest = PROJECTION.toPoint(bounds.southwest);
+        Point northEast = PROJECTION.toPoint(bounds.northeast);
+        long minX = (long) Math.floor(southWest.x / WORLD_WIDTH * worldDim);
+        long maxX = (long) Math.floor(northEast.x / WORLD_WIDTH * worldDim);
+        if (bounds.southwest.longitude > bounds.northeast.longitude) {
+            // Crosses the antimeridian
+            maxX += worldDim;
+        }
+        maxX = Math.min(maxX, minX + worldDim - 1);
+        // Pixel y grows southwards
+        long minY = Math.max((long) Math.floor(northEast.y / WORLD_WIDTH * worldDim), 0);
+        long maxY = Math.min((long) Math.floor(southWest.y / WORLD_WIDTH * worldDim),
+                worldDim - 1);
+
+        double scale = 1 / mMaxIntensity[zoom];
+        int tileCount = 1 << zoom;
+        List<Hotspot.Candidate> candidates = new ArrayList<Hotspot.Candidate>();
+        for (long tileY = minY / TILE_DIM; tileY <= maxY / TILE_DIM; tileY++) {
+            for (long tileX = minX / TILE_DIM; tileX <= maxX / TILE_DIM; tileX++) {
+                TilePeaks peaks = getTilePeaks((int) (tileX % tileCount), (int) tileY, zoom);
+                for (int i = 0; i < peaks.size(); i++) {
+                    long x = tileX * TILE_DIM + peaks.getX(i);
+                    long y = tileY * TILE_DIM + peaks.getY(i);
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                        candidates.add(new Hotspot.Candidate(x, y,
+                                peaks.getIntensity(i) * scale));
+                    }
+                }
+            }
+        }
+        return Hotspot.suppress(candidates, mRadiusSchedule.getRadius(zoom), count, worldDim);
+    }
+
+    /**
+     * @return the local maxima of a tile, from the cache or found on its smoothed intensities
+     */
+    private TilePeaks getTilePeaks(int x, int y, int zoom) {
+        TileCache.Key key = peakKey(x, y, zoom);
+        TilePeaks peaks = mPeakCache.get(key);
+        if (peaks == null) {
+            int mutationCount = mMutationCount;
+            int dim = TILE_DIM + 2 * PEAK_MARGIN;
+            TileBuffers buffers = TileBuffers.get();
+            float[] convolved = buffers.output(dim * dim);
+            GridExtent extent = convolveTile(x, y, zoom, PEAK_MARGIN, buffers, convolved);
+            peaks = extent == null
+                    ? TilePeaks.EMPTY : TilePeaks.find(convolved, dim, PEAK_MARGIN, extent);
+            if (mutationCount == mMutationCount) {
+                mPeakCache.put(key, peaks);
+            }
+        }
+        return peaks;
+    }
+
+    /**
+     * @return the key of the peaks of a tile, read before convolving it so that peaks found
+     * from state that changes in the meantime are never looked up
+     */
+    private TileCache.Key peakKey(int x, int y, int zoom) {
+        return new TileCache.Key(x, y, zoom, mRadiusSchedule.getRadius(zoom), mStyleVersion,
+                mDataVersion);
+    }
+
+    /**
+     * Evaluates the intensity of the heatmap at a position, as rendered at a zoom level: the
+     * kernel-weighted sum of the points around the pixel containing the position, without
+     * rendering tiles. Pixels evaluated recently are cached.
+     *
+     * @param position position to evaluate
+     * @param zoom     zoom level, whose radius and pixels to use
+     * @return intensity at the position, which the heatmap colors relative to
+     * {@link #getMaxIntensity(int)}
+     */
+    public double densityAt(LatLng position, int zoom) {
+        return densityAt(Collections.singletonList(position), zoom)[0];
+    }
+
+    /**
+     * Evaluates the intensity of the heatmap at several positions, such as the points of a
+     * route. Positions are evaluated in spatial order, so that nearby ones search the same
+     * parts of the quad tree one after the other.
+     *
+     * @see #densityAt(LatLng, int)
+     */
+    public double[] densityAt(List<LatLng> positions, int zoom) {
+        if (zoom < 0 || zoom >= MAX_ZOOM_LEVEL) {
+            throw new IllegalArgumentException("Zoom level not within bounds.");
+        }
+        return evaluateDensity(positions, WORLD_WIDTH / ((double) TILE_DIM * (1 << zoom)),
+                mKernel.getWeights(mRadiusSchedule.getRadius(zoom)));
+    }
+
+    /**
+     * Evaluates the intensity of a heatmap with a radius on the ground at a position. The
+     * position is evaluated in cells of the size of a pixel at the zoom level where the radius
+     * spans DEFAULT_RADIUS pixels, and recently evaluated cells are cached.
+     *
+     * @param position     position to evaluate
+     * @param radiusMeters radius of the kernel on the ground, in meters
+     * @return intensity at the position, in the units of {@link #densityAt(LatLng, int)}
+     */
+    public double densityAtRadius(LatLng position, double radiusMeters) {
+        return densityAtRadius(Collections.singletonList(position), radiusMeters)[0];
+    }
 
-        mRadius = builder.radius;
-        mGradient = builder.gradient;
-        mOpacity = builder.opacity;
+    /**
+     * Evaluates the intensity of a heatmap with a radius on the ground at several positions.
+     * Distances are measured at the mean latitude of the positions, which suits positions up
+     * to a few hundred kilometers apart.
+     *
+     * @see #densityAtRadius(LatLng, double)
+     * @see #densityAt(List, int)
+     */
+    public double[] densityAtRadius(List<LatLng> positions, double radiusMeters) {
+        if (!(radiusMeters > 0)) {
+            throw new IllegalArgumentException("Radius must be positive.");
+        }
+        if (positions.isEmpty()) {
+            return new double[0];
+        }
+        double latitude = 0;
+        for (LatLng position : positions) {
+            latitude += position.latitude / positions.size();
+        }
+        // Longitude spanned by the radius, as in RadiusSchedule.meters
+        double degreeMeters = SphericalUtil.computeDistanceBetween(new LatLng(latitude, 0),
+                new LatLng(latitude, 1));
+        double radius = radiusMeters / degreeMeters / 360 * WORLD_WIDTH;
+        return evaluateDensity(positions, radius / DEFAULT_RADIUS,
+                mKernel.getWeights(DEFAULT_RADIUS));
+    }
 
-        // Compute kernel density function (sd = 1/3rd of radius)
-        mKernel = generateKernel(mRadius, mRadius / 3.0);
+    /**
+     * Evaluates the intensity of the heatmap in the cells containing positions.
+     *
+     * @param cellWidth width of a cell, in world units
+     * @param kernel    kernel to weight the points with, in cells
+     */
+    private double[] evaluateDensity(List<LatLng> positions, double cellWidth,
+                                     double[] kernel) {
+        int count = positions.size();
+        final long[] cellX = new long[count];
+        final long[] cellY = new long[count];
+        final long[] order = new long[count];
+        Integer[] indices = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            Point point = PROJECTION.toPoint(positions.get(i));
+            cellX[i] = (long) Math.floor(point.x / cellWidth);
+            cellY[i] = (long) Math.floor(point.y / cellWidth);
+            order[i] = interleave(cellX[i]) | (interleave(cellY[i]) << 1);
+            indices[i] = i;
+        }
+        // Z-order curve: nearby cells are evaluated one after the other
+        Arrays.sort(indices, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return order[a] < order[b] ? -1 : (order[a] == order[b] ? 0 : 1);
+            }
+        });
+
+        double[] density = new double[count];
+        mDataLock.readLock().lock();
+        try {
+            int mutationCount = mMutationCount;
+            for (int index : indices) {
+                DensityCell cell = new DensityCell(cellX[index], cellY[index], cellWidth, kernel,
+                        mutationCount);
+                Double value = mDensityCache.get(cell);
+                if (value == null) {
+                    value = sumDensity(cellX[index], cellY[index], cellWidth, kernel);
+                    mDensityCache.put(cell, value);
+                }
+                density[index] = value;
+            }
+        } finally {
+            mDataLock.readLock().unlock();
+        }
+        return density;
+    }
 
-        // Generate color map
-        setGradient(mGradient);
+    /**
+     * @return the lower 31 bits of a value, spread to the even bits
+     */
+    private static long interleave(long value) {
+        long bits = value & 0x7fffffffL;
+        bits = (bits | (bits << 16)) & 0x0000ffff0000ffffL;
+        bits = (bits | (bits << 8)) & 0x00ff00ff00ff00ffL;
+        bits = (bits | (bits << 4)) & 0x0f0f0f0f0f0f0f0fL;
+        bits = (bits | (bits << 2)) & 0x3333333333333333L;
+        bits = (bits | (bits << 1)) & 0x5555555555555555L;
+        return bits;
+    }
 
-        // Set the data
-        setWeightedData(mData);
+    /**
+     * Adds up the points around a cell, weighted by the kernel as when rendering.
+     * Must hold the read lock.
+     */
+    private double sumDensity(long cellX, long cellY, double cellWidth, double[] kernel) {
+        int radius = kernel.length / 2;
+        DensitySum sum = new DensitySum(cellX, cellY, cellWidth, kernel);
+        Bounds bounds = new Bounds((cellX - radius) * cellWidth, (cellX + radius + 1) * cellWidth,
+                (cellY - radius) * cellWidth, (cellY + radius + 1) * cellWidth);
+        if (mStore == null) {
+            mTree.search(bounds, WORLD_WIDTH, sum);
+            return sum.total;
+        }
+        sum.mStore = getStorePoints();
+        searchStore(bounds, sum);
+        // Deal with overlap across lat = 180 both ways, as in bucketStore
+        if (bounds.minX < 0) {
+            sum.xOffset = -WORLD_WIDTH;
+            searchStore(new Bounds(bounds.minX + WORLD_WIDTH, WORLD_WIDTH, bounds.minY,
+                    bounds.maxY), sum);
+        }
+        if (bounds.maxX > WORLD_WIDTH) {
+            sum.xOffset = WORLD_WIDTH;
+            searchStore(new Bounds(0, bounds.maxX - WORLD_WIDTH, bounds.minY, bounds.maxY), sum);
+        }
+        return sum.total;
     }
 
     /**
-     * Changes the dataset the heatmap is portraying. Weighted.
-     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
-     *
-     * @param data Data set of points to use in the heatmap, as LatLngs.
-     *             Note: Editing data without calling setWeightedData again will not update the data
-     *             displayed on the map, but will impact calculation of max intensity values,
-     *             as the collection you pass in is stored.
-     *             Outside of changing the data, max intensity values are calculated only upon
-     *             changing the radius.
+     * Adds up the points around a cell, from the quad tree or from the point store.
      */
-    public void setWeightedData(Collection<WeightedLatLng> data) {
-        // Change point set
-        mData = data;
+    private class DensitySum implements PointQuadTree.Visitor<WeightedLatLng>,
+            PointIndexQuadTree.Visitor {
+        private final long mCellX;
+        private final long mCellY;
+        private final double mCellWidth;
+        private final double[] mKernel;
+        private final int mRadius;
 
-        // Check point set is OK
-        if (mData.isEmpty()) {
-            throw new IllegalArgumentException("No input points.");
-        }
+        /**
+         * Points of the store being searched, if any
+         */
+        WeightedPointStore mStore;
 
-        // Because quadtree bounds are final once the quadtree is created, we cannot add
-        // points outside of those bounds to the quadtree after creation.
-        // As quadtree creation is actually quite lightweight/fast as compared to other functions
-        // called in heatmap creation, re-creating the quadtree is an acceptable solution here.
+        /**
+         * Added to the x coordinate of store points, for points across the antimeridian
+         */
+        double xOffset;
 
-        // Make the quad tree
-        mBounds = getBounds(mData);
+        double total;
 
-        mTree = new PointQuadTree<WeightedLatLng>(mBounds);
+        DensitySum(long cellX, long cellY, double cellWidth, double[] kernel) {
+            mCellX = cellX;
+            mCellY = cellY;
+            mCellWidth = cellWidth;
+            mKernel = kernel;
+            mRadius = kernel.length / 2;
+        }
 
-        // Add points to quad tree
-        for (WeightedLatLng l : mData) {
-            mTree.add(l);
+        @Override
+        public void visit(WeightedLatLng w, double xOffset) {
+            Point p = w.getPoint();
+            add(p.x + xOffset, p.y, getDecayedIntensity(w));
         }
 
-        // Calculate reasonable maximum intensity for color scale (user can also specify)
-        // Get max intensities
-        mMaxIntensity = getMaxIntensities(mRadius);
-    }
+        @Override
+        public void visit(int index) {
+            add(mStore.getX(index) + xOffset, mStore.getY(index), mStore.getIntensity(index));
+        }
 
-    /**
-     * Changes the dataset the heatmap is portraying. Unweighted.
-     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
-     *
-     * @param data Data set of points to use in the heatmap, as LatLngs.
-     */
-    public void setData(Collection<LatLng> data) {
-        // Turn them into WeightedLatLngs and delegate.
-        setWeightedData(wrapData(data));
+        private void add(double x, double y, double intensity) {
+            // Offsets between whole cells, like buckets and pixels when rendering
+            long dx = (long) Math.floor(x / mCellWidth) - mCellX;
+            long dy = (long) Math.floor(y / mCellWidth) - mCellY;
+            if (Math.abs(dx) <= mRadius && Math.abs(dy) <= mRadius) {
+                total += intensity * mKernel[(int) dx + mRadius] * mKernel[(int) dy + mRadius];
+            }
+        }
     }
 
     /**
-     * Helper function - wraps LatLngs into WeightedLatLngs.
-     *
-     * @param data Data to wrap (LatLng)
-     * @return Data, in WeightedLatLng form
+     * A cell whose density was evaluated, with the kernel and the state of the data it was
+     * evaluated with.
      */
-    private static Collection<WeightedLatLng> wrapData(Collection<LatLng> data) {
-        // Use an ArrayList as it is a nice collection
-        ArrayList<WeightedLatLng> weightedData = new ArrayList<WeightedLatLng>();
+    private static final class DensityCell {
+        private final long mX;
+        private final long mY;
+        private final double mWidth;
+        private final double[] mKernel;
+        private final int mMutationCount;
+
+        DensityCell(long x, long y, double width, double[] kernel, int mutationCount) {
+            mX = x;
+            mY = y;
+            mWidth = width;
+            mKernel = kernel;
+            mMutationCount = mutationCount;
+        }
 
-        for (LatLng l : data) {
-            weightedData.add(new WeightedLatLng(l));
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DensityCell)) return false;
+            DensityCell cell = (DensityCell) o;
+            // A Kernel returns the same weights for a radius every time, and setKernel swaps
+            // in another Kernel, so the weights are the same exactly when they are identical
+            return mX == cell.mX && mY == cell.mY && mWidth == cell.mWidth
+                    && mKernel == cell.mKernel && mMutationCount == cell.mMutationCount;
         }
 
-        return weightedData;
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(mWidth);
+            int result = (int) (mX ^ (mX >>> 32));
+            result = 31 * result + (int) (mY ^ (mY >>> 32));
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+            result = 31 * result + System.identityHashCode(mKernel);
+            result = 31 * result + mMutationCount;
+            return result;
+        }
     }
 
     /**
-     * Creates tile.
+     * Buckets and smooths the points of a tile.
      *
-     * @param x    X coordinate of tile.
-     * @param y    Y coordinate of tile.
-     * @param zoom Zoom level.
-     * @return image in Tile format
+     * @param margin    pixels of the neighbouring tiles to include on each side
+     * @param convolved row-major grid to write the smoothed intensities to, dim * dim values
+     *                  where dim = TILE_DIM + 2 * margin, only within the returned extent
+     * @return cells of the grid that may be non-zero, or null if the tile has no points
      */
-    public Tile getTile(int x, int y, int zoom) {
+    private GridExtent convolveTile(int x, int y, int zoom, int margin, TileBuffers buffers,
+                                    float[] convolved) {
         // Convert tile coordinates and zoom into Point/Bounds format
         // Know that at zoom level 0, there is one tile: (0, 0) (arbitrary width 512)
         // Each zoom level multiplies number of tiles by 2
         // Width of the world = WORLD_WIDTH = 1
         // x = [0, 1) corresponds to [-180, 180)
 
+        // The radius and kernel of this zoom level
+        int radius = mRadiusSchedule.getRadius(zoom);
+        double[] kernel = mKernel.getWeights(radius);
+
         // calculate width of one tile, given there are 2 ^ zoom tiles in that zoom level
         // In terms of world width units
         double tileWidth = WORLD_WIDTH / Math.pow(2, zoom);
 
         // how much padding to include in search
-        // is to tileWidth as mRadius (padding in terms of pixels) is to TILE_DIM
+        // is to tileWidth as radius (padding in terms of pixels) is to TILE_DIM
         // In terms of world width units
-        double padding = tileWidth * mRadius / TILE_DIM;
+        int paddingPixels = radius + margin;
+        double padding = tileWidth * paddingPixels / TILE_DIM;
 
         // padded tile width
         // In terms of world width units
@@ -379,7 +1597,7 @@ public class HeatmapTileProvider implements TileProvider {
 
         // padded bucket width - divided by number of buckets
         // In terms of world width units
-        double bucketWidth = tileWidthPadded / (TILE_DIM + mRadius * 2);
+        double bucketWidth = tileWidthPadded / (TILE_DIM + paddingPixels * 2);
 
         // Make bounds: minX, maxX, minY, maxY
         double minX = x * tileWidth - padding;
@@ -387,74 +1605,229 @@ public class HeatmapTileProvider implements TileProvider {
         double minY = y * tileWidth - padding;
         double maxY = (y + 1) * tileWidth + padding;
 
-        // Deal with overlap across lat = 180
-        // Need to make it wrap around both ways
-        // However, maximum tile size is such that you wont ever have to deal with both, so
-        // hence, the else
-        // Note: Tile must remain square, so cant optimise by editing bounds
-        double xOffset = 0;
-        Collection<WeightedLatLng> wrappedPoints = new ArrayList<WeightedLatLng>();
-        if (minX < 0) {
-            // Need to consider "negative" points
-            // (minX to 0) ->  (512+minX to 512) ie +512
-            // add 512 to search bounds and subtract 512 from actual points
-            Bounds overlapBounds = new Bounds(minX + WORLD_WIDTH, WORLD_WIDTH, minY, maxY);
-            xOffset = -WORLD_WIDTH;
-            wrappedPoints = mTree.search(overlapBounds);
-        } else if (maxX > WORLD_WIDTH) {
-            // Cant both be true as then tile covers whole world
-            // Need to consider "overflow" points
-            // (512 to maxX) -> (0 to maxX-512) ie -512
-            // subtract 512 from search bounds and add 512 to actual points
-            Bounds overlapBounds = new Bounds(0, maxX - WORLD_WIDTH, minY, maxY);
-            xOffset = WORLD_WIDTH;
-            wrappedPoints = mTree.search(overlapBounds);
-        }
-
-        // Main tile bounds to search
-        Bounds tileBounds = new Bounds(minX, maxX, minY, maxY);
-
         // If outside of *padded* quadtree bounds, return blank tile
         // This is comparing our bounds to the padded bounds of all points in the quadtree
         // ie tiles that don't touch the heatmap at all
         Bounds paddedBounds = new Bounds(mBounds.minX - padding, mBounds.maxX + padding,
                 mBounds.minY - padding, mBounds.maxY + padding);
-        if (!tileBounds.intersects(paddedBounds)) {
-            return TileProvider.NO_TILE;
+        if (!paddedBounds.intersects(minX, maxX, minY, maxY)) {
+            return null;
         }
 
-        // Search for all points within tile bounds
-        Collection<WeightedLatLng> points = mTree.search(tileBounds);
+        // Quantize points into a reused row-major grid
+        int paddedDim = TILE_DIM + paddingPixels * 2;
+        int dim = TILE_DIM + margin * 2;
+        float[] intensity = buffers.grid(paddedDim * paddedDim);
+        int sparseThreshold = mSparseThreshold;
+        GridExtent extent = buffers.extent(sparseThreshold);
+        boolean found;
+        mDataLock.readLock().lock();
+        try {
+            IntensityPyramid pyramid = mPyramid;
+            if (pyramid != null && zoom <= pyramid.getMaxZoom()) {
+                // Coarse zoom: read the pre-binned pixels instead of every point
+                found = pyramid.fill(x, y, zoom, paddingPixels, intensity, extent);
+            } else if (mStore != null) {
+                found = bucketStore(minX, maxX, minY, maxY, bucketWidth, paddedDim, intensity,
+                        extent);
+            } else {
+                found = bucketPoints(minX, maxX, minY, maxY, bucketWidth, paddedDim, intensity,
+                        extent);
+            }
+        } finally {
+            mDataLock.readLock().unlock();
+        }
+        if (!found) {
+            return null;
+        }
 
-        // If no points, return blank tile
-        if (points.isEmpty()) {
-            return TileProvider.NO_TILE;
+        // Convolve it ("smoothen" it out)
+        Convolver convolver = mConvolver;
+        if (extent.getCellCount() <= sparseThreshold) {
+            // Few points: add up the footprint of each instead of convolving the whole grid
+            KernelFootprint footprint = mFootprints[zoom];
+            if (footprint == null || !footprint.matches(convolver, kernel)) {
+                footprint = new KernelFootprint(convolver, kernel);
+                mFootprints[zoom] = footprint;
+            }
+            footprint.stamp(intensity, paddedDim, extent, convolved, dim);
+        } else {
+            convolver.convolve(intensity, paddedDim, kernel, convolved);
         }
 
-        // Quantize points
-        double[][] intensity = new double[TILE_DIM + mRadius * 2][TILE_DIM + mRadius * 2];
-        for (WeightedLatLng w : points) {
-            Point p = w.getPoint();
-            int bucketX = (int) ((p.x - minX) / bucketWidth);
-            int bucketY = (int) ((p.y - minY) / bucketWidth);
-            intensity[bucketX][bucketY] += w.getIntensity();
+        // Convolution spreads each bucket by the radius, less the padding cropped off
+        extent.minX -= 2 * radius;
+        extent.minY -= 2 * radius;
+        return extent;
+    }
+
+    /**
+     * Searches the quad tree for the points of a padded tile and adds them into its grid.
+     *
+     * @param minX        padded tile bounds, in world units
+     * @param maxX        padded tile bounds, in world units
+     * @param minY        padded tile bounds, in world units
+     * @param maxY        padded tile bounds, in world units
+     * @param bucketWidth width of a grid bucket, in world units
+     * @param paddedDim   dimension of the grid
+     * @param intensity   row-major grid to add into
+     * @return whether any point was found
+     */
+    private boolean bucketPoints(double minX, double maxX, double minY, double maxY,
+                                 double bucketWidth, int paddedDim, float[] intensity,
+                                 GridExtent extent) {
+        // Deal with overlap across lat = 180 in the same search: points within the tile moved
+        // by a world width either way come with the offset of the move
+        // Note: Tile must remain square, so cant optimise by editing bounds
+        PointBucketer bucketer = new PointBucketer(minX, minY, bucketWidth, paddedDim,
+                intensity, extent);
+        mTree.search(new Bounds(minX, maxX, minY, maxY), WORLD_WIDTH, bucketer);
+        return bucketer.found;
+    }
+
+    /**
+     * Adds the points of the quad tree into the grid of a tile.
+     */
+    private class PointBucketer implements PointQuadTree.Visitor<WeightedLatLng> {
+        private final double mMinX;
+        private final double mMinY;
+        private final double mBucketWidth;
+        private final int mPaddedDim;
+        private final float[] mIntensity;
+        private final GridExtent mExtent;
+
+        boolean found;
+
+        PointBucketer(double minX, double minY, double bucketWidth, int paddedDim,
+                      float[] intensity, GridExtent extent) {
+            mMinX = minX;
+            mMinY = minY;
+            mBucketWidth = bucketWidth;
+            mPaddedDim = paddedDim;
+            mIntensity = intensity;
+            mExtent = extent;
         }
-        // Quantize wraparound points (taking xOffset into account)
-        for (WeightedLatLng w : wrappedPoints) {
+
+        @Override
+        public void visit(WeightedLatLng w, double xOffset) {
             Point p = w.getPoint();
-            int bucketX = (int) ((p.x + xOffset - minX) / bucketWidth);
-            int bucketY = (int) ((p.y - minY) / bucketWidth);
-            intensity[bucketX][bucketY] += w.getIntensity();
+            int bucketX = (int) ((p.x + xOffset - mMinX) / mBucketWidth);
+            int bucketY = (int) ((p.y - mMinY) / mBucketWidth);
+            mIntensity[bucketY * mPaddedDim + bucketX] += getDecayedIntensity(w);
+            mExtent.include(bucketX, bucketY);
+            found = true;
         }
+    }
 
-        // Convolve it ("smoothen" it out)
-        double[][] convolved = convolve(intensity, mKernel);
+    /**
+     * Quantizes the points of the point store within the padded tile bounds into the grid,
+     * visiting the quad tree without collecting the points.
+     *
+     * @return whether any points were found
+     */
+    private boolean bucketStore(double minX, double maxX, double minY, double maxY,
+                                double bucketWidth, int paddedDim, float[] intensity,
+                                GridExtent extent) {
+        StoreBucketer bucketer = new StoreBucketer(getStorePoints(), minX, minY, bucketWidth,
+                paddedDim, intensity, extent);
+        searchStore(new Bounds(minX, maxX, minY, maxY), bucketer);
+        // Deal with overlap across lat = 180 both ways, as in bucketPoints
+        if (minX < 0) {
+            bucketer.xOffset = -WORLD_WIDTH;
+            searchStore(new Bounds(minX + WORLD_WIDTH, WORLD_WIDTH, minY, maxY), bucketer);
+        }
+        if (maxX > WORLD_WIDTH) {
+            bucketer.xOffset = WORLD_WIDTH;
+            searchStore(new Bounds(0, maxX - WORLD_WIDTH, minY, maxY), bucketer);
+        }
+        return bucketer.found;
+    }
+
+    /**
+     * Visits the points of mStore to display within a given bounds, indexed as in
+     * getStorePoints().
+     */
+    private void searchStore(Bounds bounds, PointIndexQuadTree.Visitor visitor) {
+        if (mWindow != null) {
+            mWindow.search(bounds, visitor);
+        } else {
+            mStoreTree.search(bounds, visitor);
+        }
+    }
+
+    /**
+     * Adds the points of a point store into the grid of a tile.
+     */
+    static class StoreBucketer implements PointIndexQuadTree.Visitor {
+        private final WeightedPointStore mStore;
+        private final double mMinX;
+        private final double mMinY;
+        private final double mBucketWidth;
+        private final int mPaddedDim;
+        private final float[] mIntensity;
+        private final GridExtent mExtent;
+
+        /**
+         * Added to the x coordinate of points, for points across the antimeridian
+         */
+        double xOffset;
+
+        boolean found;
+
+        StoreBucketer(WeightedPointStore store, double minX, double minY, double bucketWidth,
+                      int paddedDim, float[] intensity, GridExtent extent) {
+            mStore = store;
+            mMinX = minX;
+            mMinY = minY;
+            mBucketWidth = bucketWidth;
+            mPaddedDim = paddedDim;
+            mIntensity = intensity;
+            mExtent = extent;
+        }
+
+        @Override
+        public void visit(int index) {
+            int bucketX = (int) ((mStore.getX(index) + xOffset - mMinX) / mBucketWidth);
+            int bucketY = (int) ((mStore.getY(index) - mMinY) / mBucketWidth);
+            mIntensity[bucketY * mPaddedDim + bucketX] += mStore.getIntensity(index);
+            mExtent.include(bucketX, bucketY);
+            found = true;
+        }
+    }
+
+    /**
+     * The points of a time window, with their intensities decayed by their age.
+     */
+    private static class DecayedWindow implements WeightedPointStore {
+        private final TimedPointStore.Window mWindow;
+        private final TimeDecay mDecay;
+        private final long mNow;
+
+        DecayedWindow(TimedPointStore.Window window, TimeDecay decay, long now) {
+            mWindow = window;
+            mDecay = decay;
+            mNow = now;
+        }
 
-        // Color it into a bitmap
-        Bitmap bitmap = colorize(convolved, mColorMap, mMaxIntensity[zoom]);
+        @Override
+        public int size() {
+            return mWindow.size();
+        }
+
+        @Override
+        public double getX(int index) {
+            return mWindow.getX(index);
+        }
+
+        @Override
+        public double getY(int index) {
+            return mWindow.getY(index);
+        }
 
-        // Convert bitmap to tile and return
-        return convertBitmap(bitmap);
+        @Override
+        public double getIntensity(int index) {
+            return mWindow.getIntensity(index) * mDecay.getWeight(mNow - mWindow.getTime(index));
+        }
     }
 
     /**
@@ -465,21 +1838,114 @@ public class HeatmapTileProvider implements TileProvider {
      */
     public void setGradient(Gradient gradient) {
         mGradient = gradient;
-        mColorMap = gradient.generateColorMap(mOpacity);
+        int[] colorMap = gradient.generateColorMap(mOpacity);
+        int[] palette = new int[colorMap.length + 1];
+        palette[0] = Color.TRANSPARENT;
+        System.arraycopy(colorMap, 0, palette, 1, colorMap.length);
+        mPalette = palette;
+        mStyleVersion++;
+        onAllTilesChanged();
     }
 
     /**
      * Setter for radius.
      * User should clear overlay's tile cache (using clearTileCache()) after calling this.
      *
-     * @param radius Radius to set
+     * @param radius Radius to set, within 10 to 50 inclusive
      */
     public void setRadius(int radius) {
-        mRadius = radius;
-        // need to recompute kernel
-        mKernel = generateKernel(mRadius, mRadius / 3.0);
+        setRadiusSchedule(RadiusSchedule.fixed(radius));
+    }
+
+    /**
+     * Setter for a radius that changes with the zoom level.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param schedule Radius of each zoom level
+     */
+    public void setRadiusSchedule(RadiusSchedule schedule) {
+        mRadiusSchedule = schedule;
         // need to recalculate max intensity
-        mMaxIntensity = getMaxIntensities(mRadius);
+        mDataLock.writeLock().lock();
+        try {
+            mMaxIntensityPyramids = null;
+            mMaxIntensity = getMaxIntensities();
+        } finally {
+            mDataLock.writeLock().unlock();
+        }
+        onAllTilesChanged();
+    }
+
+    /**
+     * Setter for the highest zoom level served from the intensity pyramid.
+     * Rebuilds the pyramid from the current data.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param maxZoom Zoom level in [0, 22), or -1 to always search the points
+     */
+    public void setPyramidMaxZoom(int maxZoom) {
+        if (maxZoom < -1 || maxZoom >= MAX_ZOOM_LEVEL) {
+            throw new IllegalArgumentException("Pyramid zoom level not within bounds.");
+        }
+        mDataLock.writeLock().lock();
+        try {
+            mPyramidMaxZoom = maxZoom;
+            mPyramid = buildPyramid();
+        } finally {
+            mDataLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Setter for the kernel.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param kernel Kernel to set
+     */
+    public void setKernel(Kernel kernel) {
+        if (kernel == null) {
+            throw new IllegalArgumentException("Kernel must not be null.");
+        }
+        mKernel = kernel;
+        mStyleVersion++;
+        onAllTilesChanged();
+    }
+
+    /**
+     * Setter for the convolution engine.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param convolver Convolver to set
+     */
+    public void setConvolver(Convolver convolver) {
+        mConvolver = convolver;
+        mStyleVersion++;
+        onAllTilesChanged();
+    }
+
+    /**
+     * Setter for the number of grid cells up to which tiles are rendered cell by cell.
+     * Does not change how tiles look, beyond rounding.
+     *
+     * @param sparseThreshold Number of grid cells, or 0 to always convolve
+     */
+    public void setSparseThreshold(int sparseThreshold) {
+        if (sparseThreshold < 0) {
+            throw new IllegalArgumentException("Sparse threshold must not be negative.");
+        }
+        mSparseThreshold = sparseThreshold;
+    }
+
+    /**
+     * Setter for the tile encoder.
+     * User should clear overlay's tile cache (using clearTileCache()) after calling this.
+     *
+     * @param tileEncoder TileEncoder to set
+     */
+    public void setTileEncoder(TileEncoder tileEncoder) {
+        mTileEncoder = tileEncoder;
+        mStyleVersion++;
+        onAllTilesChanged();
     }
 
     /**
@@ -495,44 +1961,117 @@ public class HeatmapTileProvider implements TileProvider {
     }
 
     /**
-     * Gets array of maximum intensity values to use with the heatmap for each zoom level
-     * This is the value that the highest color on the color map corresponds to
+     * @param zoom zoom level
+     * @return intensity mapped to the last color of the gradient at the zoom level
+     */
+    public double getMaxIntensity(int zoom) {
+        if (zoom < 0 || zoom >= MAX_ZOOM_LEVEL) {
+            throw new IllegalArgumentException("Zoom level not within bounds.");
+        }
+        return mMaxIntensity[zoom];
+    }
+
+    /**
+     * @return number of tiles returned from the tile cache, or 0 if it is disabled
+     */
+    public int getTileCacheHitCount() {
+        return mTileCache == null ? 0 : mTileCache.hitCount();
+    }
+
+    /**
+     * @return number of tiles that had to be rendered as they weren't in the tile cache,
+     * or 0 if it is disabled
+     */
+    public int getTileCacheMissCount() {
+        return mTileCache == null ? 0 : mTileCache.missCount();
+    }
+
+    /**
+     * @return number of tiles dropped from the tile cache, to stay within its byte budget or
+     * because they were invalidated; 0 if it is disabled
+     */
+    public int getTileCacheEvictionCount() {
+        return mTileCache == null ? 0 : mTileCache.evictionCount();
+    }
+
+    /**
+     * Sets the listener notified whenever tiles of the heatmap change, for example to refresh
+     * the overlay. Replaces any previous listener.
      *
-     * @param radius radius of the heatmap
-     * @return array of maximum intensities
+     * @param listener listener to notify, or null to stop notifying
      */
-    private double[] getMaxIntensities(int radius) {
-        // Can go from zoom level 3 to zoom level 22
-        double[] maxIntensityArray = new double[MAX_ZOOM_LEVEL];
-
-        // Calculate max intensity for each zoom level
-        for (int i = DEFAULT_MIN_ZOOM; i < DEFAULT_MAX_ZOOM; i++) {
-            // Each zoom level multiplies viewable size by 2
-            maxIntensityArray[i] = getMaxValue(mData, mBounds, radius,
-                    (int) (SCREEN_SIZE * Math.pow(2, i - 3)));
-            if (i == DEFAULT_MIN_ZOOM) {
-                for (int j = 0; j < i; j++) maxIntensityArray[j] = maxIntensityArray[i];
-            }
+    public void setOnDirtyTilesListener(OnDirtyTilesListener listener) {
+        mOnDirtyTilesListener = listener;
+    }
+
+    /**
+     * Gets the tiles of a zoom level that changed since the last call for that zoom level, so
+     * that only those tiles need to be rendered again.
+     * Changes to the radius, gradient, opacity or whole dataset, large changes to the maximum
+     * intensity, and more than MAX_DIRTY_POINTS changed points since the last call all affect
+     * every tile: the overlay's tile cache should then be cleared (using clearTileCache()).
+     *
+     * @param zoom Zoom level
+     * @return coordinates of the changed tiles, or null if every tile of the zoom level changed
+     */
+    public Set<TileCoordinate> drainDirtyTiles(int zoom) {
+        if (zoom < 0 || zoom >= MAX_ZOOM_LEVEL) {
+            throw new IllegalArgumentException("Zoom level not within bounds.");
+        }
+        return mDirtyTileLog.drain(zoom);
+    }
+
+    /**
+     * Drops every cached tile, and records that every tile changed.
+     */
+    private void onAllTilesChanged() {
+        if (mTileCache != null) {
+            mTileCache.invalidate();
+        }
+        mPeakCache.invalidate();
+        onTilesChanged(DirtyTiles.all(mRadiusSchedule.getMaxRadius(), TILE_DIM,
+                MAX_ZOOM_LEVEL));
+    }
+
+    /**
+     * Records changed tiles and notifies the listener.
+     */
+    private void onTilesChanged(DirtyTiles dirty) {
+        if (dirty.isEmpty()) {
+            return;
         }
-        for (int i = DEFAULT_MAX_ZOOM; i < MAX_ZOOM_LEVEL; i++) {
-            maxIntensityArray[i] = maxIntensityArray[DEFAULT_MAX_ZOOM - 1];
+        mDirtyTileLog.record(dirty);
+        OnDirtyTilesListener listener = mOnDirtyTilesListener;
+        if (listener != null) {
+            listener.onDirtyTiles(dirty);
         }
+    }
 
-        return maxIntensityArray;
+    /**
+     * Gets the maximum intensities of the current points.
+     * Must hold the write lock.
+     */
+    private double[] getMaxIntensities() {
+        return getMaxIntensities(mStore == null ? getData() : null);
     }
 
     /**
-     * helper function - convert a bitmap into a tile
+     * Gets array of maximum intensity values to use with the heatmap for each zoom level
+     * This is the value that the highest color on the color map corresponds to
      *
-     * @param bitmap bitmap to convert into a tile
-     * @return the tile
+     * @param data points of the heatmap, or null for the points of mStore to display
+     * @return array of maximum intensities
      */
-    private static Tile convertBitmap(Bitmap bitmap) {
-        // Convert it into byte array (required for tile creation)
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
-        byte[] bitmapdata = stream.toByteArray();
-        return new Tile(TILE_DIM, TILE_DIM, bitmapdata);
+    private double[] getMaxIntensities(Collection<WeightedLatLng> data) {
+        if (data == null) {
+            return MaxIntensityPyramids.computeMaxima(getStorePoints(), MAX_ZOOM_LEVEL,
+                    mRadiusSchedule, TILE_DIM);
+        } else if (mTimeDecay != null) {
+            return MaxIntensityPyramids.computeMaxima(decay(data), MAX_ZOOM_LEVEL,
+                    mRadiusSchedule, TILE_DIM);
+        }
+        return MaxIntensityPyramids.computeMaxima(data, MAX_ZOOM_LEVEL, mRadiusSchedule,
+                TILE_DIM);
     }
 
     /* Utility functions below */
@@ -587,6 +2126,7 @@ public class HeatmapTileProvider implements TileProvider {
 
     /**
      * Applies a 2D Gaussian convolution to the input grid, returning a 2D grid cropped of padding.
+     * Reference implementation of {@link ExactConvolver}, which works on flat reusable grids.
      *
      * @param grid   Raw input grid to convolve: dimension (dim + 2 * radius) x (dim + 2 * radius)
      *               ie dim * dim with padding of size radius
@@ -666,108 +2206,45 @@ public class HeatmapTileProvider implements TileProvider {
     }
 
     /**
-     * Converts a grid of intensity values to a colored Bitmap, using a given color map
+     * Converts a row-major grid of intensity values to palette indices, using a given color map
      *
-     * @param grid     the input grid (assumed to be square)
-     * @param colorMap color map (created by generateColorMap)
-     * @param max      Maximum intensity value: maps to 100% on gradient
-     * @return the colorized grid in Bitmap form, with same dimensions as grid
+     * @param grid         the input grid, dim * dim values
+     * @param dim          dimension of the input grid
+     * @param colorMapSize number of colors in the color map (created by generateColorMap)
+     * @param max          Maximum intensity value: maps to 100% on gradient
+     * @param extent       cells of the grid that may be non-zero; may extend past the grid
+     * @param pixels       palette indices to write, dim * dim values: 0 for transparent, and
+     *                     1 + the color map index otherwise
      */
-    static Bitmap colorize(double[][] grid, int[] colorMap, double max) {
-        // Maximum color value
-        int maxColor = colorMap[colorMap.length - 1];
+    static void colorize(float[] grid, int dim, int colorMapSize, double max, GridExtent extent,
+                         int[] pixels) {
         // Multiplier to "scale" intensity values with, to map to appropriate color
-        double colorMapScaling = (colorMap.length - 1) / max;
-        // Dimension of the input grid (and dimension of output bitmap)
-        int dim = grid.length;
-
-        int i, j, index, col;
-        double val;
-        // Array of colors
-        int colors[] = new int[dim * dim];
-        for (i = 0; i < dim; i++) {
-            for (j = 0; j < dim; j++) {
-                // [x][y]
-                // need to enter each row of x coordinates sequentially (x first)
-                // -> [j][i]
-                val = grid[j][i];
-                index = i * dim + j;
-                col = (int) (val * colorMapScaling);
-
-                if (val != 0) {
-                    // Make it more resilient: cant go outside colorMap
-                    if (col < colorMap.length) colors[index] = colorMap[col];
-                    else colors[index] = maxColor;
-                } else {
-                    colors[index] = Color.TRANSPARENT;
-                }
-            }
+        float colorMapScaling = (float) ((colorMapSize - 1) / max);
+        int maxColor = colorMapSize - 1;
+
+        // Everything outside of the extent is transparent
+        int minX = Math.max(extent.minX, 0);
+        int maxX = Math.min(extent.maxX, dim - 1);
+        int minY = Math.max(extent.minY, 0);
+        int maxY = Math.min(extent.maxY, dim - 1);
+        if (minX > maxX || minY > maxY) {
+            Arrays.fill(pixels, 0, dim * dim, 0);
+            return;
         }
-
-        // Now turn these colors into a bitmap
-        Bitmap tile = Bitmap.createBitmap(dim, dim, Bitmap.Config.ARGB_8888);
-        // (int[] pixels, int offset, int stride, int x, int y, int width, int height)
-        tile.setPixels(colors, 0, dim, 0, 0, dim, dim);
-        return tile;
-    }
-
-    /**
-     * Calculate a reasonable maximum intensity value to map to maximum color intensity
-     *
-     * @param points    Collection of LatLngs to put into buckets
-     * @param bounds    Bucket boundaries
-     * @param radius    radius of convolution
-     * @param screenDim larger dimension of screen in pixels (for scale)
-     * @return Approximate max value
-     */
-    static double getMaxValue(Collection<WeightedLatLng> points, Bounds bounds, int radius,
-                              int screenDim) {
-        // Approximate scale as if entire heatmap is on the screen
-        // ie scale dimensions to larger of width or height (screenDim)
-        double minX = bounds.minX;
-        double maxX = bounds.maxX;
-        double minY = bounds.minY;
-        double maxY = bounds.maxY;
-        double boundsDim = (maxX - minX > maxY - minY) ? maxX - minX : maxY - minY;
-
-        // Number of buckets: have diameter sized buckets
-        int nBuckets = (int) (screenDim / (2 * radius) + 0.5);
-        // Scaling factor to convert width in terms of point distance, to which bucket
-        double scale = nBuckets / boundsDim;
-
-        // Make buckets
-        // Use a sparse array - use LongSparseArray just in case
-        LongSparseArray<LongSparseArray<Double>> buckets = new LongSparseArray<LongSparseArray<Double>>();
-        //double[][] buckets = new double[nBuckets][nBuckets];
-
-        // Assign into buckets + find max value as we go along
-        double x, y;
-        double max = 0;
-        for (WeightedLatLng l : points) {
-            x = l.getPoint().x;
-            y = l.getPoint().y;
-
-            int xBucket = (int) ((x - minX) * scale);
-            int yBucket = (int) ((y - minY) * scale);
-
-            // Check if x bucket exists, if not make it
-            LongSparseArray<Double> column = buckets.get(xBucket);
-            if (column == null) {
-                column = new LongSparseArray<Double>();
-                buckets.put(xBucket, column);
-            }
-            // Check if there is already a y value there
-            Double value = column.get(yBucket);
-            if (value == null) {
-                value = 0.0;
+        Arrays.fill(pixels, 0, minY * dim, 0);
+        Arrays.fill(pixels, (maxY + 1) * dim, dim * dim, 0);
+
+        // The grid is already in bitmap (row-major) order
+        for (int y = minY; y <= maxY; y++) {
+            int row = y * dim;
+            Arrays.fill(pixels, row, row + minX, 0);
+            for (int index = row + minX; index <= row + maxX; index++) {
+                float val = grid[index];
+                // Make it more resilient: cant go outside colorMap
+                pixels[index] = val == 0
+                        ? 0 : Math.min((int) (val * colorMapScaling), maxColor) + 1;
             }
-            value += l.getIntensity();
-            // Yes, do need to update it, despite it being a Double.
-            column.put(yBucket, value);
-
-            if (value > max) max = value;
+            Arrays.fill(pixels, row + maxX + 1, row + dim, 0);
         }
-
-        return max;
     }
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.projection.SphericalMercatorProjection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A local maximum of the intensity of a heatmap, as found by
+ * {@link HeatmapTileProvider#getHotspots}.
+ */
+public class Hotspot {
+
+    private static final SphericalMercatorProjection PROJECTION =
+            new SphericalMercatorProjection(HeatmapTileProvider.WORLD_WIDTH);
+
+    private final LatLng mPosition;
+
+    private final double mIntensity;
+
+    /**
+     * @param position  location of the maximum
+     * @param intensity intensity at the maximum, relative to the maximum intensity of the zoom
+     *                  level
+     */
+    public Hotspot(LatLng position, double intensity) {
+        mPosition = position;
+        mIntensity = intensity;
+    }
+
+    public LatLng getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * @return intensity at the hotspot, relative to the maximum intensity of the zoom level:
+     * 1 maps to the last color of the gradient
+     */
+    public double getIntensity() {
+        return mIntensity;
+    }
+
+    /**
+     * A local maximum not yet suppressed, in pixels of its zoom level.
+     */
+    static class Candidate {
+        final long x;
+        final long y;
+        final double intensity;
+
+        Candidate(long x, long y, double intensity) {
+            this.x = x;
+            this.y = y;
+            this.intensity = intensity;
+        }
+    }
+
+    /**
+     * Keeps the strongest local maxima, suppressing those within a distance of a stronger one.
+     *
+     * @param candidates local maxima, reordered strongest first
+     * @param distance   distance within which a weaker maximum is suppressed, in pixels
+     * @param count      maximum number of hotspots to keep
+     * @param worldDim   width of the world, in pixels
+     * @return up to count hotspots, strongest first
+     */
+    static List<Hotspot> suppress(List<Candidate> candidates, double distance, int count,
+                                  long worldDim) {
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                return Double.compare(b.intensity, a.intensity);
+            }
+        });
+        List<Candidate> kept = new ArrayList<Candidate>();
+        double limit = distance * distance;
+        for (Candidate candidate : candidates) {
+            if (kept.size() == count) {
+                break;
+            }
+            boolean suppressed = false;
+            for (int i = 0; i < kept.size() && !suppressed; i++) {
+                double dx = candidate.x - kept.get(i).x;
+                double dy = candidate.y - kept.get(i).y;
+                suppressed = dx * dx + dy * dy <= limit;
+            }
+            if (!suppressed) {
+                kept.add(candidate);
+            }
+        }
+
+        List<Hotspot> hotspots = new ArrayList<Hotspot>(kept.size());
+        double pixelWidth = HeatmapTileProvider.WORLD_WIDTH / (double) worldDim;
+        for (Candidate candidate : kept) {
+            // At the center of the pixel
+            Point point = new Point((candidate.x + 0.5) * pixelWidth,
+                    (candidate.y + 0.5) * pixelWidth);
+            hotspots.add(new Hotspot(PROJECTION.toLatLng(point), candidate.intensity));
+        }
+        return hotspots;
+    }
+}
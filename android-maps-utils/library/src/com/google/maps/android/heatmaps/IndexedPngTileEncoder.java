@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import android.graphics.Color;
+
+import java.util.zip.Deflater;
+
+/**
+ * Encodes tiles into 8 bit palette indexed PNG images, a quarter of the raw size of RGBA ones.
+ * <p/>
+ * An indexed PNG holds at most 256 colors. Larger palettes, such as the 1000 colors of the
+ * default gradient's color map, are evenly sampled down to 255 colors plus transparent.
+ * Tiles of blended colors, which have no palette, are encoded into RGBA PNG images instead.
+ */
+public class IndexedPngTileEncoder implements TileEncoder {
+
+    /**
+     * Maximum number of palette entries of an indexed PNG
+     */
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    private final int mLevel;
+
+    /**
+     * Encoder for tiles without a palette
+     */
+    private final PngTileEncoder mRgbaEncoder;
+
+    /**
+     * Reduced palette, for the palette last encoded with
+     */
+    private volatile ReducedPalette mReducedPalette;
+
+    /**
+     * Creates an encoder favouring speed over size.
+     */
+    public IndexedPngTileEncoder() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level Deflater compression level in [0, 9]
+     */
+    public IndexedPngTileEncoder(int level) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level not within bounds.");
+        }
+        mLevel = level;
+        mRgbaEncoder = new PngTileEncoder(level);
+    }
+
+    @Override
+    public byte[] encode(int[] pixels, int dim, int[] palette) {
+        if (palette == null) {
+            return mRgbaEncoder.encode(pixels, dim, null);
+        }
+        ReducedPalette reduced = mReducedPalette;
+        if (reduced == null || reduced.mPalette != palette) {
+            reduced = new ReducedPalette(palette);
+            mReducedPalette = reduced;
+        }
+        byte[] indices = reduced.mIndices;
+
+        int length = dim * (1 + dim);
+        byte[] scanlines = TileBuffers.get().scanlines(length);
+        int offset = 0;
+        for (int y = 0; y < dim; y++) {
+            scanlines[offset++] = PngWriter.FILTER_NONE;
+            for (int index = y * dim; index < (y + 1) * dim; index++) {
+                scanlines[offset++] = indices[pixels[index]];
+            }
+        }
+        return PngWriter.write(dim, PngWriter.COLOR_TYPE_INDEXED, reduced.mRgb, reduced.mAlpha,
+                scanlines, length, mLevel);
+    }
+
+    /**
+     * A palette of at most 256 colors, and the mapping to it from a larger palette.
+     */
+    static class ReducedPalette {
+        /**
+         * Original palette
+         */
+        final int[] mPalette;
+
+        /**
+         * Reduced index of each original index
+         */
+        final byte[] mIndices;
+
+        /**
+         * RGB triplets of the reduced palette, for the PLTE chunk
+         */
+        final byte[] mRgb;
+
+        /**
+         * Alpha of the reduced palette, for the tRNS chunk
+         */
+        final byte[] mAlpha;
+
+        ReducedPalette(int[] palette) {
+            mPalette = palette;
+            int size = Math.min(palette.length, MAX_PALETTE_SIZE);
+            mIndices = new byte[palette.length];
+            int[] colors = new int[size];
+            if (palette.length <= MAX_PALETTE_SIZE) {
+                for (int i = 0; i < palette.length; i++) {
+                    mIndices[i] = (byte) i;
+                    colors[i] = palette[i];
+                }
+            } else {
+                // Keep index 0 (transparent) as is, and spread the rest evenly
+                colors[0] = palette[0];
+                for (int i = 1; i < palette.length; i++) {
+                    int reduced = 1 + (int) ((long) (i - 1) * (size - 1) / (palette.length - 1));
+                    mIndices[i] = (byte) reduced;
+                    colors[reduced] = palette[i];
+                }
+            }
+            mRgb = new byte[3 * size];
+            mAlpha = new byte[size];
+            for (int i = 0; i < size; i++) {
+                mRgb[3 * i] = (byte) Color.red(colors[i]);
+                mRgb[3 * i + 1] = (byte) Color.green(colors[i]);
+                mRgb[3 * i + 2] = (byte) Color.blue(colors[i]);
+                mAlpha[i] = (byte) Color.alpha(colors[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pre-binned intensities for the coarse zoom levels of a heatmap, like a mipmap.
+ * <p/>
+ * For each zoom level up to a maximum, stores the summed intensity of the points falling in each
+ * tile pixel, grouped by tile. Filling a tile's grid then only reads the pixels of that tile and
+ * its neighbours, so its cost depends on the tile area rather than on the number of points.
+ * This class is not thread safe for writes.
+ */
+class IntensityPyramid {
+
+    /**
+     * Tile dimension, in pixels
+     */
+    private final int mTileDim;
+
+    /**
+     * Highest zoom level stored
+     */
+    private final int mMaxZoom;
+
+    /**
+     * For each zoom level, map from tile key to the pixels of that tile.
+     * Pixels are keyed by y * mTileDim + x within the tile.
+     */
+    private final HashMap<Long, LongDoubleHashMap>[] mLevels;
+
+    /**
+     * Creates an empty pyramid.
+     *
+     * @param maxZoom highest zoom level to store
+     * @param tileDim tile dimension, in pixels
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    IntensityPyramid(int maxZoom, int tileDim) {
+        mMaxZoom = maxZoom;
+        mTileDim = tileDim;
+        mLevels = new HashMap[maxZoom + 1];
+        for (int i = 0; i <= maxZoom; i++) {
+            mLevels[i] = new HashMap<Long, LongDoubleHashMap>();
+        }
+    }
+
+    int getMaxZoom() {
+        return mMaxZoom;
+    }
+
+    private static long tileKey(long tileX, long tileY) {
+        return (tileX << 32) | tileY;
+    }
+
+    /**
+     * Adds intensity to the pixel containing (x, y) at every level.
+     * Negative intensities remove previously added points.
+     *
+     * @param x         x coordinate, in world units [0, WORLD_WIDTH]
+     * @param y         y coordinate, in world units [0, WORLD_WIDTH]
+     * @param intensity intensity to add
+     */
+    void add(double x, double y, double intensity) {
+        for (int zoom = 0; zoom <= mMaxZoom; zoom++) {
+            long worldDim = (long) mTileDim << zoom;
+            addPixel(zoom, pixel(x, worldDim), pixel(y, worldDim), intensity);
+        }
+    }
+
+    /**
+     * Adds a batch of points, binning them at the highest level only and then summing each level
+     * into the one above it.
+     *
+     * @param points points to add
+     */
+    void addAll(Iterable<WeightedLatLng> points) {
+        long worldDim = (long) mTileDim << mMaxZoom;
+        for (WeightedLatLng point : points) {
+            addPixel(mMaxZoom, pixel(point.getPoint().x, worldDim),
+                    pixel(point.getPoint().y, worldDim), point.getIntensity());
+        }
+        sumLevels();
+    }
+
+    /**
+     * Adds every point of a store, binning them at the highest level only and then summing each
+     * level into the one above it.
+     *
+     * @param points points to add
+     */
+    void addAll(WeightedPointStore points) {
+        long worldDim = (long) mTileDim << mMaxZoom;
+        for (int i = 0; i < points.size(); i++) {
+            addPixel(mMaxZoom, pixel(points.getX(i), worldDim), pixel(points.getY(i), worldDim),
+                    points.getIntensity(i));
+        }
+        sumLevels();
+    }
+
+    /**
+     * Sums each level into the one above it, from the highest level.
+     */
+    private void sumLevels() {
+        for (int zoom = mMaxZoom; zoom > 0; zoom--) {
+            for (Map.Entry<Long, LongDoubleHashMap> tile : mLevels[zoom].entrySet()) {
+                long tileX = tile.getKey() >>> 32;
+                long tileY = tile.getKey() & 0xffffffffL;
+                LongDoubleHashMap pixels = tile.getValue();
+                for (int i = 0; i < pixels.capacity(); i++) {
+                    if (!pixels.isUsed(i)) continue;
+                    long key = pixels.keyAt(i);
+                    long pixelX = tileX * mTileDim + key % mTileDim;
+                    long pixelY = tileY * mTileDim + key / mTileDim;
+                    addPixel(zoom - 1, pixelX >> 1, pixelY >> 1, pixels.valueAt(i));
+                }
+            }
+        }
+    }
+
+    private static long pixel(double coordinate, long worldDim) {
+        long pixel = (long) (coordinate / HeatmapTileProvider.WORLD_WIDTH * worldDim);
+        // The far edge of the world belongs to the last pixel
+        if (pixel >= worldDim) pixel = worldDim - 1;
+        if (pixel < 0) pixel = 0;
+        return pixel;
+    }
+
+    private void addPixel(int zoom, long pixelX, long pixelY, double intensity) {
+        Long key = tileKey(pixelX / mTileDim, pixelY / mTileDim);
+        LongDoubleHashMap pixels = mLevels[zoom].get(key);
+        if (pixels == null) {
+            pixels = new LongDoubleHashMap();
+            mLevels[zoom].put(key, pixels);
+        }
+        long pixelKey = (pixelY % mTileDim) * mTileDim + pixelX % mTileDim;
+        if (pixels.add(pixelKey, intensity) <= 0) {
+            // Everything in this pixel has been removed
+            pixels.remove(pixelKey);
+            if (pixels.size() == 0) mLevels[zoom].remove(key);
+        }
+    }
+
+    /**
+     * Adds the intensities of the pixels around a tile into its padded grid.
+     * Pixels across the antimeridian are wrapped around.
+     *
+     * @param tileX     x coordinate of the tile
+     * @param tileY     y coordinate of the tile
+     * @param zoom      zoom level, at most getMaxZoom()
+     * @param padding   padding on each side of the grid, in pixels; at most the tile dimension
+     * @param grid      row-major grid of (tileDim + 2 * padding) squared values to add into
+     * @param extent    extent to grow by the grid cells added into
+     * @return whether any pixel with an intensity was found
+     */
+    boolean fill(int tileX, int tileY, int zoom, int padding, float[] grid, GridExtent extent) {
+        int tiles = 1 << zoom;
+        int paddedDim = mTileDim + 2 * padding;
+        HashMap<Long, LongDoubleHashMap> level = mLevels[zoom];
+        boolean found = false;
+        for (int dy = -1; dy <= 1; dy++) {
+            int neighbourY = tileY + dy;
+            if (neighbourY < 0 || neighbourY >= tiles) continue;
+            for (int dx = -1; dx <= 1; dx++) {
+                // Wrap around across the antimeridian
+                int neighbourX = ((tileX + dx) % tiles + tiles) % tiles;
+                LongDoubleHashMap pixels = level.get(tileKey(neighbourX, neighbourY));
+                if (pixels == null) continue;
+                int offsetX = dx * mTileDim + padding;
+                int offsetY = dy * mTileDim + padding;
+                for (int i = 0; i < pixels.capacity(); i++) {
+                    if (!pixels.isUsed(i)) continue;
+                    long key = pixels.keyAt(i);
+                    int bucketX = (int) (key % mTileDim) + offsetX;
+                    int bucketY = (int) (key / mTileDim) + offsetY;
+                    if (bucketX < 0 || bucketX >= paddedDim || bucketY < 0 || bucketY >= paddedDim) {
+                        continue;
+                    }
+                    grid[bucketY * paddedDim + bucketX] += pixels.valueAt(i);
+                    extent.include(bucketX, bucketY);
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+}
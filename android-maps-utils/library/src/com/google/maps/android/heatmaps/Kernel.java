@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Shape of the kernel that spreads each point of a heatmap over the pixels around it.
+ * <p/>
+ * Kernels are separable: a pixel at (dx, dy) from a point gets weight(dx) * weight(dy), so
+ * tiles are smoothed with two passes of 1D weights. The weights of each radius are computed
+ * once and shared by every tile rendered with that radius.
+ */
+public abstract class Kernel {
+
+    /**
+     * Weights of each radius computed so far, by radius
+     */
+    private final double[][] mWeights = new double[HeatmapTileProvider.MAX_RADIUS + 1][];
+
+    /**
+     * @param radius radius in pixels, from 1 to 50
+     * @return weights of the pixels from -radius to radius of a point, radius * 2 + 1 values
+     * with 1 in the middle. The same array is returned for the same radius.
+     */
+    public final synchronized double[] getWeights(int radius) {
+        if (radius < 1 || radius > HeatmapTileProvider.MAX_RADIUS) {
+            throw new IllegalArgumentException("Radius not within bounds.");
+        }
+        double[] weights = mWeights[radius];
+        if (weights == null) {
+            weights = new double[radius * 2 + 1];
+            for (int i = -radius; i <= radius; i++) {
+                weights[i + radius] = weight(Math.abs(i) / (double) radius);
+            }
+            mWeights[radius] = weights;
+        }
+        return weights;
+    }
+
+    /**
+     * @param distance distance from the point, as a fraction of the radius, from 0 to 1
+     * @return weight at that distance along one axis, 1 at distance 0
+     */
+    protected abstract double weight(double distance);
+}
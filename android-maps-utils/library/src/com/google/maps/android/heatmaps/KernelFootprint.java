@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import java.util.Arrays;
+
+/**
+ * The smoothed footprint of a single grid cell, for rendering sparse tiles cell by cell.
+ * <p/>
+ * The footprint is the convolver's own response to a unit cell, so stamping it around each
+ * non-zero cell gives the same result as convolving the whole grid, for any convolver that is
+ * linear and the same everywhere on the grid. Stamping costs the number of cells times the
+ * footprint area, instead of the tile area.
+ */
+class KernelFootprint {
+
+    private final Convolver mConvolver;
+
+    private final double[] mKernel;
+
+    private final int mRadius;
+
+    /**
+     * Row-major footprint: (2 * radius + 1) squared values
+     */
+    private final float[] mValues;
+
+    /**
+     * @param convolver convolver to match
+     * @param kernel    kernel the convolver is used with
+     */
+    KernelFootprint(Convolver convolver, double[] kernel) {
+        mConvolver = convolver;
+        mKernel = kernel;
+        mRadius = kernel.length / 2;
+        // Unit cell in the middle of a grid wide enough that nothing is cut off
+        int size = 2 * mRadius + 1;
+        int paddedDim = size + 2 * mRadius;
+        float[] grid = new float[paddedDim * paddedDim];
+        grid[2 * mRadius * paddedDim + 2 * mRadius] = 1;
+        mValues = new float[size * size];
+        convolver.convolve(grid, paddedDim, kernel, mValues);
+    }
+
+    /**
+     * @return whether this footprint was made for the given convolver and kernel
+     */
+    boolean matches(Convolver convolver, double[] kernel) {
+        return mConvolver == convolver && mKernel == kernel;
+    }
+
+    /**
+     * Smooths the cells recorded by an extent, with the same result as convolving the grid.
+     * Only the part of the output within the widened extent is written.
+     *
+     * @param grid      padded input grid, of which the recorded cells are cleared
+     * @param paddedDim dimension of the input grid
+     * @param cells     extent recording every non-zero cell of the grid
+     * @param output    grid to write into, dim * dim values
+     * @param dim       dimension of the output grid
+     */
+    void stamp(float[] grid, int paddedDim, GridExtent cells, float[] output, int dim) {
+        int size = 2 * mRadius + 1;
+        // A cell at (x, y) of the padded grid spreads from (x - 2r, y - 2r) to (x, y) of the output
+        int minX = Math.max(cells.minX - 2 * mRadius, 0);
+        int maxX = Math.min(cells.maxX, dim - 1);
+        int minY = Math.max(cells.minY - 2 * mRadius, 0);
+        int maxY = Math.min(cells.maxY, dim - 1);
+        for (int y = minY; y <= maxY; y++) {
+            Arrays.fill(output, y * dim + minX, y * dim + maxX + 1, 0);
+        }
+
+        for (int i = 0; i < cells.getCellCount(); i++) {
+            int cellX = cells.getCellX(i);
+            int cellY = cells.getCellY(i);
+            float val = grid[cellY * paddedDim + cellX];
+            if (val == 0) {
+                // Already stamped: several points fell into this cell
+                continue;
+            }
+            grid[cellY * paddedDim + cellX] = 0;
+
+            int originX = cellX - 2 * mRadius;
+            int originY = cellY - 2 * mRadius;
+            int startX = Math.max(0, -originX);
+            int endX = Math.min(size, dim - originX);
+            int endY = Math.min(size, dim - originY);
+            for (int footprintY = Math.max(0, -originY); footprintY < endY; footprintY++) {
+                int outputRow = (originY + footprintY) * dim + originX;
+                int footprintRow = footprintY * size;
+                for (int footprintX = startX; footprintX < endX; footprintX++) {
+                    output[outputRow + footprintX] += val * mValues[footprintRow + footprintX];
+                }
+            }
+        }
+    }
+}
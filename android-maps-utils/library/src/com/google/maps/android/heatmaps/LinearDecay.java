@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Fades the intensity of points linearly to zero over a window of time. Points after now or
+ * older than the window are not displayed.
+ */
+public class LinearDecay implements TimeDecay {
+
+    private final long mWindow;
+
+    /**
+     * @param window time it takes for a point to fade out completely
+     */
+    public LinearDecay(long window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be positive.");
+        }
+        mWindow = window;
+    }
+
+    public long getWindow() {
+        return mWindow;
+    }
+
+    @Override
+    public double getWeight(long age) {
+        if (age < 0 || age >= mWindow) {
+            return 0;
+        }
+        return 1 - (double) age / mWindow;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to double values, avoiding the boxing of
+ * HashMap&lt;Long, Double&gt; and the O(n) inserts of LongSparseArray.
+ * Uses linear probing; Long.MIN_VALUE is reserved to mark free slots and can't be used as a key.
+ * This class is not thread safe.
+ */
+class LongDoubleHashMap {
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] mKeys;
+
+    private double[] mValues;
+
+    private int mSize;
+
+    LongDoubleHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of entries to size the table for
+     */
+    LongDoubleHashMap(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new double[capacity];
+        Arrays.fill(mKeys, FREE);
+        mSize = 0;
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing spreads neighbouring cells across the table
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & (mKeys.length - 1);
+    }
+
+    /**
+     * @return the value for key, or 0 if there is none
+     */
+    double get(long key) {
+        int mask = mKeys.length - 1;
+        for (int i = slot(key); mKeys[i] != FREE; i = (i + 1) & mask) {
+            if (mKeys[i] == key) return mValues[i];
+        }
+        return 0;
+    }
+
+    boolean containsKey(long key) {
+        int mask = mKeys.length - 1;
+        for (int i = slot(key); mKeys[i] != FREE; i = (i + 1) & mask) {
+            if (mKeys[i] == key) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds delta to the value for key, inserting it if needed.
+     *
+     * @return the updated value
+     */
+    double add(long key, double delta) {
+        int mask = mKeys.length - 1;
+        int i = slot(key);
+        for (; mKeys[i] != FREE; i = (i + 1) & mask) {
+            if (mKeys[i] == key) {
+                mValues[i] += delta;
+                return mValues[i];
+            }
+        }
+        mKeys[i] = key;
+        mValues[i] = delta;
+        if (++mSize * 2 > mKeys.length) {
+            rehash(mKeys.length * 2);
+        }
+        return delta;
+    }
+
+    void put(long key, double value) {
+        int mask = mKeys.length - 1;
+        int i = slot(key);
+        for (; mKeys[i] != FREE; i = (i + 1) & mask) {
+            if (mKeys[i] == key) {
+                mValues[i] = value;
+                return;
+            }
+        }
+        mKeys[i] = key;
+        mValues[i] = value;
+        if (++mSize * 2 > mKeys.length) {
+            rehash(mKeys.length * 2);
+        }
+    }
+
+    /**
+     * Removes key, shifting back later entries of its probe sequence.
+     *
+     * @return whether key was present
+     */
+    boolean remove(long key) {
+        int mask = mKeys.length - 1;
+        int i = slot(key);
+        for (; mKeys[i] != key; i = (i + 1) & mask) {
+            if (mKeys[i] == FREE) return false;
+        }
+        int hole = i;
+        for (int j = (hole + 1) & mask; mKeys[j] != FREE; j = (j + 1) & mask) {
+            int home = slot(mKeys[j]);
+            // Move the entry into the hole unless its home slot lies cyclically in (hole, j]
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                mKeys[hole] = mKeys[j];
+                mValues[hole] = mValues[j];
+                hole = j;
+            }
+        }
+        mKeys[hole] = FREE;
+        mSize--;
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = mKeys;
+        double[] values = mValues;
+        allocate(capacity);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) put(keys[i], values[i]);
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    void clear() {
+        Arrays.fill(mKeys, FREE);
+        mSize = 0;
+    }
+
+    /**
+     * Entries can be iterated over by slot: slots from 0 to capacity() - 1 for which
+     * isUsed(slot) holds.
+     */
+    int capacity() {
+        return mKeys.length;
+    }
+
+    boolean isUsed(int slot) {
+        return mKeys[slot] != FREE;
+    }
+
+    long keyAt(int slot) {
+        return mKeys[slot];
+    }
+
+    double valueAt(int slot) {
+        return mValues[slot];
+    }
+
+    /**
+     * @return largest value in the map, or 0 if it is empty
+     */
+    double max() {
+        double max = 0;
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i] != FREE && mValues[i] > max) max = mValues[i];
+        }
+        return max;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import com.google.maps.android.geometry.Bounds;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Weighted points read in place from a compact binary file, usually memory-mapped, so that a
+ * heatmap can be displayed without parsing the points or copying them onto the heap.
+ * <p/>
+ * The file starts with a header of HEADER_SIZE bytes: a magic number, the format version, the
+ * number of points, their bounds in world coordinates and the range of their intensities.
+ * It is followed by three columns: the x coordinates, the y coordinates and the intensities.
+ * Coordinates are unsigned 32 bit offsets from the minimum of the bounds, in 2^32 - 1 steps
+ * across the bounds: a step is under a centimeter on the ground for any bounds.
+ * Intensities are 32 bit floats, so each keeps about seven significant digits however far
+ * the others spread. Each point takes 12 bytes, and points are addressed by index without
+ * decoding the points before them. Values are big-endian.
+ */
+public class MappedPointStore implements WeightedPointStore {
+
+    /**
+     * "WPTS"
+     */
+    private static final int MAGIC = 0x57505453;
+
+    private static final int VERSION = 2;
+
+    /**
+     * Size of the header, a multiple of 8 bytes
+     */
+    static final int HEADER_SIZE = 64;
+
+    private static final double COORDINATE_STEPS = 0xffffffffL;
+
+    private final int mSize;
+
+    private final double mMinX;
+
+    private final double mMinY;
+
+    private final double mStepX;
+
+    private final double mStepY;
+
+    private final IntBuffer mX;
+
+    private final IntBuffer mY;
+
+    private final FloatBuffer mIntensity;
+
+    private MappedPointStore(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a point file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported point file version " + buffer.getInt(4));
+        }
+        mSize = buffer.getInt(8);
+        if (mSize < 0 || buffer.remaining() < HEADER_SIZE + 12L * mSize) {
+            throw new IOException("Truncated point file");
+        }
+        mMinX = buffer.getDouble(16);
+        mStepX = (buffer.getDouble(24) - mMinX) / COORDINATE_STEPS;
+        mMinY = buffer.getDouble(32);
+        mStepY = (buffer.getDouble(40) - mMinY) / COORDINATE_STEPS;
+
+        mX = column(buffer, HEADER_SIZE).asIntBuffer();
+        mY = column(buffer, HEADER_SIZE + 4 * mSize).asIntBuffer();
+        mIntensity = column(buffer, HEADER_SIZE + 8 * mSize).asFloatBuffer();
+    }
+
+    private static ByteBuffer column(ByteBuffer buffer, int offset) {
+        ByteBuffer column = buffer.duplicate();
+        column.position(offset);
+        return column.slice();
+    }
+
+    /**
+     * Maps a point file into memory. The file must not change while the store is in use.
+     *
+     * @param file file written by {@link #write(WeightedPointStore, OutputStream)}
+     * @throws IOException if the file could not be read or is not a point file
+     */
+    public static MappedPointStore map(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            // The mapping stays valid once the file is closed
+            FileChannel channel = input.getChannel();
+            return new MappedPointStore(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size()));
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Reads points in place from a buffer holding a point file, such as a file read into
+     * memory or a resource. The buffer must not change while the store is in use.
+     *
+     * @param buffer buffer whose remaining bytes are a point file
+     * @throws IOException if the buffer does not hold a point file
+     */
+    public static MappedPointStore wrap(ByteBuffer buffer) throws IOException {
+        return new MappedPointStore(buffer.slice());
+    }
+
+    /**
+     * Writes points as a point file.
+     *
+     * @param points points to write
+     * @param out    output, which is flushed but not closed
+     * @throws IOException if the output could not be written
+     */
+    public static void write(WeightedPointStore points, OutputStream out) throws IOException {
+        int size = points.size();
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double minIntensity = Double.POSITIVE_INFINITY;
+        double maxIntensity = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            minX = Math.min(minX, points.getX(i));
+            maxX = Math.max(maxX, points.getX(i));
+            minY = Math.min(minY, points.getY(i));
+            maxY = Math.max(maxY, points.getY(i));
+            minIntensity = Math.min(minIntensity, points.getIntensity(i));
+            maxIntensity = Math.max(maxIntensity, points.getIntensity(i));
+        }
+        if (size == 0) {
+            minX = maxX = minY = maxY = minIntensity = maxIntensity = 0;
+        }
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(size);
+        data.writeInt(0);
+        data.writeDouble(minX);
+        data.writeDouble(maxX);
+        data.writeDouble(minY);
+        data.writeDouble(maxY);
+        data.writeDouble(minIntensity);
+        data.writeDouble(maxIntensity);
+        for (int i = 0; i < size; i++) {
+            data.writeInt((int) quantize(points.getX(i), minX, maxX, COORDINATE_STEPS));
+        }
+        for (int i = 0; i < size; i++) {
+            data.writeInt((int) quantize(points.getY(i), minY, maxY, COORDINATE_STEPS));
+        }
+        for (int i = 0; i < size; i++) {
+            data.writeFloat((float) points.getIntensity(i));
+        }
+        data.flush();
+    }
+
+    /**
+     * @return the step of value from min to max, in steps from 0 to steps
+     */
+    private static long quantize(double value, double min, double max, double steps) {
+        return max > min ? Math.round((value - min) / (max - min) * steps) : 0;
+    }
+
+    /**
+     * @return the bounds of the points, as decoded
+     */
+    public Bounds getBounds() {
+        return new Bounds(mMinX, mMinX + mStepX * COORDINATE_STEPS,
+                mMinY, mMinY + mStepY * COORDINATE_STEPS);
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public double getX(int index) {
+        return mMinX + (mX.get(index) & 0xffffffffL) * mStepX;
+    }
+
+    @Override
+    public double getY(int index) {
+        return mMinY + (mY.get(index) & 0xffffffffL) * mStepY;
+    }
+
+    @Override
+    public double getIntensity(int index) {
+        return mIntensity.get(index);
+    }
+}
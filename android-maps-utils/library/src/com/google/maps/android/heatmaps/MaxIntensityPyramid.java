@@ -0,0 +1,232 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Estimates the maximum intensity of a heatmap at every zoom level.
+ * <p/>
+ * At each zoom level, sums point intensities into square cells one kernel diameter (2 * radius
+ * pixels) wide, anchored to the world rather than to the data, and tracks the largest cell.
+ * Cells of a zoom level are exactly 2x2 cells of the level above, so points are only binned at
+ * the highest level and each level is summed from the one above it, like a mipmap.
+ * This class is not thread safe.
+ */
+class MaxIntensityPyramid {
+
+    /**
+     * Highest zoom level
+     */
+    private final int mMaxZoom;
+
+    /**
+     * Number of cells of the highest zoom level across the world
+     */
+    private final double mScale;
+
+    /**
+     * Cells of each zoom level, or null once summed into the level below by computeMaxima
+     */
+    private final LongDoubleHashMap[] mLevels;
+
+    private final double[] mMax;
+
+    /**
+     * Whether the largest cell of a level may have decreased since mMax was computed
+     */
+    private final boolean[] mMaxStale;
+
+    /**
+     * Creates an empty pyramid.
+     *
+     * @param levels  number of zoom levels, from 0
+     * @param radius  radius of convolution, in pixels
+     * @param tileDim tile dimension, in pixels
+     */
+    MaxIntensityPyramid(int levels, int radius, int tileDim) {
+        mMaxZoom = levels - 1;
+        mScale = (double) tileDim * (1L << mMaxZoom) / (2 * radius)
+                / HeatmapTileProvider.WORLD_WIDTH;
+        mLevels = new LongDoubleHashMap[levels];
+        for (int i = 0; i < levels; i++) {
+            mLevels[i] = new LongDoubleHashMap();
+        }
+        mMax = new double[levels];
+        mMaxStale = new boolean[levels];
+    }
+
+    /**
+     * Computes the maximum intensity of every zoom level in one pass over the points, keeping only
+     * two levels in memory at a time.
+     *
+     * @param points  points of the heatmap
+     * @param levels  number of zoom levels, from 0
+     * @param radius  radius of convolution, in pixels
+     * @param tileDim tile dimension, in pixels
+     * @return maximum intensity of each zoom level
+     */
+    static double[] computeMaxima(Iterable<WeightedLatLng> points, int levels, int radius,
+                                  int tileDim) {
+        MaxIntensityPyramid pyramid = new MaxIntensityPyramid(levels, radius, tileDim);
+        pyramid.binAll(points);
+        return pyramid.sumLevelsDiscarding();
+    }
+
+    /**
+     * Computes the maximum intensity of every zoom level, from the points of a store.
+     *
+     * @see #computeMaxima(Iterable, int, int, int)
+     */
+    static double[] computeMaxima(WeightedPointStore points, int levels, int radius,
+                                  int tileDim) {
+        MaxIntensityPyramid pyramid = new MaxIntensityPyramid(levels, radius, tileDim);
+        pyramid.binAll(points);
+        return pyramid.sumLevelsDiscarding();
+    }
+
+    /**
+     * Sums every level from the highest one, discarding each level once summed.
+     *
+     * @return maximum intensity of each zoom level
+     */
+    private double[] sumLevelsDiscarding() {
+        for (int zoom = mMaxZoom; zoom > 0; zoom--) {
+            sumInto(zoom - 1);
+            mLevels[zoom] = null;
+        }
+        return mMax;
+    }
+
+    /**
+     * Adds a batch of points to an empty pyramid, keeping every level for later updates.
+     *
+     * @param points points to add
+     */
+    void addAll(Iterable<WeightedLatLng> points) {
+        binAll(points);
+        sumLevels();
+    }
+
+    /**
+     * Adds the points of a store to an empty pyramid, keeping every level for later updates.
+     *
+     * @param points points to add
+     */
+    void addAll(WeightedPointStore points) {
+        binAll(points);
+        sumLevels();
+    }
+
+    private void sumLevels() {
+        for (int zoom = mMaxZoom; zoom > 0; zoom--) {
+            sumInto(zoom - 1);
+        }
+    }
+
+    /**
+     * Adds intensity to the cell containing (x, y) at every level.
+     * Negative intensities remove previously added points.
+     */
+    void add(double x, double y, double intensity) {
+        long cellX = cell(x);
+        long cellY = cell(y);
+        for (int zoom = mMaxZoom; zoom >= 0; zoom--) {
+            long key = key(cellX >> (mMaxZoom - zoom), cellY >> (mMaxZoom - zoom));
+            double value = mLevels[zoom].add(key, intensity);
+            if (intensity >= 0) {
+                if (value > mMax[zoom]) mMax[zoom] = value;
+            } else {
+                if (value - intensity >= mMax[zoom]) mMaxStale[zoom] = true;
+                if (value <= 0) mLevels[zoom].remove(key);
+            }
+        }
+    }
+
+    /**
+     * @param zoom zoom level
+     * @return intensity of the largest cell of the zoom level
+     */
+    double getMax(int zoom) {
+        if (mMaxStale[zoom]) {
+            mMax[zoom] = mLevels[zoom].max();
+            mMaxStale[zoom] = false;
+        }
+        return mMax[zoom];
+    }
+
+    /**
+     * Bins points into the highest level.
+     */
+    private void binAll(Iterable<WeightedLatLng> points) {
+        LongDoubleHashMap cells = mLevels[mMaxZoom];
+        double max = 0;
+        for (WeightedLatLng point : points) {
+            double value = cells.add(key(cell(point.getPoint().x), cell(point.getPoint().y)),
+                    point.getIntensity());
+            if (value > max) max = value;
+        }
+        mMax[mMaxZoom] = max;
+    }
+
+    /**
+     * Bins the points of a store into the highest level.
+     */
+    private void binAll(WeightedPointStore points) {
+        LongDoubleHashMap cells = mLevels[mMaxZoom];
+        double max = 0;
+        for (int i = 0; i < points.size(); i++) {
+            double value = cells.add(key(cell(points.getX(i)), cell(points.getY(i))),
+                    points.getIntensity(i));
+            if (value > max) max = value;
+        }
+        mMax[mMaxZoom] = max;
+    }
+
+    /**
+     * Sums the cells of the level above into a level.
+     */
+    private void sumInto(int zoom) {
+        LongDoubleHashMap finer = mLevels[zoom + 1];
+        LongDoubleHashMap cells = mLevels[zoom];
+        double max = 0;
+        for (int i = 0; i < finer.capacity(); i++) {
+            if (!finer.isUsed(i)) continue;
+            long key = finer.keyAt(i);
+            double value = cells.add(key(cellX(key) >> 1, cellY(key) >> 1), finer.valueAt(i));
+            if (value > max) max = value;
+        }
+        mMax[zoom] = max;
+    }
+
+    /**
+     * @return index of the cell of the highest level containing a world coordinate
+     */
+    private long cell(double coordinate) {
+        return Math.max(0, (long) (coordinate * mScale));
+    }
+
+    private static long key(long cellX, long cellY) {
+        return (cellX << 32) | cellY;
+    }
+
+    private static long cellX(long key) {
+        return key >>> 32;
+    }
+
+    private static long cellY(long key) {
+        return key & 0xffffffffL;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Estimates the maximum intensity of a heatmap at every zoom level, for a radius that may change
+ * with the zoom level.
+ * <p/>
+ * Cells of a {@link MaxIntensityPyramid} are one kernel diameter wide, so they only nest from one
+ * zoom level to the next for the same radius. Zoom levels are grouped by radius, with a pyramid
+ * per group topped by the highest zoom level of the group.
+ * This class is not thread safe.
+ */
+class MaxIntensityPyramids {
+
+    /**
+     * Pyramid of each zoom level, the same one for zoom levels of the same radius
+     */
+    private final MaxIntensityPyramid[] mPyramids;
+
+    /**
+     * Each pyramid once
+     */
+    private final MaxIntensityPyramid[] mDistinct;
+
+    /**
+     * Creates empty pyramids.
+     *
+     * @param levels  number of zoom levels, from 0
+     * @param radii   radius of each zoom level
+     * @param tileDim tile dimension, in pixels
+     */
+    MaxIntensityPyramids(int levels, RadiusSchedule radii, int tileDim) {
+        mPyramids = new MaxIntensityPyramid[levels];
+        int[] tops = getTopZooms(radii, levels);
+        mDistinct = new MaxIntensityPyramid[tops.length];
+        for (int i = 0; i < tops.length; i++) {
+            int radius = radii.getRadius(tops[i]);
+            mDistinct[i] = new MaxIntensityPyramid(tops[i] + 1, radius, tileDim);
+            for (int zoom = 0; zoom <= tops[i]; zoom++) {
+                if (radii.getRadius(zoom) == radius) {
+                    mPyramids[zoom] = mDistinct[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the maximum intensity of every zoom level, in one pass over the points per
+     * distinct radius.
+     *
+     * @see MaxIntensityPyramid#computeMaxima(Iterable, int, int, int)
+     */
+    static double[] computeMaxima(Iterable<WeightedLatLng> points, int levels,
+                                  RadiusSchedule radii, int tileDim) {
+        double[] max = new double[levels];
+        for (int top : getTopZooms(radii, levels)) {
+            int radius = radii.getRadius(top);
+            copyGroup(MaxIntensityPyramid.computeMaxima(points, top + 1, radius, tileDim), radii,
+                    radius, max);
+        }
+        return max;
+    }
+
+    /**
+     * Computes the maximum intensity of every zoom level, from the points of a store.
+     *
+     * @see #computeMaxima(Iterable, int, RadiusSchedule, int)
+     */
+    static double[] computeMaxima(WeightedPointStore points, int levels, RadiusSchedule radii,
+                                  int tileDim) {
+        double[] max = new double[levels];
+        for (int top : getTopZooms(radii, levels)) {
+            int radius = radii.getRadius(top);
+            copyGroup(MaxIntensityPyramid.computeMaxima(points, top + 1, radius, tileDim), radii,
+                    radius, max);
+        }
+        return max;
+    }
+
+    /**
+     * @return the highest zoom level of each distinct radius
+     */
+    private static int[] getTopZooms(RadiusSchedule radii, int levels) {
+        int[] tops = new int[levels];
+        int count = 0;
+        for (int zoom = levels - 1; zoom >= 0; zoom--) {
+            boolean seen = false;
+            for (int i = 0; i < count && !seen; i++) {
+                seen = radii.getRadius(tops[i]) == radii.getRadius(zoom);
+            }
+            if (!seen) {
+                tops[count++] = zoom;
+            }
+        }
+        int[] distinct = new int[count];
+        System.arraycopy(tops, 0, distinct, 0, count);
+        return distinct;
+    }
+
+    /**
+     * Copies the maxima of the zoom levels of a radius.
+     */
+    private static void copyGroup(double[] groupMax, RadiusSchedule radii, int radius,
+                                  double[] max) {
+        for (int zoom = 0; zoom < groupMax.length; zoom++) {
+            if (radii.getRadius(zoom) == radius) {
+                max[zoom] = groupMax[zoom];
+            }
+        }
+    }
+
+    /**
+     * Adds a batch of points to empty pyramids, keeping every level for later updates.
+     */
+    void addAll(Iterable<WeightedLatLng> points) {
+        for (MaxIntensityPyramid pyramid : mDistinct) {
+            pyramid.addAll(points);
+        }
+    }
+
+    /**
+     * Adds the points of a store to empty pyramids, keeping every level for later updates.
+     */
+    void addAll(WeightedPointStore points) {
+        for (MaxIntensityPyramid pyramid : mDistinct) {
+            pyramid.addAll(points);
+        }
+    }
+
+    /**
+     * Adds intensity at (x, y) at every level. Negative intensities remove previously added
+     * points.
+     */
+    void add(double x, double y, double intensity) {
+        for (MaxIntensityPyramid pyramid : mDistinct) {
+            pyramid.add(x, y, intensity);
+        }
+    }
+
+    /**
+     * @return the maximum intensity of a zoom level
+     */
+    double getMax(int zoom) {
+        return mPyramids[zoom].getMax(zoom);
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.projection.SphericalMercatorProjection;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders the tiles of another tile provider on a fixed number of worker threads.
+ * <p/>
+ * The Maps SDK requests tiles from several threads at once. Requests for a tile already being
+ * rendered wait for that rendering instead of starting another one. When the visible region is
+ * set, tiles that are no longer visible are cancelled, and requests for them return null so that
+ * the Maps SDK asks again later if they come back into view.
+ */
+public class ParallelTileProvider implements TileProvider {
+
+    /**
+     * Number of tiles kept around the visible region, so that tiles about to come into view
+     * are not cancelled
+     */
+    private static final int VISIBLE_MARGIN_TILES = 1;
+
+    private static final SphericalMercatorProjection PROJECTION =
+            new SphericalMercatorProjection(1);
+
+    private final TileProvider mProvider;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * Tiles being rendered or waiting to be rendered
+     */
+    private final ConcurrentHashMap<TileCoordinate, RenderTask> mInFlight =
+            new ConcurrentHashMap<TileCoordinate, RenderTask>();
+
+    /**
+     * Visible region, or null if every tile is considered visible
+     */
+    private volatile VisibleRegion mVisibleRegion;
+
+    private final AtomicInteger mRenderCount = new AtomicInteger();
+
+    private final AtomicLong mRenderNanos = new AtomicLong();
+
+    private final AtomicInteger mCoalescedCount = new AtomicInteger();
+
+    private final AtomicInteger mCancelledCount = new AtomicInteger();
+
+    /**
+     * @param provider tile provider rendering the tiles
+     * @param threads  number of worker threads
+     */
+    public ParallelTileProvider(TileProvider provider, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed.");
+        }
+        mProvider = provider;
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+    }
+
+    /**
+     * Creates a provider with one worker thread per available processor.
+     *
+     * @param provider tile provider rendering the tiles
+     */
+    public ParallelTileProvider(TileProvider provider) {
+        this(provider, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        VisibleRegion region = mVisibleRegion;
+        if (region != null && !region.contains(x, y, zoom)) {
+            mCancelledCount.incrementAndGet();
+            return null;
+        }
+
+        TileCoordinate coordinate = new TileCoordinate(x, y, zoom);
+        RenderTask task = mInFlight.get(coordinate);
+        if (task == null) {
+            RenderTask created = new RenderTask(coordinate);
+            task = mInFlight.putIfAbsent(coordinate, created);
+            if (task == null) {
+                task = created;
+                try {
+                    mExecutor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // Shut down: nothing will run the task, so don't let requests wait on it
+                    mInFlight.remove(coordinate, task);
+                    task.cancel(false);
+                    return null;
+                }
+            } else {
+                mCoalescedCount.incrementAndGet();
+            }
+        } else {
+            mCoalescedCount.incrementAndGet();
+        }
+
+        try {
+            return task.get();
+        } catch (CancellationException e) {
+            // Scrolled off-screen
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Sets the region shown on the map, cancelling the tiles outside of it that are not
+     * rendered yet. Should be called whenever the camera changes.
+     *
+     * @param bounds visible bounds, or null to consider every tile visible
+     * @param zoom   zoom level of the tiles being shown
+     */
+    public void setVisibleRegion(LatLngBounds bounds, int zoom) {
+        if (bounds == null) {
+            mVisibleRegion = null;
+            return;
+        }
+        VisibleRegion region = new VisibleRegion(bounds, zoom);
+        mVisibleRegion = region;
+        boolean cancelled = false;
+        for (RenderTask task : mInFlight.values()) {
+            TileCoordinate coordinate = task.mCoordinate;
+            if (!region.contains(coordinate.x, coordinate.y, coordinate.zoom)
+                    && task.cancel(false)) {
+                mCancelledCount.incrementAndGet();
+                cancelled = true;
+            }
+        }
+        if (cancelled) {
+            // Take the cancelled tasks off the queue
+            mExecutor.purge();
+        }
+    }
+
+    /**
+     * @return number of tiles waiting for a worker thread
+     */
+    public int getQueueDepth() {
+        return mExecutor.getQueue().size();
+    }
+
+    /**
+     * @return number of tiles being rendered or waiting to be rendered
+     */
+    public int getInFlightCount() {
+        return mInFlight.size();
+    }
+
+    /**
+     * @return number of tiles rendered
+     */
+    public int getRenderCount() {
+        return mRenderCount.get();
+    }
+
+    /**
+     * @return average time taken to render a tile, in milliseconds
+     */
+    public double getAverageRenderTimeMillis() {
+        int count = mRenderCount.get();
+        return count == 0 ? 0 : mRenderNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return number of requests served by a rendering already in flight
+     */
+    public int getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    /**
+     * @return number of tiles cancelled or refused because they were not visible
+     */
+    public int getCancelledCount() {
+        return mCancelledCount.get();
+    }
+
+    /**
+     * Stops the worker threads. Tiles requested afterwards are rejected.
+     */
+    public void shutdown() {
+        // Queued tasks will never run: cancel them, so their requests return
+        for (Runnable task : mExecutor.shutdownNow()) {
+            ((RenderTask) task).cancel(false);
+        }
+    }
+
+    /**
+     * Renders one tile, and stops being in flight once done or cancelled.
+     */
+    private class RenderTask extends FutureTask<Tile> {
+        private final TileCoordinate mCoordinate;
+
+        RenderTask(final TileCoordinate coordinate) {
+            super(new Callable<Tile>() {
+                @Override
+                public Tile call() {
+                    long start = System.nanoTime();
+                    Tile tile = mProvider.getTile(coordinate.x, coordinate.y, coordinate.zoom);
+                    mRenderNanos.addAndGet(System.nanoTime() - start);
+                    mRenderCount.incrementAndGet();
+                    return tile;
+                }
+            });
+            mCoordinate = coordinate;
+        }
+
+        @Override
+        protected void done() {
+            mInFlight.remove(mCoordinate, this);
+        }
+    }
+
+    /**
+     * Range of tiles covering the visible bounds, with a margin.
+     */
+    private static class VisibleRegion {
+        private final int mZoom;
+        private final long mMinX;
+        private final long mMaxX;
+        private final long mMinY;
+        private final long mMaxY;
+
+        VisibleRegion(LatLngBounds bounds, int zoom) {
+            mZoom = zoom;
+            long tileCount = 1L << zoom;
+            Point southWest = PROJECTION.toPoint(bounds.southwest);
+            Point northEast = PROJECTION.toPoint(bounds.northeast);
+            mMinX = (long) Math.floor(southWest.x * tileCount) - VISIBLE_MARGIN_TILES;
+            long maxX = (long) Math.floor(northEast.x * tileCount) + VISIBLE_MARGIN_TILES;
+            if (bounds.southwest.longitude > bounds.northeast.longitude) {
+                // Crosses the antimeridian
+                maxX += tileCount;
+            }
+            mMaxX = maxX;
+            // Tile y grows southwards
+            mMinY = (long) Math.floor(northEast.y * tileCount) - VISIBLE_MARGIN_TILES;
+            mMaxY = (long) Math.floor(southWest.y * tileCount) + VISIBLE_MARGIN_TILES;
+        }
+
+        boolean contains(int x, int y, int zoom) {
+            if (zoom != mZoom || y < mMinY || y > mMaxY) {
+                return false;
+            }
+            long tileCount = 1L << zoom;
+            if (mMaxX - mMinX + 1 >= tileCount) {
+                return true;
+            }
+            // Shift x into the range, as it may have wrapped around
+            long shifted = mMinX + (((x - mMinX) % tileCount) + tileCount) % tileCount;
+            return shifted <= mMaxX;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "HeatmapTileRenderer-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
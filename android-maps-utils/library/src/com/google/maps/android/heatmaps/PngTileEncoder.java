@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import android.graphics.Color;
+
+import java.util.zip.Deflater;
+
+/**
+ * Encodes tiles into 32 bit RGBA PNG images directly, without going through a Bitmap.
+ * The compression level trades encoding time for size.
+ */
+public class PngTileEncoder implements TileEncoder {
+
+    private final int mLevel;
+
+    /**
+     * Creates an encoder favouring speed over size.
+     */
+    public PngTileEncoder() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level Deflater compression level in [0, 9]
+     */
+    public PngTileEncoder(int level) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level not within bounds.");
+        }
+        mLevel = level;
+    }
+
+    @Override
+    public byte[] encode(int[] pixels, int dim, int[] palette) {
+        int length = dim * (1 + 4 * dim);
+        byte[] scanlines = TileBuffers.get().scanlines(length);
+        int offset = 0;
+        for (int y = 0; y < dim; y++) {
+            scanlines[offset++] = PngWriter.FILTER_NONE;
+            for (int index = y * dim; index < (y + 1) * dim; index++) {
+                int color = palette != null ? palette[pixels[index]] : pixels[index];
+                scanlines[offset++] = (byte) Color.red(color);
+                scanlines[offset++] = (byte) Color.green(color);
+                scanlines[offset++] = (byte) Color.blue(color);
+                scanlines[offset++] = (byte) Color.alpha(color);
+            }
+        }
+        return PngWriter.write(dim, PngWriter.COLOR_TYPE_RGBA, null, null, scanlines, length,
+                mLevel);
+    }
+}
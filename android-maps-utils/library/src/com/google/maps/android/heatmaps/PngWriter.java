@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes PNG images from raw, unfiltered scanlines.
+ */
+class PngWriter {
+
+    static final int COLOR_TYPE_INDEXED = 3;
+
+    static final int COLOR_TYPE_RGBA = 6;
+
+    /**
+     * Filter type byte starting each scanline: no filtering
+     */
+    static final byte FILTER_NONE = 0;
+
+    private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+
+    private static final byte[] PLTE = {'P', 'L', 'T', 'E'};
+
+    private static final byte[] TRNS = {'t', 'R', 'N', 'S'};
+
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+
+    private PngWriter() {
+    }
+
+    /**
+     * Writes a square, 8 bit deep PNG image.
+     *
+     * @param dim        Dimension of the image
+     * @param colorType  COLOR_TYPE_INDEXED or COLOR_TYPE_RGBA
+     * @param palette    RGB palette for indexed images, or null
+     * @param alpha      Alpha of the palette entries for indexed images, or null
+     * @param scanlines  Scanlines, each starting with its filter type byte
+     * @param length     Number of bytes of scanlines
+     * @param level      Deflater compression level
+     * @return the PNG image
+     */
+    static byte[] write(int dim, int colorType, byte[] palette, byte[] alpha,
+                        byte[] scanlines, int length, int level) {
+        TileBuffers buffers = TileBuffers.get();
+
+        // Compress the scanlines first, as the chunk length comes before them
+        Deflater deflater = buffers.deflater(level);
+        deflater.setInput(scanlines, 0, length);
+        deflater.finish();
+        byte[] compressed = buffers.compressed(length / 8 + 64);
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = buffers.compressed(compressed.length * 2);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength,
+                    compressed.length - compressedLength);
+        }
+
+        ByteArrayOutputStream out = buffers.stream();
+        CRC32 crc = buffers.crc();
+        out.write(SIGNATURE, 0, SIGNATURE.length);
+
+        byte[] header = new byte[13];
+        writeInt(header, 0, dim);
+        writeInt(header, 4, dim);
+        header[8] = 8;
+        header[9] = (byte) colorType;
+        // Compression, filter and interlace methods are all 0
+        writeChunk(out, crc, IHDR, header, header.length);
+        if (palette != null) {
+            writeChunk(out, crc, PLTE, palette, palette.length);
+        }
+        if (alpha != null) {
+            writeChunk(out, crc, TRNS, alpha, alpha.length);
+        }
+        writeChunk(out, crc, IDAT, compressed, compressedLength);
+        writeChunk(out, crc, IEND, header, 0);
+        return out.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, CRC32 crc, byte[] type,
+                                   byte[] data, int length) {
+        writeInt(out, length);
+        out.write(type, 0, type.length);
+        out.write(data, 0, length);
+        crc.reset();
+        crc.update(type, 0, type.length);
+        crc.update(data, 0, length);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Quartic (biweight) kernel, (1 - d^2)^2 along each axis for a distance d as a fraction of the
+ * radius.
+ * <p/>
+ * Like the {@link EpanechnikovKernel} it falls to zero exactly at the radius, but smoothly, so
+ * hotspots fade out without a visible edge.
+ */
+public class QuarticKernel extends Kernel {
+
+    @Override
+    protected double weight(double distance) {
+        double falloff = 1 - distance * distance;
+        return falloff * falloff;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+
+import java.util.Arrays;
+
+/**
+ * The radius of a heatmap at each zoom level, in pixels.
+ * <p/>
+ * A fixed radius in pixels covers ever more ground as the map zooms out, merging a whole city
+ * into one blob, and ever less as it zooms in. A schedule lets the radius follow the zoom level,
+ * for instance to cover the same distance on the ground at every zoom level.
+ * Schedules are immutable.
+ */
+public class RadiusSchedule {
+
+    /**
+     * Smallest radius of a schedule, below the minimum of a fixed radius so that zoomed out
+     * levels can be sharper
+     */
+    private static final int MIN_RADIUS = 1;
+
+    private final int[] mRadii;
+
+    private RadiusSchedule(int[] radii) {
+        mRadii = radii;
+    }
+
+    /**
+     * Creates a schedule with the same radius at every zoom level.
+     *
+     * @param radius Radius in pixels, within 10 to 50 inclusive
+     */
+    public static RadiusSchedule fixed(int radius) {
+        if (radius < HeatmapTileProvider.MIN_RADIUS || radius > HeatmapTileProvider.MAX_RADIUS) {
+            throw new IllegalArgumentException("Radius not within bounds.");
+        }
+        int[] radii = new int[HeatmapTileProvider.MAX_ZOOM_LEVEL];
+        Arrays.fill(radii, radius);
+        return new RadiusSchedule(radii);
+    }
+
+    /**
+     * Creates a schedule with a given radius per zoom level.
+     *
+     * @param radii Radius in pixels of zoom levels 0, 1, 2..., within 1 to 50 inclusive. Zoom
+     *              levels beyond the last one given use its radius.
+     */
+    public static RadiusSchedule perZoom(int... radii) {
+        if (radii.length == 0) {
+            throw new IllegalArgumentException("No radii.");
+        }
+        int[] schedule = new int[HeatmapTileProvider.MAX_ZOOM_LEVEL];
+        for (int zoom = 0; zoom < schedule.length; zoom++) {
+            schedule[zoom] = radii[Math.min(zoom, radii.length - 1)];
+            if (schedule[zoom] < MIN_RADIUS || schedule[zoom] > HeatmapTileProvider.MAX_RADIUS) {
+                throw new IllegalArgumentException("Radius not within bounds.");
+            }
+        }
+        return new RadiusSchedule(schedule);
+    }
+
+    /**
+     * Creates a schedule covering the same distance on the ground at every zoom level, as far
+     * as the bounds of a radius allow: the radius doubles with each zoom level, from 1 to 50.
+     *
+     * @param meters   Radius on the ground, in meters
+     * @param latitude Latitude at which to measure the distance, such as that of the center of
+     *                 the data: the Mercator projection stretches distances away from the equator
+     */
+    public static RadiusSchedule meters(double meters, double latitude) {
+        if (meters <= 0) {
+            throw new IllegalArgumentException("Radius must be positive.");
+        }
+        int[] radii = new int[HeatmapTileProvider.MAX_ZOOM_LEVEL];
+        for (int zoom = 0; zoom < radii.length; zoom++) {
+            // Longitude spanned by a pixel of a tile at this zoom level
+            double pixelDegrees = 360.0 / (HeatmapTileProvider.TILE_DIM * (double) (1L << zoom));
+            double pixelMeters = SphericalUtil.computeDistanceBetween(
+                    new LatLng(latitude, 0), new LatLng(latitude, pixelDegrees));
+            long radius = Math.round(meters / pixelMeters);
+            radii[zoom] = (int) Math.max(MIN_RADIUS,
+                    Math.min(radius, HeatmapTileProvider.MAX_RADIUS));
+        }
+        return new RadiusSchedule(radii);
+    }
+
+    /**
+     * @param zoom zoom level, in [0, 22)
+     * @return radius of the zoom level, in pixels
+     */
+    public int getRadius(int zoom) {
+        return mRadii[zoom];
+    }
+
+    /**
+     * @return largest radius of any zoom level, in pixels
+     */
+    public int getMaxRadius() {
+        int max = 0;
+        for (int radius : mRadii) {
+            max = Math.max(max, radius);
+        }
+        return max;
+    }
+}
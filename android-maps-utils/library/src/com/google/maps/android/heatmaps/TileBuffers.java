@@ -0,0 +1,247 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import android.graphics.Bitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Per-thread scratch buffers for tile rendering.
+ * Tiles are requested from several threads at once, so each thread gets its own set of buffers,
+ * which grow as needed and are reused for every tile that thread renders.
+ */
+class TileBuffers {
+
+    private static final ThreadLocal<TileBuffers> sBuffers = new ThreadLocal<TileBuffers>() {
+        @Override
+        protected TileBuffers initialValue() {
+            return new TileBuffers();
+        }
+    };
+
+    private float[] mGrid = new float[0];
+
+    private float[] mScratch = new float[0];
+
+    private float[] mOutput = new float[0];
+
+    private float[] mChannels = new float[0];
+
+    private float[] mBlend = new float[0];
+
+    private double[] mSums = new double[0];
+
+    private int[] mRowStart = new int[0];
+
+    private int[] mRowEnd = new int[0];
+
+    private int[] mPixels = new int[0];
+
+    private int[] mColors = new int[0];
+
+    private byte[] mScanlines = new byte[0];
+
+    private byte[] mCompressed = new byte[0];
+
+    private final ByteArrayOutputStream mStream = new ByteArrayOutputStream();
+
+    private final Deflater mDeflater = new Deflater();
+
+    private final CRC32 mCrc = new CRC32();
+
+    private final GridExtent mExtent = new GridExtent();
+
+    private Bitmap mBitmap;
+
+    private TileBuffers() {
+    }
+
+    /**
+     * @return the buffers of the calling thread
+     */
+    static TileBuffers get() {
+        return sBuffers.get();
+    }
+
+    /**
+     * Grid to bucket points into, zeroed.
+     *
+     * @param size number of values needed
+     * @return a buffer with at least size values, the first size of which are zero
+     */
+    float[] grid(int size) {
+        if (mGrid.length < size) {
+            mGrid = new float[size];
+        } else {
+            Arrays.fill(mGrid, 0, size, 0);
+        }
+        return mGrid;
+    }
+
+    /**
+     * Grids of several layers to bucket points into, one after the other, zeroed.
+     */
+    float[] channels(int size) {
+        if (mChannels.length < size) {
+            mChannels = new float[size];
+        } else {
+            Arrays.fill(mChannels, 0, size, 0);
+        }
+        return mChannels;
+    }
+
+    /**
+     * Color sums to blend layers into, zeroed.
+     */
+    float[] blend(int size) {
+        if (mBlend.length < size) {
+            mBlend = new float[size];
+        } else {
+            Arrays.fill(mBlend, 0, size, 0);
+        }
+        return mBlend;
+    }
+
+    /**
+     * Scratch space for convolvers. Contents are undefined.
+     */
+    float[] scratch(int size) {
+        if (mScratch.length < size) {
+            mScratch = new float[size];
+        }
+        return mScratch;
+    }
+
+    /**
+     * Grid for the convolved output. Contents are undefined.
+     */
+    float[] output(int size) {
+        if (mOutput.length < size) {
+            mOutput = new float[size];
+        }
+        return mOutput;
+    }
+
+    /**
+     * Running sums for one row. Contents are undefined.
+     */
+    double[] sums(int size) {
+        if (mSums.length < size) {
+            mSums = new double[size];
+        }
+        return mSums;
+    }
+
+    int[] rowStart(int size) {
+        if (mRowStart.length < size) {
+            mRowStart = new int[size];
+        }
+        return mRowStart;
+    }
+
+    int[] rowEnd(int size) {
+        if (mRowEnd.length < size) {
+            mRowEnd = new int[size];
+        }
+        return mRowEnd;
+    }
+
+    /**
+     * Palette indices of a colorized tile. Contents are undefined.
+     */
+    int[] pixels(int size) {
+        if (mPixels.length < size) {
+            mPixels = new int[size];
+        }
+        return mPixels;
+    }
+
+    /**
+     * ARGB colors of a tile. Contents are undefined.
+     */
+    int[] colors(int size) {
+        if (mColors.length < size) {
+            mColors = new int[size];
+        }
+        return mColors;
+    }
+
+    /**
+     * Raw image scanlines for an encoder. Contents are undefined.
+     */
+    byte[] scanlines(int size) {
+        if (mScanlines.length < size) {
+            mScanlines = new byte[size];
+        }
+        return mScanlines;
+    }
+
+    /**
+     * Compressed image data. Grows keeping its contents, so it can be filled in steps.
+     */
+    byte[] compressed(int size) {
+        if (mCompressed.length < size) {
+            mCompressed = Arrays.copyOf(mCompressed, size);
+        }
+        return mCompressed;
+    }
+
+    /**
+     * @return an empty stream to write an encoded tile into
+     */
+    ByteArrayOutputStream stream() {
+        mStream.reset();
+        return mStream;
+    }
+
+    /**
+     * @param level compression level
+     * @return a deflater with no input, set to the compression level
+     */
+    Deflater deflater(int level) {
+        mDeflater.reset();
+        mDeflater.setLevel(level);
+        return mDeflater;
+    }
+
+    CRC32 crc() {
+        return mCrc;
+    }
+
+    /**
+     * @param capacity number of cells the extent should remember
+     * @return an empty extent
+     */
+    GridExtent extent(int capacity) {
+        mExtent.reset(capacity);
+        return mExtent;
+    }
+
+    /**
+     * Square bitmap to draw a tile into. Contents are undefined.
+     */
+    Bitmap bitmap(int dim) {
+        if (mBitmap == null || mBitmap.getWidth() != dim) {
+            mBitmap = Bitmap.createBitmap(dim, dim, Bitmap.Config.ARGB_8888);
+        }
+        return mBitmap;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import android.support.v4.util.LruCache;
+
+import com.google.android.gms.maps.model.Tile;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache of what is rendered for each heatmap tile, such as its encoded image, evicting least
+ * recently used tiles beyond a budget.
+ * Tiles are keyed by their coordinates together with the versions of the provider state they
+ * were rendered from, so a tile rendered before a change is never returned after it.
+ */
+class TileCache<V> {
+
+    /**
+     * Identifies a rendered tile.
+     */
+    static final class Key {
+        final int x;
+        final int y;
+        final int zoom;
+        final int radius;
+        final int styleVersion;
+        final int dataVersion;
+
+        Key(int x, int y, int zoom, int radius, int styleVersion, int dataVersion) {
+            this.x = x;
+            this.y = y;
+            this.zoom = zoom;
+            this.radius = radius;
+            this.styleVersion = styleVersion;
+            this.dataVersion = dataVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return x == key.x && y == key.y && zoom == key.zoom && radius == key.radius
+                    && styleVersion == key.styleVersion && dataVersion == key.dataVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = x;
+            result = 31 * result + y;
+            result = 31 * result + zoom;
+            result = 31 * result + radius;
+            result = 31 * result + styleVersion;
+            result = 31 * result + dataVersion;
+            return result;
+        }
+    }
+
+    private final LruCache<Key, V> mCache;
+
+    /**
+     * Tiles dropped by invalidate(DirtyTiles), which LruCache does not count as evictions
+     */
+    private final AtomicInteger mInvalidatedCount = new AtomicInteger();
+
+    /**
+     * @param maxSize budget for the values, in the units of sizeOf
+     */
+    TileCache(int maxSize) {
+        mCache = new LruCache<Key, V>(maxSize) {
+            @Override
+            protected int sizeOf(Key key, V value) {
+                return TileCache.this.sizeOf(value);
+            }
+        };
+    }
+
+    /**
+     * Creates a cache of encoded tiles.
+     *
+     * @param maxBytes byte budget for the encoded tiles
+     */
+    static TileCache<Tile> forTiles(int maxBytes) {
+        return new TileCache<Tile>(maxBytes) {
+            @Override
+            int sizeOf(Tile tile) {
+                // Count blank tiles as one byte so that they are still bounded
+                return tile.data == null ? 1 : tile.data.length;
+            }
+        };
+    }
+
+    /**
+     * @return the size of a value, counted against the budget
+     */
+    int sizeOf(V value) {
+        return 1;
+    }
+
+    V get(Key key) {
+        return mCache.get(key);
+    }
+
+    void put(Key key, V value) {
+        mCache.put(key, value);
+    }
+
+    void remove(Key key) {
+        mCache.remove(key);
+    }
+
+    /**
+     * Drops every tile.
+     */
+    void invalidate() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Drops the tiles affected by a change to the data.
+     */
+    void invalidate(DirtyTiles dirty) {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        // Work out the affected tiles only for zoom levels that are cached
+        Map<Integer, Set<TileCoordinate>> tilesByZoom = new HashMap<Integer, Set<TileCoordinate>>();
+        for (Key key : mCache.snapshot().keySet()) {
+            if (dirty.isZoomDirty(key.zoom)) {
+                drop(key);
+                continue;
+            }
+            Set<TileCoordinate> tiles = tilesByZoom.get(key.zoom);
+            if (tiles == null) {
+                tiles = dirty.getTiles(key.zoom);
+                tilesByZoom.put(key.zoom, tiles);
+            }
+            if (tiles.contains(new TileCoordinate(key.x, key.y, key.zoom))) {
+                drop(key);
+            }
+        }
+    }
+
+    private void drop(Key key) {
+        // Another thread may have evicted the tile since the snapshot
+        if (mCache.remove(key) != null) {
+            mInvalidatedCount.incrementAndGet();
+        }
+    }
+
+    int hitCount() {
+        return mCache.hitCount();
+    }
+
+    int missCount() {
+        return mCache.missCount();
+    }
+
+    int evictionCount() {
+        return mCache.evictionCount() + mInvalidatedCount.get();
+    }
+
+    int size() {
+        return mCache.size();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Coordinates of a map tile.
+ */
+public class TileCoordinate {
+    public final int x;
+    public final int y;
+    public final int zoom;
+
+    public TileCoordinate(int x, int y, int zoom) {
+        this.x = x;
+        this.y = y;
+        this.zoom = zoom;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TileCoordinate)) return false;
+        TileCoordinate other = (TileCoordinate) o;
+        return x == other.x && y == other.y && zoom == other.zoom;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * x + y) + zoom;
+    }
+
+    @Override
+    public String toString() {
+        return "TileCoordinate{" +
+                "x=" + x +
+                ", y=" + y +
+                ", zoom=" + zoom +
+                '}';
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Encodes the colored pixels of a heatmap tile into the image data of a Tile.
+ * <p/>
+ * Pixels are given as indices into a palette rather than as colors: index 0 is transparent, and
+ * the other indices are the colors of the gradient's color map, in order. Tiles blending several
+ * gradients, which have no palette, give ARGB colors instead.
+ */
+public interface TileEncoder {
+    /**
+     * Encodes a square tile. Called from several threads at once.
+     *
+     * @param pixels  Row-major palette indices, or ARGB colors if palette is null: dim * dim
+     *                values
+     * @param dim     Dimension of the tile, in pixels
+     * @param palette ARGB colors of the palette indices, or null
+     * @return image data, in a format the Maps SDK can decode
+     */
+    byte[] encode(int[] pixels, int dim, int[] palette);
+}
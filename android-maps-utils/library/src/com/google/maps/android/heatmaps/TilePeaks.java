@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import java.util.Arrays;
+
+/**
+ * The local maxima of the intensity of one tile, in pixels of the tile.
+ */
+class TilePeaks {
+
+    static final TilePeaks EMPTY = new TilePeaks(new int[0], new int[0], new float[0], 0);
+
+    private final int[] mX;
+    private final int[] mY;
+    private final float[] mIntensity;
+    private final int mSize;
+
+    private TilePeaks(int[] x, int[] y, float[] intensity, int size) {
+        mX = x;
+        mY = y;
+        mIntensity = intensity;
+        mSize = size;
+    }
+
+    /**
+     * Creates a cache of the peaks of tiles.
+     *
+     * @param maxPeaks number of peaks to keep, across tiles
+     */
+    static TileCache<TilePeaks> newCache(int maxPeaks) {
+        return new TileCache<TilePeaks>(maxPeaks) {
+            @Override
+            int sizeOf(TilePeaks peaks) {
+                // Count tiles without peaks so that they are still bounded
+                return peaks.size() + 1;
+            }
+        };
+    }
+
+    /**
+     * Finds the pixels of a tile above all their neighbours. Of neighbours of equal intensity,
+     * only the first in row-major order is a peak.
+     *
+     * @param grid   smoothed intensities of the tile with a margin of neighbouring pixels,
+     *               dim * dim values
+     * @param dim    dimension of the grid
+     * @param margin pixels of the neighbouring tiles on each side of the grid, at least 1
+     * @param extent cells of the grid that may be non-zero; others are ignored
+     */
+    static TilePeaks find(float[] grid, int dim, int margin, GridExtent extent) {
+        int minX = Math.max(extent.minX, margin);
+        int maxX = Math.min(extent.maxX, dim - margin - 1);
+        int minY = Math.max(extent.minY, margin);
+        int maxY = Math.min(extent.maxY, dim - margin - 1);
+        int[] peakX = new int[16];
+        int[] peakY = new int[16];
+        float[] intensity = new float[16];
+        int size = 0;
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                float value = grid[y * dim + x];
+                if (value <= 0
+                        || value <= valueAt(grid, dim, extent, x - 1, y - 1)
+                        || value <= valueAt(grid, dim, extent, x, y - 1)
+                        || value <= valueAt(grid, dim, extent, x + 1, y - 1)
+                        || value <= valueAt(grid, dim, extent, x - 1, y)
+                        || value < valueAt(grid, dim, extent, x + 1, y)
+                        || value < valueAt(grid, dim, extent, x - 1, y + 1)
+                        || value < valueAt(grid, dim, extent, x, y + 1)
+                        || value < valueAt(grid, dim, extent, x + 1, y + 1)) {
+                    continue;
+                }
+                if (size == peakX.length) {
+                    peakX = Arrays.copyOf(peakX, size * 2);
+                    peakY = Arrays.copyOf(peakY, size * 2);
+                    intensity = Arrays.copyOf(intensity, size * 2);
+                }
+                peakX[size] = x - margin;
+                peakY[size] = y - margin;
+                intensity[size] = value;
+                size++;
+            }
+        }
+        return size == 0 ? EMPTY : new TilePeaks(peakX, peakY, intensity, size);
+    }
+
+    /**
+     * @return the intensity of a cell of the grid, 0 outside the extent
+     */
+    private static float valueAt(float[] grid, int dim, GridExtent extent, int x, int y) {
+        if (x < extent.minX || x > extent.maxX || y < extent.minY || y > extent.maxY) {
+            return 0;
+        }
+        return grid[y * dim + x];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return x coordinate of a peak, in pixels of the tile
+     */
+    int getX(int index) {
+        return mX[index];
+    }
+
+    /**
+     * @return y coordinate of a peak, in pixels of the tile
+     */
+    int getY(int index) {
+        return mY[index];
+    }
+
+    /**
+     * @return intensity of a peak, before scaling by the maximum intensity
+     */
+    float getIntensity(int index) {
+        return mIntensity[index];
+    }
+}
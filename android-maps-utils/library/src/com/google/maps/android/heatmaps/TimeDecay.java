@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+/**
+ * Fades out the intensity of points as they age, so that recent points stand out.
+ * <p/>
+ * Ages are measured from the "now" of the heatmap, in the unit of the point times given by
+ * {@link WeightedLatLng#getTime()} or a {@link TimedPointStore}.
+ */
+public interface TimeDecay {
+    /**
+     * @param age time elapsed since the point; negative for points after now
+     * @return factor in [0, 1] to multiply the intensity of the point by
+     */
+    double getWeight(long age);
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.maps.android.geometry.Bounds;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.quadtree.PointIndexQuadTree;
+
+import java.util.Collection;
+
+/**
+ * Stores weighted points with a timestamp, indexed so that the points of any time window can be
+ * rendered without rebuilding anything.
+ * <p/>
+ * Points are sorted by time and split into buckets of a fixed duration, each with its own quad
+ * tree, so a window only searches the trees of the buckets it overlaps. Buckets partially in the
+ * window are filtered by index, since their points are sorted by time too.
+ * The store can't change once created. This class is thread safe.
+ */
+public class TimedPointStore implements WeightedPointStore {
+
+    private final double[] mX;
+
+    private final double[] mY;
+
+    private final float[] mIntensity;
+
+    private final long[] mTime;
+
+    private final long mBucketDuration;
+
+    /**
+     * Index of the first point of each non-empty bucket, followed by the number of points
+     */
+    private final int[] mBucketStart;
+
+    private final PointIndexQuadTree[] mTrees;
+
+    private final Bounds mBounds;
+
+    /**
+     * @param points         points to store, copied
+     * @param times          time of each point, in any unit such as milliseconds since the epoch
+     * @param bucketDuration duration of a bucket, in the same unit: about the shortest window
+     *                       that will be displayed
+     */
+    public TimedPointStore(WeightedPointStore points, long[] times, long bucketDuration) {
+        if (times.length != points.size()) {
+            throw new IllegalArgumentException("There must be one time per point.");
+        }
+        if (bucketDuration <= 0) {
+            throw new IllegalArgumentException("Bucket duration must be positive.");
+        }
+        mBucketDuration = bucketDuration;
+
+        int size = times.length;
+        int[] order = sortByTime(times);
+        mX = new double[size];
+        mY = new double[size];
+        mIntensity = new float[size];
+        mTime = new long[size];
+        int bucketCount = 0;
+        for (int i = 0; i < size; i++) {
+            int index = order[i];
+            mX[i] = points.getX(index);
+            mY[i] = points.getY(index);
+            mIntensity[i] = (float) points.getIntensity(index);
+            mTime[i] = times[index];
+            if (i == 0 || getBucket(mTime[i]) != getBucket(mTime[i - 1])) {
+                bucketCount++;
+            }
+        }
+
+        mBucketStart = new int[bucketCount + 1];
+        mTrees = new PointIndexQuadTree[bucketCount];
+        int bucket = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || getBucket(mTime[i]) != getBucket(mTime[i - 1])) {
+                mBucketStart[bucket++] = i;
+            }
+        }
+        mBucketStart[bucketCount] = size;
+
+        Bounds bounds = null;
+        for (int b = 0; b < bucketCount; b++) {
+            mTrees[b] = new PointIndexQuadTree(this, mBucketStart[b], mBucketStart[b + 1]);
+            Bounds treeBounds = mTrees[b].getBounds();
+            bounds = bounds == null ? treeBounds : new Bounds(
+                    Math.min(bounds.minX, treeBounds.minX), Math.max(bounds.maxX, treeBounds.maxX),
+                    Math.min(bounds.minY, treeBounds.minY), Math.max(bounds.maxY, treeBounds.maxY));
+        }
+        mBounds = bounds == null ? new Bounds(0, 0, 0, 0) : bounds;
+    }
+
+    /**
+     * Creates a store of WeightedLatLngs, using the time of each.
+     *
+     * @param data           points to store
+     * @param bucketDuration duration of a bucket: see
+     *                       {@link #TimedPointStore(WeightedPointStore, long[], long)}
+     */
+    public static TimedPointStore fromWeightedLatLngs(Collection<WeightedLatLng> data,
+                                                      long bucketDuration) {
+        ColumnarPointStore points = new ColumnarPointStore(data.size());
+        long[] times = new long[data.size()];
+        int i = 0;
+        for (WeightedLatLng weightedLatLng : data) {
+            Point point = weightedLatLng.getPoint();
+            points.addPoint(point.x, point.y, weightedLatLng.getIntensity());
+            times[i++] = weightedLatLng.getTime();
+        }
+        return new TimedPointStore(points, times, bucketDuration);
+    }
+
+    /**
+     * Sorts point indices by time, keeping points at the same time in order.
+     */
+    private static int[] sortByTime(long[] times) {
+        int[] order = new int[times.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Bottom-up merge sort, as sorting boxed indices with a comparator would allocate
+        int[] merged = new int[order.length];
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int lo = 0; lo < order.length; lo += 2 * width) {
+                int mid = Math.min(lo + width, order.length);
+                int hi = Math.min(lo + 2 * width, order.length);
+                int i = lo;
+                int j = mid;
+                for (int k = lo; k < hi; k++) {
+                    if (j >= hi || (i < mid && times[order[i]] <= times[order[j]])) {
+                        merged[k] = order[i++];
+                    } else {
+                        merged[k] = order[j++];
+                    }
+                }
+            }
+            int[] swap = order;
+            order = merged;
+            merged = swap;
+        }
+        return order;
+    }
+
+    private long getBucket(long time) {
+        long bucket = time / mBucketDuration;
+        return time < 0 && time % mBucketDuration != 0 ? bucket - 1 : bucket;
+    }
+
+    @Override
+    public int size() {
+        return mTime.length;
+    }
+
+    @Override
+    public double getX(int index) {
+        return mX[index];
+    }
+
+    @Override
+    public double getY(int index) {
+        return mY[index];
+    }
+
+    @Override
+    public double getIntensity(int index) {
+        return mIntensity[index];
+    }
+
+    /**
+     * @param index index of a point, in [0, size()); points are sorted by time
+     * @return time of the point
+     */
+    public long getTime(int index) {
+        return mTime[index];
+    }
+
+    /**
+     * @return duration of a bucket
+     */
+    public long getBucketDuration() {
+        return mBucketDuration;
+    }
+
+    /**
+     * @return number of buckets holding points
+     */
+    public int getBucketCount() {
+        return mTrees.length;
+    }
+
+    /**
+     * @return bounds of all the points
+     */
+    public Bounds getBounds() {
+        return mBounds;
+    }
+
+    /**
+     * @return index of the first point at or after the given time, or size() if none
+     */
+    public int indexOf(long time) {
+        int lo = 0;
+        int hi = mTime.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mTime[mid] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return index of the bucket holding a point
+     */
+    private int bucketOf(int index) {
+        int lo = 0;
+        int hi = mTrees.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mBucketStart[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Gets the points of a time window, without copying them.
+     *
+     * @param from start of the window, inclusive
+     * @param to   end of the window, exclusive
+     */
+    Window window(long from, long to) {
+        int start = indexOf(from);
+        return new Window(start, Math.max(start, indexOf(to)));
+    }
+
+    /**
+     * The points of a time window, indexed from 0.
+     */
+    class Window implements WeightedPointStore {
+        private final int mStart;
+        private final int mEnd;
+
+        Window(int start, int end) {
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        public int size() {
+            return mEnd - mStart;
+        }
+
+        @Override
+        public double getX(int index) {
+            return mX[mStart + index];
+        }
+
+        @Override
+        public double getY(int index) {
+            return mY[mStart + index];
+        }
+
+        @Override
+        public double getIntensity(int index) {
+            return mIntensity[mStart + index];
+        }
+
+        long getTime(int index) {
+            return mTime[mStart + index];
+        }
+
+        /**
+         * Visits the index in the window of every point within a given bounds.
+         */
+        void search(Bounds searchBounds, PointIndexQuadTree.Visitor visitor) {
+            if (mStart == mEnd) {
+                return;
+            }
+            WindowVisitor windowVisitor = new WindowVisitor(visitor, mStart, mEnd);
+            int last = bucketOf(mEnd - 1);
+            for (int bucket = bucketOf(mStart); bucket <= last; bucket++) {
+                mTrees[bucket].search(searchBounds, windowVisitor);
+            }
+        }
+    }
+
+    /**
+     * Passes on the points of a window, filtering out the rest of the buckets at its ends.
+     */
+    private static class WindowVisitor implements PointIndexQuadTree.Visitor {
+        private final PointIndexQuadTree.Visitor mVisitor;
+        private final int mStart;
+        private final int mEnd;
+
+        WindowVisitor(PointIndexQuadTree.Visitor visitor, int start, int end) {
+            mVisitor = visitor;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        public void visit(int index) {
+            if (index >= mStart && index < mEnd) {
+                mVisitor.visit(index - mStart);
+            }
+        }
+    }
+}
@@ -44,6 +44,8 @@ public class WeightedLatLng implements PointQuadTree.Item {
 
     private double mIntensity;
 
+    private long mTime;
+
     /**
      * Constructor
      *
@@ -61,6 +63,18 @@ public class WeightedLatLng implements PointQuadTree.Item {
         else mIntensity = DEFAULT_INTENSITY;
     }
 
+    /**
+     * Constructor for points with a timestamp, which time-indexed point stores filter on
+     *
+     * @param latLng    LatLng to add to wrapper
+     * @param intensity Intensity to use: see {@link #WeightedLatLng(LatLng, double)}
+     * @param time      Time of the point, in any unit such as milliseconds since the epoch
+     */
+    public WeightedLatLng(LatLng latLng, double intensity, long time) {
+        this(latLng, intensity);
+        mTime = time;
+    }
+
     /**
      * Constructor that uses default value for intensity
      *
@@ -78,4 +92,11 @@ public class WeightedLatLng implements PointQuadTree.Item {
         return mIntensity;
     }
 
+    /**
+     * @return time of the point, or 0 if not set
+     */
+    public long getTime() {
+        return mTime;
+    }
+
 }
@@ -0,0 +1,411 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.quadtree.PointTree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads weighted points from a JSON array of objects such as
+ * <code>[{"lat": 59.84, "lng": 30.22, "weight": 1.13}, ...]</code>, one point at a time.
+ * <p/>
+ * The input is tokenized as it is read, without building a string of the whole input or a tree
+ * of JSON objects, so a large file takes no more memory than the points read from it.
+ * The weight is optional and defaults to {@link WeightedLatLng#DEFAULT_INTENSITY}; other keys
+ * are skipped. This class is not thread safe.
+ */
+public class WeightedLatLngReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int KEY_OTHER = 0;
+
+    private static final int KEY_LAT = 1;
+
+    private static final int KEY_LNG = 2;
+
+    private static final int KEY_WEIGHT = 3;
+
+    /**
+     * Largest number of digits of a number parsed without Double.parseDouble: below 2^53, so
+     * that the digits are exact as a double
+     */
+    private static final int MAX_FAST_DIGITS = 15;
+
+    /**
+     * Powers of ten exact as a double
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream mIn;
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+    private int mPosition;
+
+    private int mLimit;
+
+    /**
+     * Offset of the start of mBuffer in the input, for error messages
+     */
+    private long mOffset;
+
+    /**
+     * Characters of the number being read
+     */
+    private char[] mNumber = new char[32];
+
+    /**
+     * Whether the opening bracket of the array has been read
+     */
+    private boolean mStarted;
+
+    /**
+     * Whether the closing bracket of the array has been read
+     */
+    private boolean mFinished;
+
+    private double mLatitude;
+
+    private double mLongitude;
+
+    private double mWeight;
+
+    /**
+     * @param in UTF-8 JSON input, read from as points are read. Buffered by this reader.
+     */
+    public WeightedLatLngReader(InputStream in) {
+        mIn = in;
+    }
+
+    /**
+     * Reads the next point of the array.
+     *
+     * @return whether there was a point; its values are then returned by the getters
+     * @throws IOException if the input could not be read or is not an array of points
+     */
+    public boolean next() throws IOException {
+        if (mFinished) {
+            return false;
+        }
+        int c = nextNonSpace();
+        if (!mStarted) {
+            if (c != '[') {
+                throw syntaxError("Expected '['");
+            }
+            mStarted = true;
+            c = nextNonSpace();
+            if (c == ']') {
+                mFinished = true;
+                return false;
+            }
+        } else if (c == ']') {
+            mFinished = true;
+            return false;
+        } else if (c == ',') {
+            c = nextNonSpace();
+        } else {
+            throw syntaxError("Expected ',' or ']'");
+        }
+        readPoint(c);
+        return true;
+    }
+
+    /**
+     * @return latitude of the last point read
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * @return longitude of the last point read
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @return weight of the last point read
+     */
+    public double getWeight() {
+        return mWeight;
+    }
+
+    /**
+     * Reads the remaining points into a store.
+     *
+     * @param store store to add the points to
+     * @return number of points read
+     * @throws IOException if the input could not be read or is not an array of points
+     */
+    public int readInto(ColumnarPointStore store) throws IOException {
+        int count = 0;
+        while (next()) {
+            store.add(new LatLng(mLatitude, mLongitude), mWeight);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the remaining points into a quad tree.
+     *
+     * @param tree tree to add the points to
+     * @return number of points read
+     * @throws IOException if the input could not be read or is not an array of points
+     */
+    public int readInto(PointTree<WeightedLatLng> tree) throws IOException {
+        int count = 0;
+        while (next()) {
+            tree.add(new WeightedLatLng(new LatLng(mLatitude, mLongitude), mWeight));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Closes the input.
+     */
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+
+    /**
+     * Reads an object, whose first character has been read.
+     */
+    private void readPoint(int c) throws IOException {
+        if (c != '{') {
+            throw syntaxError("Expected '{'");
+        }
+        mLatitude = Double.NaN;
+        mLongitude = Double.NaN;
+        mWeight = WeightedLatLng.DEFAULT_INTENSITY;
+        c = nextNonSpace();
+        if (c != '}') {
+            while (true) {
+                if (c != '"') {
+                    throw syntaxError("Expected a key");
+                }
+                int key = readKey();
+                if (nextNonSpace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                switch (key) {
+                    case KEY_LAT:
+                        mLatitude = readNumber(nextNonSpace());
+                        break;
+                    case KEY_LNG:
+                        mLongitude = readNumber(nextNonSpace());
+                        break;
+                    case KEY_WEIGHT:
+                        mWeight = readNumber(nextNonSpace());
+                        break;
+                    default:
+                        skipValue(nextNonSpace());
+                }
+                c = nextNonSpace();
+                if (c == '}') {
+                    break;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or '}'");
+                }
+                c = nextNonSpace();
+            }
+        }
+        if (Double.isNaN(mLatitude) || Double.isNaN(mLongitude)) {
+            throw syntaxError("Point without lat and lng");
+        }
+    }
+
+    /**
+     * Reads a key, whose opening quote has been read.
+     *
+     * @return which key it is, KEY_OTHER for keys other than lat, lng and weight
+     */
+    private int readKey() throws IOException {
+        // Matches while reading, as no key of interest has escapes or non ASCII characters
+        int length = 0;
+        boolean lat = true;
+        boolean lng = true;
+        boolean weight = true;
+        int c;
+        while ((c = read()) != '"') {
+            if (c == '\\') {
+                read();
+                lat = lng = weight = false;
+            }
+            lat &= length < 3 && "lat".charAt(length) == c;
+            lng &= length < 3 && "lng".charAt(length) == c;
+            weight &= length < 6 && "weight".charAt(length) == c;
+            length++;
+        }
+        if (lat && length == 3) {
+            return KEY_LAT;
+        }
+        if (lng && length == 3) {
+            return KEY_LNG;
+        }
+        if (weight && length == 6) {
+            return KEY_WEIGHT;
+        }
+        return KEY_OTHER;
+    }
+
+    /**
+     * Reads a number, whose first character has been read.
+     */
+    private double readNumber(int c) throws IOException {
+        int length = 0;
+        while ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e'
+                || c == 'E') {
+            if (length == mNumber.length) {
+                mNumber = Arrays.copyOf(mNumber, length * 2);
+            }
+            mNumber[length++] = (char) c;
+            c = read(false);
+        }
+        if (c != -1) {
+            mPosition--;
+        }
+        if (length == 0) {
+            throw syntaxError("Expected a number");
+        }
+
+        // Numbers of few digits and no exponent are exact as digits / 10^decimals, which a
+        // single division rounds correctly
+        int start = mNumber[0] == '-' ? 1 : 0;
+        long digits = 0;
+        int digitCount = 0;
+        int decimals = -1;
+        for (int i = start; i < length; i++) {
+            char digit = mNumber[i];
+            if (digit >= '0' && digit <= '9') {
+                digits = digits * 10 + (digit - '0');
+                digitCount++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (digit == '.' && decimals < 0 && digitCount > 0) {
+                decimals = 0;
+            } else {
+                digitCount = -1;
+                break;
+            }
+        }
+        if (digitCount > 0 && digitCount <= MAX_FAST_DIGITS && decimals != 0) {
+            double value = decimals > 0 ? digits / POWERS_OF_TEN[decimals] : digits;
+            return start == 1 ? -value : value;
+        }
+        try {
+            return Double.parseDouble(new String(mNumber, 0, length));
+        } catch (NumberFormatException e) {
+            throw syntaxError("Malformed number");
+        }
+    }
+
+    /**
+     * Skips a value of any type, whose first character has been read.
+     */
+    private void skipValue(int c) throws IOException {
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                c = read();
+                if (c == '"') {
+                    skipString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+        } else if (c == ',' || c == '}' || c == ']') {
+            throw syntaxError("Expected a value");
+        } else {
+            // A number or a literal such as true or null
+            while (c != ',' && c != '}' && c != ']' && !isSpace(c)) {
+                c = read();
+            }
+            mPosition--;
+        }
+    }
+
+    /**
+     * Skips a string, whose opening quote has been read.
+     */
+    private void skipString() throws IOException {
+        int c;
+        while ((c = read()) != '"') {
+            if (c == '\\') {
+                read();
+            }
+        }
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private int nextNonSpace() throws IOException {
+        int c = read();
+        while (isSpace(c)) {
+            c = read();
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        return read(true);
+    }
+
+    /**
+     * @param required whether the end of the input is an error
+     * @return next byte of the input, or -1 at the end of an input that is not required
+     */
+    private int read(boolean required) throws IOException {
+        if (mPosition == mLimit) {
+            mOffset += mLimit;
+            mPosition = 0;
+            mLimit = Math.max(mIn.read(mBuffer), 0);
+            if (mLimit == 0) {
+                if (required) {
+                    throw syntaxError("Unexpected end of input");
+                }
+                return -1;
+            }
+        }
+        return mBuffer[mPosition++] & 0xff;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at offset " + (mOffset + mPosition - 1));
+    }
+}
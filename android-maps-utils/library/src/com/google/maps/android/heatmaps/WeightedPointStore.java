@@ -0,0 +1,32 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.maps.android.quadtree.PointSet;
+
+/**
+ * Weighted heatmap points addressed by index, in world coordinates as given by
+ * {@link WeightedLatLng#getPoint()}. Lets large datasets be indexed and rendered without an
+ * object per point.
+ */
+public interface WeightedPointStore extends PointSet {
+    /**
+     * @param index index of a point, in [0, size())
+     * @return intensity of the point
+     */
+    double getIntensity(int index);
+}
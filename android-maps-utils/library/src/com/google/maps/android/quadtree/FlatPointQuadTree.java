@@ -0,0 +1,442 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.quadtree;
+
+import com.google.maps.android.geometry.Bounds;
+import com.google.maps.android.geometry.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A quad tree which tracks items with a Point geometry, like {@link PointQuadTree}, splitting
+ * quads in the same way, but without an object per quad.
+ * <p/>
+ * Quads are stored in parallel arrays, and their bounds and depth are worked out while walking
+ * down the tree. The items of each leaf are kept in blocks of slots, with their coordinates
+ * packed in one array next to each other, so that searching reads leaves sequentially and
+ * does not call {@link PointQuadTree.Item#getPoint()}. Items are found in no particular order.
+ * This class is not thread safe.
+ */
+public class FlatPointQuadTree<T extends PointQuadTree.Item> implements PointTree<T> {
+
+    /**
+     * Maximum number of elements to store in a quad before splitting.
+     */
+    private final static int MAX_ELEMENTS = 50;
+
+    /**
+     * Maximum depth.
+     */
+    private final static int MAX_DEPTH = 40;
+
+    /**
+     * Number of items in a block: a quad splits when it is full. Leaves at the maximum depth
+     * chain blocks once they are full.
+     */
+    private final static int BLOCK_SIZE = MAX_ELEMENTS + 1;
+
+    private final static int INITIAL_QUADS = 64;
+
+    private final static int INITIAL_BLOCKS = 16;
+
+    private final Bounds mBounds;
+
+    /**
+     * Index of each quad's first child, the other three following it; -1 for leaves.
+     * Children are ordered top left, top right, bottom left, bottom right.
+     */
+    private int[] mFirstChild;
+
+    /**
+     * First block of the items of each leaf, or -1 if it has none.
+     */
+    private int[] mFirstBlock;
+
+    private int mQuadCount;
+
+    /**
+     * Number of items in each block.
+     */
+    private int[] mBlockSize;
+
+    /**
+     * Next block of the same leaf, or of the free blocks; -1 for the last block.
+     */
+    private int[] mNextBlock;
+
+    private int mBlockCount;
+
+    /**
+     * First block no longer used, or -1.
+     */
+    private int mFreeBlock = -1;
+
+    /**
+     * Coordinates of the item in each slot: x then y. Block b has slots
+     * [b * BLOCK_SIZE, b * BLOCK_SIZE + mBlockSize[b]).
+     */
+    private double[] mCoordinates;
+
+    /**
+     * Item in each slot.
+     */
+    private Object[] mItems;
+
+    /**
+     * Creates a new quad tree with specified bounds.
+     */
+    public FlatPointQuadTree(double minX, double maxX, double minY, double maxY) {
+        this(new Bounds(minX, maxX, minY, maxY));
+    }
+
+    public FlatPointQuadTree(Bounds bounds) {
+        mBounds = bounds;
+        mFirstChild = new int[INITIAL_QUADS];
+        mFirstBlock = new int[INITIAL_QUADS];
+        mBlockSize = new int[INITIAL_BLOCKS];
+        mNextBlock = new int[INITIAL_BLOCKS];
+        mCoordinates = new double[INITIAL_BLOCKS * BLOCK_SIZE * 2];
+        mItems = new Object[INITIAL_BLOCKS * BLOCK_SIZE];
+        newQuad();
+    }
+
+    private int newQuad() {
+        if (mQuadCount == mFirstChild.length) {
+            int capacity = mQuadCount * 2;
+            mFirstChild = Arrays.copyOf(mFirstChild, capacity);
+            mFirstBlock = Arrays.copyOf(mFirstBlock, capacity);
+        }
+        mFirstChild[mQuadCount] = -1;
+        mFirstBlock[mQuadCount] = -1;
+        return mQuadCount++;
+    }
+
+    private int newBlock(int next) {
+        int block = mFreeBlock;
+        if (block >= 0) {
+            mFreeBlock = mNextBlock[block];
+        } else {
+            if (mBlockCount == mBlockSize.length) {
+                int capacity = mBlockCount * 2;
+                mBlockSize = Arrays.copyOf(mBlockSize, capacity);
+                mNextBlock = Arrays.copyOf(mNextBlock, capacity);
+                mCoordinates = Arrays.copyOf(mCoordinates, capacity * BLOCK_SIZE * 2);
+                mItems = Arrays.copyOf(mItems, capacity * BLOCK_SIZE);
+            }
+            block = mBlockCount++;
+        }
+        mBlockSize[block] = 0;
+        mNextBlock[block] = next;
+        return block;
+    }
+
+    private void freeBlock(int block) {
+        Arrays.fill(mItems, block * BLOCK_SIZE, block * BLOCK_SIZE + mBlockSize[block], null);
+        mBlockSize[block] = 0;
+        mNextBlock[block] = mFreeBlock;
+        mFreeBlock = block;
+    }
+
+    /**
+     * Insert an item.
+     */
+    @Override
+    public void add(T item) {
+        Point point = item.getPoint();
+        if (!mBounds.contains(point.x, point.y)) {
+            return;
+        }
+        double x = point.x;
+        double y = point.y;
+        double minX = mBounds.minX;
+        double maxX = mBounds.maxX;
+        double minY = mBounds.minY;
+        double maxY = mBounds.maxY;
+        int quad = 0;
+        int depth = 0;
+        while (mFirstChild[quad] >= 0) {
+            double midX = (minX + maxX) / 2;
+            double midY = (minY + maxY) / 2;
+            quad = mFirstChild[quad];
+            if (y < midY) {
+                maxY = midY;
+            } else {
+                minY = midY;
+                quad += 2;
+            }
+            if (x < midX) {
+                maxX = midX;
+            } else {
+                minX = midX;
+                quad++;
+            }
+            depth++;
+        }
+        int block = append(quad, x, y, item);
+        if (mBlockSize[block] == BLOCK_SIZE && depth < MAX_DEPTH) {
+            split(quad, minX, maxX, minY, maxY, depth);
+        }
+    }
+
+    /**
+     * Adds an item to a leaf.
+     *
+     * @return the block it was added to
+     */
+    private int append(int quad, double x, double y, Object item) {
+        int block = mFirstBlock[quad];
+        if (block < 0 || mBlockSize[block] == BLOCK_SIZE) {
+            block = newBlock(block);
+            mFirstBlock[quad] = block;
+        }
+        int slot = block * BLOCK_SIZE + mBlockSize[block]++;
+        mCoordinates[slot * 2] = x;
+        mCoordinates[slot * 2 + 1] = y;
+        mItems[slot] = item;
+        return block;
+    }
+
+    /**
+     * Split a leaf, whose items are in a single full block.
+     */
+    private void split(int quad, double minX, double maxX, double minY, double maxY, int depth) {
+        double midX = (minX + maxX) / 2;
+        double midY = (minY + maxY) / 2;
+        int firstChild = newQuad();
+        newQuad();
+        newQuad();
+        newQuad();
+        int block = mFirstBlock[quad];
+        mFirstChild[quad] = firstChild;
+        mFirstBlock[quad] = -1;
+
+        // re-insert items into child quads.
+        int start = block * BLOCK_SIZE;
+        for (int slot = start; slot < start + mBlockSize[block]; slot++) {
+            double x = mCoordinates[slot * 2];
+            double y = mCoordinates[slot * 2 + 1];
+            int child = firstChild + (y < midY ? 0 : 2) + (x < midX ? 0 : 1);
+            append(child, x, y, mItems[slot]);
+        }
+        freeBlock(block);
+
+        // All the items may have gone to the same child
+        for (int child = 0; child < 4; child++) {
+            int childBlock = mFirstBlock[firstChild + child];
+            if (childBlock >= 0 && mBlockSize[childBlock] == BLOCK_SIZE && depth + 1 < MAX_DEPTH) {
+                split(firstChild + child,
+                        child % 2 == 0 ? minX : midX, child % 2 == 0 ? midX : maxX,
+                        child < 2 ? minY : midY, child < 2 ? midY : maxY, depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Remove the given item from the set.
+     *
+     * @return whether the item was removed.
+     */
+    @Override
+    public boolean remove(T item) {
+        Point point = item.getPoint();
+        if (!mBounds.contains(point.x, point.y)) {
+            return false;
+        }
+        double minX = mBounds.minX;
+        double maxX = mBounds.maxX;
+        double minY = mBounds.minY;
+        double maxY = mBounds.maxY;
+        int quad = 0;
+        while (mFirstChild[quad] >= 0) {
+            double midX = (minX + maxX) / 2;
+            double midY = (minY + maxY) / 2;
+            quad = mFirstChild[quad];
+            if (point.y < midY) {
+                maxY = midY;
+            } else {
+                minY = midY;
+                quad += 2;
+            }
+            if (point.x < midX) {
+                maxX = midX;
+            } else {
+                minX = midX;
+                quad++;
+            }
+        }
+
+        int previous = -1;
+        for (int block = mFirstBlock[quad]; block >= 0; block = mNextBlock[block]) {
+            int start = block * BLOCK_SIZE;
+            int end = start + mBlockSize[block];
+            for (int slot = start; slot < end; slot++) {
+                if (item.equals(mItems[slot])) {
+                    // Move the last item of the block into the slot
+                    int last = end - 1;
+                    mCoordinates[slot * 2] = mCoordinates[last * 2];
+                    mCoordinates[slot * 2 + 1] = mCoordinates[last * 2 + 1];
+                    mItems[slot] = mItems[last];
+                    mItems[last] = null;
+                    if (--mBlockSize[block] == 0) {
+                        if (previous < 0) {
+                            mFirstBlock[quad] = mNextBlock[block];
+                        } else {
+                            mNextBlock[previous] = mNextBlock[block];
+                        }
+                        freeBlock(block);
+                    }
+                    return true;
+                }
+            }
+            previous = block;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all points from the quadTree
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(mItems, 0, mBlockCount * BLOCK_SIZE, null);
+        mQuadCount = 0;
+        mBlockCount = 0;
+        mFreeBlock = -1;
+        newQuad();
+    }
+
+    /**
+     * Search for all items within a given bounds.
+     */
+    @Override
+    public Collection<T> search(Bounds searchBounds) {
+        final List<T> results = new ArrayList<T>();
+        search(0, mBounds.minX, mBounds.maxX, mBounds.minY, mBounds.maxY, searchBounds,
+                results);
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void search(int quad, double minX, double maxX, double minY, double maxY,
+                        Bounds searchBounds, Collection<T> results) {
+        if (!searchBounds.intersects(minX, maxX, minY, maxY)) {
+            return;
+        }
+        int firstChild = mFirstChild[quad];
+        if (firstChild >= 0) {
+            double midX = (minX + maxX) / 2;
+            double midY = (minY + maxY) / 2;
+            search(firstChild, minX, midX, minY, midY, searchBounds, results);
+            search(firstChild + 1, midX, maxX, minY, midY, searchBounds, results);
+            search(firstChild + 2, minX, midX, midY, maxY, searchBounds, results);
+            search(firstChild + 3, midX, maxX, midY, maxY, searchBounds, results);
+            return;
+        }
+        boolean contained = searchBounds.minX <= minX && maxX <= searchBounds.maxX
+                && searchBounds.minY <= minY && maxY <= searchBounds.maxY;
+        for (int block = mFirstBlock[quad]; block >= 0; block = mNextBlock[block]) {
+            int start = block * BLOCK_SIZE;
+            int end = start + mBlockSize[block];
+            for (int slot = start; slot < end; slot++) {
+                if (contained || searchBounds.contains(mCoordinates[slot * 2],
+                        mCoordinates[slot * 2 + 1])) {
+                    results.add((T) mItems[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits all items within a given bounds.
+     */
+    @Override
+    public void search(Bounds searchBounds, PointQuadTree.Visitor<T> visitor) {
+        search(searchBounds, 0, visitor);
+    }
+
+    /**
+     * Visits all items within a given bounds of a world that wraps around horizontally: items
+     * within the bounds moved by one world width either way are visited too, once for each
+     * move that brings them within the bounds, with the offset of that move. This is done in a
+     * single traversal of the tree.
+     *
+     * @param worldWidth width of the world, or 0 not to wrap around
+     */
+    @Override
+    public void search(Bounds searchBounds, double worldWidth, PointQuadTree.Visitor<T> visitor) {
+        search(0, mBounds.minX, mBounds.maxX, mBounds.minY, mBounds.maxY, searchBounds.minX,
+                searchBounds.maxX, searchBounds.minY, searchBounds.maxY, worldWidth, visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void search(int quad, double minX, double maxX, double minY, double maxY,
+                        double searchMinX, double searchMaxX, double searchMinY,
+                        double searchMaxY, double worldWidth, PointQuadTree.Visitor<T> visitor) {
+        if (!(searchMinY < maxY && minY < searchMaxY)) {
+            return;
+        }
+        // Items at x + worldWidth are visited with an offset of -worldWidth, and vice versa
+        boolean direct = searchMinX < maxX && minX < searchMaxX;
+        boolean left = worldWidth > 0
+                && searchMinX + worldWidth < maxX && minX < searchMaxX + worldWidth;
+        boolean right = worldWidth > 0
+                && searchMinX - worldWidth < maxX && minX < searchMaxX - worldWidth;
+        if (!direct && !left && !right) {
+            return;
+        }
+
+        int firstChild = mFirstChild[quad];
+        if (firstChild >= 0) {
+            double midX = (minX + maxX) / 2;
+            double midY = (minY + maxY) / 2;
+            search(firstChild, minX, midX, minY, midY, searchMinX, searchMaxX, searchMinY,
+                    searchMaxY, worldWidth, visitor);
+            search(firstChild + 1, midX, maxX, minY, midY, searchMinX, searchMaxX, searchMinY,
+                    searchMaxY, worldWidth, visitor);
+            search(firstChild + 2, minX, midX, midY, maxY, searchMinX, searchMaxX, searchMinY,
+                    searchMaxY, worldWidth, visitor);
+            search(firstChild + 3, midX, maxX, midY, maxY, searchMinX, searchMaxX, searchMinY,
+                    searchMaxY, worldWidth, visitor);
+            return;
+        }
+        for (int block = mFirstBlock[quad]; block >= 0; block = mNextBlock[block]) {
+            int start = block * BLOCK_SIZE;
+            int end = start + mBlockSize[block];
+            for (int slot = start; slot < end; slot++) {
+                double x = mCoordinates[slot * 2];
+                double y = mCoordinates[slot * 2 + 1];
+                if (y < searchMinY || y > searchMaxY) {
+                    continue;
+                }
+                T item = (T) mItems[slot];
+                if (direct && searchMinX <= x && x <= searchMaxX) {
+                    visitor.visit(item, 0);
+                }
+                if (left && searchMinX <= x - worldWidth && x - worldWidth <= searchMaxX) {
+                    visitor.visit(item, -worldWidth);
+                }
+                if (right && searchMinX <= x + worldWidth && x + worldWidth <= searchMaxX) {
+                    visitor.visit(item, worldWidth);
+                }
+            }
+        }
+    }
+}
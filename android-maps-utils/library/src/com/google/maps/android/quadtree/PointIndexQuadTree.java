@@ -0,0 +1,442 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.quadtree;
+
+import com.google.maps.android.geometry.Bounds;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A quad tree over the indices of a PointSet, built once from all the points.
+ * <p/>
+ * Unlike {@link PointQuadTree}, it holds no object per point or per quad: the point indices are
+ * sorted so that each quad covers a contiguous range of them, and quads are stored in parallel
+ * arrays. Quad bounds are worked out while searching. Points can't be added or removed.
+ * This class is thread safe for searching.
+ * <p/>
+ * A built tree can be written to a snapshot and read back without building it again, which
+ * saves sorting the points on every start: see {@link #load(PointSet, File, long)}.
+ */
+public class PointIndexQuadTree {
+
+    /**
+     * Receives the indices of the points found by a search.
+     */
+    public interface Visitor {
+        void visit(int index);
+    }
+
+    /**
+     * Maximum number of points in a quad before splitting.
+     */
+    private final static int MAX_ELEMENTS = 50;
+
+    /**
+     * Maximum depth.
+     */
+    private final static int MAX_DEPTH = 40;
+
+    /**
+     * "PIQT", at the start of snapshots
+     */
+    private static final int SNAPSHOT_MAGIC = 0x50495154;
+
+    /**
+     * Version of the snapshot layout and of the way trees are built: snapshots of other
+     * versions are built again.
+     */
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final int SNAPSHOT_HEADER_SIZE = 64;
+
+    private final PointSet mPoints;
+
+    private final Bounds mBounds;
+
+    /**
+     * Point indices, such that each quad's points are contiguous.
+     */
+    private final int[] mOrder;
+
+    /**
+     * Range of mOrder covered by each quad: [mStart, mEnd).
+     */
+    private int[] mStart;
+
+    private int[] mEnd;
+
+    /**
+     * Index of each quad's first child, the other three following it; -1 for leaves.
+     * Children are ordered top left, top right, bottom left, bottom right.
+     */
+    private int[] mFirstChild;
+
+    private int mQuadCount;
+
+    /**
+     * Creates a tree of all the points, bounded by them.
+     */
+    public PointIndexQuadTree(PointSet points) {
+        this(points, 0, points.size());
+    }
+
+    /**
+     * Creates a tree of the points with indices in [start, end), bounded by them.
+     */
+    public PointIndexQuadTree(PointSet points, int start, int end) {
+        this(points, boundsOf(points, start, end), start, end);
+    }
+
+    /**
+     * Creates a tree of the points within the given bounds.
+     */
+    public PointIndexQuadTree(PointSet points, Bounds bounds) {
+        this(points, bounds, 0, points.size());
+    }
+
+    private PointIndexQuadTree(PointSet points, Bounds bounds, int start, int end) {
+        mPoints = points;
+        mBounds = bounds;
+        int count = 0;
+        int[] order = new int[end - start];
+        for (int i = start; i < end; i++) {
+            if (bounds.contains(points.getX(i), points.getY(i))) {
+                order[count++] = i;
+            }
+        }
+        mOrder = count == order.length ? order : Arrays.copyOf(order, count);
+
+        int capacity = Math.max(1, 2 * count / MAX_ELEMENTS + 1);
+        mStart = new int[capacity];
+        mEnd = new int[capacity];
+        mFirstChild = new int[capacity];
+        build(newQuad(0, count), bounds.minX, bounds.maxX, bounds.minY, bounds.maxY, 0);
+    }
+
+    private PointIndexQuadTree(PointSet points, Bounds bounds, int[] order, int[] start,
+                               int[] end, int[] firstChild) {
+        mPoints = points;
+        mBounds = bounds;
+        mOrder = order;
+        mStart = start;
+        mEnd = end;
+        mFirstChild = firstChild;
+        mQuadCount = start.length;
+    }
+
+    private static Bounds boundsOf(PointSet points, int start, int end) {
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = start; i < end; i++) {
+            double x = points.getX(i);
+            double y = points.getY(i);
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+        if (start == end) {
+            return new Bounds(0, 0, 0, 0);
+        }
+        return new Bounds(minX, maxX, minY, maxY);
+    }
+
+    /**
+     * @return the bounds of the tree
+     */
+    public Bounds getBounds() {
+        return mBounds;
+    }
+
+    /**
+     * @return number of points in the tree
+     */
+    public int size() {
+        return mOrder.length;
+    }
+
+    /**
+     * @return the points indexed by the tree
+     */
+    public PointSet getPoints() {
+        return mPoints;
+    }
+
+    /**
+     * Hashes the coordinates of points, to check that a snapshot was built from them.
+     * Takes one pass over the points, much less than building a tree.
+     *
+     * @return a 64 bit FNV-1a hash of the number of points and their coordinates
+     */
+    public static long hash(PointSet points) {
+        long hash = 0xcbf29ce484222325L;
+        int size = points.size();
+        hash = (hash ^ size) * 0x100000001b3L;
+        for (int i = 0; i < size; i++) {
+            hash = (hash ^ Double.doubleToLongBits(points.getX(i))) * 0x100000001b3L;
+            hash = (hash ^ Double.doubleToLongBits(points.getY(i))) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Writes a snapshot of the tree: its bounds, the quads and the order of the point indices.
+     * The points themselves are not written.
+     *
+     * @param out        output, which is flushed but not closed
+     * @param sourceHash value identifying the points, such as {@link #hash(PointSet)} or a
+     *                   version of the data, checked when reading the snapshot
+     * @throws IOException if the output could not be written
+     */
+    public void write(OutputStream out, long sourceHash) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(SNAPSHOT_MAGIC);
+        data.writeInt(SNAPSHOT_VERSION);
+        data.writeLong(sourceHash);
+        data.writeInt(mPoints.size());
+        data.writeInt(mOrder.length);
+        data.writeInt(mQuadCount);
+        data.writeInt(0);
+        data.writeDouble(mBounds.minX);
+        data.writeDouble(mBounds.maxX);
+        data.writeDouble(mBounds.minY);
+        data.writeDouble(mBounds.maxY);
+        for (int index : mOrder) {
+            data.writeInt(index);
+        }
+        for (int quad = 0; quad < mQuadCount; quad++) {
+            data.writeInt(mStart[quad]);
+        }
+        for (int quad = 0; quad < mQuadCount; quad++) {
+            data.writeInt(mEnd[quad]);
+        }
+        for (int quad = 0; quad < mQuadCount; quad++) {
+            data.writeInt(mFirstChild[quad]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(OutputStream, long)}, without building the tree.
+     *
+     * @param points     points the snapshot was written for
+     * @param buffer     buffer whose remaining bytes are the snapshot
+     * @param sourceHash value identifying the points, as given when writing
+     * @return the tree, or null if the snapshot is of another version or other points
+     * @throws IOException if the buffer does not hold a snapshot
+     */
+    public static PointIndexQuadTree read(PointSet points, ByteBuffer buffer, long sourceHash)
+            throws IOException {
+        buffer = buffer.slice();
+        if (buffer.remaining() < SNAPSHOT_HEADER_SIZE || buffer.getInt(0) != SNAPSHOT_MAGIC) {
+            throw new IOException("Not an index snapshot");
+        }
+        if (buffer.getInt(4) != SNAPSHOT_VERSION || buffer.getLong(8) != sourceHash
+                || buffer.getInt(16) != points.size()) {
+            return null;
+        }
+        int orderLength = buffer.getInt(20);
+        int quadCount = buffer.getInt(24);
+        if (orderLength < 0 || orderLength > points.size() || quadCount < 1
+                || buffer.remaining()
+                < SNAPSHOT_HEADER_SIZE + 4L * (orderLength + 3L * quadCount)) {
+            throw new IOException("Truncated index snapshot");
+        }
+        Bounds bounds = new Bounds(buffer.getDouble(32), buffer.getDouble(40),
+                buffer.getDouble(48), buffer.getDouble(56));
+
+        buffer.position(SNAPSHOT_HEADER_SIZE);
+        IntBuffer ints = buffer.slice().asIntBuffer();
+        int[] order = new int[orderLength];
+        int[] start = new int[quadCount];
+        int[] end = new int[quadCount];
+        int[] firstChild = new int[quadCount];
+        ints.get(order);
+        ints.get(start);
+        ints.get(end);
+        ints.get(firstChild);
+        for (int i = 0; i < orderLength; i++) {
+            if (order[i] < 0 || order[i] >= points.size()) {
+                throw new IOException("Corrupt index snapshot");
+            }
+        }
+        // Children must come after their parent, or a search could loop forever
+        for (int quad = 0; quad < quadCount; quad++) {
+            if (start[quad] < 0 || start[quad] > end[quad] || end[quad] > orderLength
+                    || (firstChild[quad] != -1
+                    && (firstChild[quad] <= quad || firstChild[quad] > quadCount - 4))) {
+                throw new IOException("Corrupt index snapshot");
+            }
+        }
+        return new PointIndexQuadTree(points, bounds, order, start, end, firstChild);
+    }
+
+    /**
+     * Reads the tree of all the points from a snapshot file, or builds it and writes the
+     * snapshot if the file is missing, unreadable, or of another version or other points.
+     *
+     * @param points     points to index
+     * @param file       snapshot file, which is replaced when the tree is built
+     * @param sourceHash value identifying the points, such as {@link #hash(PointSet)} or a
+     *                   version of the data
+     * @return the tree
+     * @throws IOException if the tree was built but its snapshot could not be written
+     */
+    public static PointIndexQuadTree load(PointSet points, File file, long sourceHash)
+            throws IOException {
+        if (file.exists()) {
+            try {
+                RandomAccessFile input = new RandomAccessFile(file, "r");
+                try {
+                    FileChannel channel = input.getChannel();
+                    PointIndexQuadTree tree = read(points,
+                            channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                            sourceHash);
+                    if (tree != null) {
+                        return tree;
+                    }
+                } finally {
+                    input.close();
+                }
+            } catch (IOException e) {
+                // Built again below
+            }
+        }
+
+        PointIndexQuadTree tree = new PointIndexQuadTree(points);
+        // Written aside first, so that an interrupted write is not taken for a snapshot
+        File partial = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(partial);
+        try {
+            tree.write(out, sourceHash);
+        } finally {
+            out.close();
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Could not write " + file);
+        }
+        return tree;
+    }
+
+    private int newQuad(int start, int end) {
+        if (mQuadCount == mStart.length) {
+            int capacity = mQuadCount * 2;
+            mStart = Arrays.copyOf(mStart, capacity);
+            mEnd = Arrays.copyOf(mEnd, capacity);
+            mFirstChild = Arrays.copyOf(mFirstChild, capacity);
+        }
+        mStart[mQuadCount] = start;
+        mEnd[mQuadCount] = end;
+        mFirstChild[mQuadCount] = -1;
+        return mQuadCount++;
+    }
+
+    private void build(int quad, double minX, double maxX, double minY, double maxY, int depth) {
+        int start = mStart[quad];
+        int end = mEnd[quad];
+        if (end - start <= MAX_ELEMENTS || depth >= MAX_DEPTH) {
+            return;
+        }
+        double midX = (minX + maxX) / 2;
+        double midY = (minY + maxY) / 2;
+        // Same split as PointQuadTree: top if y < midY, left if x < midX
+        int bottom = partition(start, end, midY, false);
+        int topRight = partition(start, bottom, midX, true);
+        int bottomRight = partition(bottom, end, midX, true);
+
+        int firstChild = newQuad(start, topRight);
+        newQuad(topRight, bottom);
+        newQuad(bottom, bottomRight);
+        newQuad(bottomRight, end);
+        mFirstChild[quad] = firstChild;
+
+        build(firstChild, minX, midX, minY, midY, depth + 1);
+        build(firstChild + 1, midX, maxX, minY, midY, depth + 1);
+        build(firstChild + 2, minX, midX, midY, maxY, depth + 1);
+        build(firstChild + 3, midX, maxX, midY, maxY, depth + 1);
+    }
+
+    /**
+     * Moves the points of a range below a split value before the others.
+     *
+     * @return the index of the first point not below the split value
+     */
+    private int partition(int start, int end, double split, boolean byX) {
+        int i = start;
+        int j = end - 1;
+        while (i <= j) {
+            double value = byX ? mPoints.getX(mOrder[i]) : mPoints.getY(mOrder[i]);
+            if (value < split) {
+                i++;
+            } else {
+                int swap = mOrder[i];
+                mOrder[i] = mOrder[j];
+                mOrder[j] = swap;
+                j--;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Visits every point within a given bounds, without allocating.
+     */
+    public void search(Bounds searchBounds, Visitor visitor) {
+        if (mOrder.length == 0) {
+            return;
+        }
+        search(0, mBounds.minX, mBounds.maxX, mBounds.minY, mBounds.maxY, searchBounds, visitor);
+    }
+
+    private void search(int quad, double minX, double maxX, double minY, double maxY,
+                        Bounds searchBounds, Visitor visitor) {
+        if (!searchBounds.intersects(minX, maxX, minY, maxY)) {
+            return;
+        }
+        int firstChild = mFirstChild[quad];
+        if (firstChild >= 0) {
+            double midX = (minX + maxX) / 2;
+            double midY = (minY + maxY) / 2;
+            search(firstChild, minX, midX, minY, midY, searchBounds, visitor);
+            search(firstChild + 1, midX, maxX, minY, midY, searchBounds, visitor);
+            search(firstChild + 2, minX, midX, midY, maxY, searchBounds, visitor);
+            search(firstChild + 3, midX, maxX, midY, maxY, searchBounds, visitor);
+            return;
+        }
+        boolean contained = searchBounds.minX <= minX && maxX <= searchBounds.maxX
+                && searchBounds.minY <= minY && maxY <= searchBounds.maxY;
+        for (int i = mStart[quad]; i < mEnd[quad]; i++) {
+            int index = mOrder[i];
+            if (contained || searchBounds.contains(mPoints.getX(index), mPoints.getY(index))) {
+                visitor.visit(index);
+            }
+        }
+    }
+}
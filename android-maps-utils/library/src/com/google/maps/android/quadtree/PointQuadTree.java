@@ -28,10 +28,23 @@ import java.util.List;
  * See http://en.wikipedia.org/wiki/Quadtree for details on the data structure.
  * This class is not thread safe.
  */
-public class PointQuadTree<T extends PointQuadTree.Item> {
+public class PointQuadTree<T extends PointQuadTree.Item> implements PointTree<T> {
     public interface Item {
         public Point getPoint();
     }
+
+    /**
+     * Receives the items found by a search, without collecting them.
+     */
+    public interface Visitor<T> {
+        /**
+         * @param item    item found
+         * @param xOffset added to the x coordinate of the item to bring it within the search
+         *                bounds, when the search wraps around
+         */
+        public void visit(T item, double xOffset);
+    }
+
     /**
      * The bounds of this quad.
      */
@@ -90,6 +103,7 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
     /**
      * Insert an item.
      */
+    @Override
     public void add(T item) {
         Point point = item.getPoint();
         if (this.mBounds.contains(point.x, point.y)) {
@@ -147,6 +161,7 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
      *
      * @return whether the item was removed.
      */
+    @Override
     public boolean remove(T item) {
         Point point = item.getPoint();
         if (this.mBounds.contains(point.x, point.y)) {
@@ -184,6 +199,7 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
     /**
      * Removes all points from the quadTree
      */
+    @Override
     public void clear() {
         mChildren = null;
         if (mItems != null) {
@@ -194,12 +210,78 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
     /**
      * Search for all items within a given bounds.
      */
+    @Override
     public Collection<T> search(Bounds searchBounds) {
         final List<T> results = new ArrayList<T>();
         search(searchBounds, results);
         return results;
     }
 
+    /**
+     * Visits all items within a given bounds.
+     */
+    @Override
+    public void search(Bounds searchBounds, Visitor<T> visitor) {
+        search(searchBounds, 0, visitor);
+    }
+
+    /**
+     * Visits all items within a given bounds of a world that wraps around horizontally: items
+     * within the bounds moved by one world width either way are visited too, once for each
+     * move that brings them within the bounds, with the offset of that move. This is done in a
+     * single traversal of the tree.
+     *
+     * @param worldWidth width of the world, or 0 not to wrap around
+     */
+    @Override
+    public void search(Bounds searchBounds, double worldWidth, Visitor<T> visitor) {
+        search(searchBounds.minX, searchBounds.maxX, searchBounds.minY, searchBounds.maxY,
+                worldWidth, visitor);
+    }
+
+    private void search(double minX, double maxX, double minY, double maxY, double worldWidth,
+                        Visitor<T> visitor) {
+        if (!(minY < mBounds.maxY && mBounds.minY < maxY)) {
+            return;
+        }
+        // Items at x + worldWidth are visited with an offset of -worldWidth, and vice versa
+        boolean direct = intersectsX(minX, maxX);
+        boolean left = worldWidth > 0 && intersectsX(minX + worldWidth, maxX + worldWidth);
+        boolean right = worldWidth > 0 && intersectsX(minX - worldWidth, maxX - worldWidth);
+        if (!direct && !left && !right) {
+            return;
+        }
+
+        if (this.mChildren != null) {
+            for (PointQuadTree<T> quad : mChildren) {
+                quad.search(minX, maxX, minY, maxY, worldWidth, visitor);
+            }
+        } else if (mItems != null) {
+            for (T item : mItems) {
+                Point point = item.getPoint();
+                if (point.y < minY || point.y > maxY) {
+                    continue;
+                }
+                if (direct && minX <= point.x && point.x <= maxX) {
+                    visitor.visit(item, 0);
+                }
+                if (left && minX <= point.x - worldWidth && point.x - worldWidth <= maxX) {
+                    visitor.visit(item, -worldWidth);
+                }
+                if (right && minX <= point.x + worldWidth && point.x + worldWidth <= maxX) {
+                    visitor.visit(item, worldWidth);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the x range of this quad intersects the given one
+     */
+    private boolean intersectsX(double minX, double maxX) {
+        return minX < mBounds.maxX && mBounds.minX < maxX;
+    }
+
     private void search(Bounds searchBounds, Collection<T> results) {
         if (!mBounds.intersects(searchBounds)) {
             return;
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.quadtree;
+
+/**
+ * A set of points addressed by index, such as parallel coordinate arrays, so that points can be
+ * indexed without an object per point.
+ */
+public interface PointSet {
+    /**
+     * @return number of points
+     */
+    int size();
+
+    /**
+     * @param index index of a point, in [0, size())
+     * @return x coordinate of the point
+     */
+    double getX(int index);
+
+    /**
+     * @param index index of a point, in [0, size())
+     * @return y coordinate of the point
+     */
+    double getY(int index);
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.quadtree;
+
+import com.google.maps.android.geometry.Bounds;
+
+import java.util.Collection;
+
+/**
+ * A tree of items with a Point geometry, which items can be added to and removed from, and
+ * which is searched by bounds. Implemented by {@link PointQuadTree} and by
+ * {@link FlatPointQuadTree}, so that code can use either.
+ */
+public interface PointTree<T extends PointQuadTree.Item> {
+
+    /**
+     * Insert an item. Items outside the bounds of the tree are ignored.
+     */
+    void add(T item);
+
+    /**
+     * Remove the given item from the set.
+     *
+     * @return whether the item was removed.
+     */
+    boolean remove(T item);
+
+    /**
+     * Removes all points from the tree.
+     */
+    void clear();
+
+    /**
+     * Search for all items within a given bounds.
+     */
+    Collection<T> search(Bounds searchBounds);
+
+    /**
+     * Visits all items within a given bounds.
+     */
+    void search(Bounds searchBounds, PointQuadTree.Visitor<T> visitor);
+
+    /**
+     * Visits all items within a given bounds of a world that wraps around horizontally: items
+     * within the bounds moved by one world width either way are visited too, once for each
+     * move that brings them within the bounds, with the offset of that move.
+     *
+     * @param worldWidth width of the world, or 0 not to wrap around
+     */
+    void search(Bounds searchBounds, double worldWidth, PointQuadTree.Visitor<T> visitor);
+}
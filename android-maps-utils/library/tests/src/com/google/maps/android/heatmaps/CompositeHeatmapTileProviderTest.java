@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import android.graphics.Color;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.TileProvider;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for blending heatmap layers into one tile
+ */
+public class CompositeHeatmapTileProviderTest extends TestCase {
+
+    private static final Gradient RED = new Gradient(
+            new int[]{Color.argb(0, 255, 0, 0), Color.rgb(255, 0, 0)}, new float[]{0.2f, 1f});
+
+    private List<WeightedLatLng> mFirst;
+
+    private List<WeightedLatLng> mSecond;
+
+    public void setUp() {
+        Random random = new Random(11);
+        mFirst = new ArrayList<WeightedLatLng>();
+        mSecond = new ArrayList<WeightedLatLng>();
+        for (int i = 0; i < 300; i++) {
+            mFirst.add(new WeightedLatLng(new LatLng(59.9 + random.nextDouble() * 0.1,
+                    30.3 + random.nextDouble() * 0.1), 1 + random.nextInt(3)));
+            mSecond.add(new WeightedLatLng(new LatLng(59.92 + random.nextDouble() * 0.1,
+                    30.32 + random.nextDouble() * 0.1)));
+        }
+    }
+
+    private byte[] tile(TileProvider provider, int zoom) {
+        WeightedLatLng l = mFirst.get(0);
+        int x = (int) (l.getPoint().x * (1 << zoom));
+        int y = (int) (l.getPoint().y * (1 << zoom));
+        return provider.getTile(x, y, zoom).data;
+    }
+
+    public void testSingleLayerMatchesHeatmap() {
+        ColorCapture heatmapColors = new ColorCapture();
+        ColorCapture compositeColors = new ColorCapture();
+        HeatmapTileProvider heatmap = new HeatmapTileProvider.Builder()
+                .weightedData(mFirst)
+                .tileEncoder(heatmapColors)
+                .build();
+        CompositeHeatmapTileProvider composite = new CompositeHeatmapTileProvider.Builder()
+                .layer(mFirst, HeatmapTileProvider.DEFAULT_GRADIENT, 1)
+                .tileEncoder(compositeColors)
+                .build();
+        for (int zoom : new int[]{8, 13}) {
+            compositeColors.colors = null;
+            tile(heatmap, zoom);
+            tile(composite, zoom);
+            assertNotNull(compositeColors.colors);
+            assertTrue(Arrays.equals(heatmapColors.colors, compositeColors.colors));
+        }
+    }
+
+    public void testKernelMatchesHeatmap() {
+        ColorCapture heatmapColors = new ColorCapture();
+        ColorCapture compositeColors = new ColorCapture();
+        HeatmapTileProvider heatmap = new HeatmapTileProvider.Builder()
+                .weightedData(mFirst)
+                .kernel(new EpanechnikovKernel())
+                .tileEncoder(heatmapColors)
+                .build();
+        CompositeHeatmapTileProvider composite = new CompositeHeatmapTileProvider.Builder()
+                .layer(mFirst, HeatmapTileProvider.DEFAULT_GRADIENT, 1)
+                .kernel(new EpanechnikovKernel())
+                .tileEncoder(compositeColors)
+                .build();
+        tile(heatmap, 13);
+        tile(composite, 13);
+        assertTrue(Arrays.equals(heatmapColors.colors, compositeColors.colors));
+    }
+
+    /**
+     * Points near both edges of the world spread into the padding of the opposite edge at
+     * zoom 0, where the padded tile crosses both.
+     */
+    public void testWrapsAroundBothEdgesAtZoom0() {
+        List<WeightedLatLng> edges = new ArrayList<WeightedLatLng>();
+        for (int i = 0; i < 20; i++) {
+            edges.add(new WeightedLatLng(new LatLng(-30 + i, -179.5 + i * 0.01)));
+            edges.add(new WeightedLatLng(new LatLng(10 + i, 179.5 - i * 0.01)));
+        }
+        ColorCapture heatmapColors = new ColorCapture();
+        ColorCapture compositeColors = new ColorCapture();
+        HeatmapTileProvider heatmap = new HeatmapTileProvider.Builder()
+                .weightedData(edges)
+                .tileEncoder(heatmapColors)
+                .build();
+        CompositeHeatmapTileProvider composite = new CompositeHeatmapTileProvider.Builder()
+                .layer(edges, HeatmapTileProvider.DEFAULT_GRADIENT, 1)
+                .tileEncoder(compositeColors)
+                .build();
+        heatmap.getTile(0, 0, 0);
+        composite.getTile(0, 0, 0);
+        assertTrue(Arrays.equals(heatmapColors.colors, compositeColors.colors));
+    }
+
+    /**
+     * Keeps the colors of the last tile encoded, with every transparent color the same
+     */
+    private static class ColorCapture implements TileEncoder {
+        int[] colors;
+
+        @Override
+        public byte[] encode(int[] pixels, int dim, int[] palette) {
+            colors = new int[dim * dim];
+            for (int i = 0; i < colors.length; i++) {
+                int color = palette != null ? palette[pixels[i]] : pixels[i];
+                colors[i] = Color.alpha(color) == 0 ? Color.TRANSPARENT : color;
+            }
+            return new byte[0];
+        }
+    }
+
+    public void testZeroWeightHidesLayer() {
+        CompositeHeatmapTileProvider first = new CompositeHeatmapTileProvider.Builder()
+                .layer(mFirst, HeatmapTileProvider.DEFAULT_GRADIENT, 1)
+                .tileEncoder(new PngTileEncoder())
+                .build();
+        CompositeHeatmapTileProvider both = new CompositeHeatmapTileProvider.Builder()
+                .layer(mFirst, HeatmapTileProvider.DEFAULT_GRADIENT, 1)
+                .layer(mSecond, RED, 1)
+                .tileEncoder(new PngTileEncoder())
+                .build();
+        assertEquals(2, both.getLayerCount());
+        assertFalse(Arrays.equals(tile(first, 13), tile(both, 13)));
+
+        both.setLayerWeight(1, 0);
+        assertTrue(Arrays.equals(tile(first, 13), tile(both, 13)));
+    }
+
+    public void testBlend() {
+        int dim = 2;
+        float[] blend = new float[CompositeHeatmapTileProvider.BLEND_CHANNELS * dim * dim];
+        float[] grid = {0, 1, 1, 0};
+        int[] red = {Color.argb(128, 255, 0, 0)};
+        int[] blue = {Color.argb(128, 0, 0, 255)};
+        CompositeHeatmapTileProvider.addLayer(grid, dim, red, 1, 1, 0, 1, 0, 0, blend);
+        CompositeHeatmapTileProvider.addLayer(grid, dim, blue, 1, 0.5, 0, 1, 0, 1, blend);
+        int[] pixels = new int[dim * dim];
+        CompositeHeatmapTileProvider.resolveBlend(blend, dim, pixels);
+
+        assertEquals(Color.TRANSPARENT, pixels[0]);
+        // Red at twice the weight of blue, covering 1 - (1 - 0.5) * (1 - 0.25)
+        assertEquals(Color.argb(160, 170, 0, 85), pixels[1]);
+        // Blue only
+        assertEquals(Color.argb(64, 0, 0, 255), pixels[2]);
+    }
+}
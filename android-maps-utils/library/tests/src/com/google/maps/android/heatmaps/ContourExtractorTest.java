@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.projection.SphericalMercatorProjection;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for contours of heatmap density
+ */
+public class ContourExtractorTest extends TestCase {
+
+    private static final SphericalMercatorProjection PROJECTION =
+            new SphericalMercatorProjection(HeatmapTileProvider.WORLD_WIDTH);
+
+    private static final int ZOOM = 12;
+
+    /**
+     * @return the location of a pixel of the zoom level, from the top left corner of the world
+     */
+    private static LatLng pixel(double x, double y) {
+        double worldDim = (double) HeatmapTileProvider.TILE_DIM * (1 << ZOOM);
+        return PROJECTION.toLatLng(new Point(x / worldDim, y / worldDim));
+    }
+
+    private static HeatmapTileProvider provider(LatLng... points) {
+        return new HeatmapTileProvider.Builder()
+                .data(Arrays.asList(points))
+                .build();
+    }
+
+    public void testOnePoint() {
+        // Well within tile (1000, 1000)
+        LatLng center = pixel(1000.5 * 512, 1000.5 * 512);
+        ContourExtractor extractor = new ContourExtractor(provider(center), 0.5);
+        List<List<LatLng>> rings = extract(extractor, 999, 999, 1001, 1001).get(0);
+        assertEquals(1, rings.size());
+        assertRing(rings.get(0), true);
+        for (LatLng vertex : rings.get(0)) {
+            double distance = pixelDistance(center, vertex);
+            assertTrue(distance > 2 && distance < HeatmapTileProvider.DEFAULT_RADIUS);
+        }
+    }
+
+    public void testStitchedAcrossSeams() {
+        // On the corner of four tiles
+        LatLng corner = pixel(1000 * 512, 1000 * 512);
+        LatLng middle = pixel(1000.5 * 512, 1000.5 * 512);
+        List<LatLng> stitched = extract(new ContourExtractor(provider(corner), 0.5),
+                999, 999, 1000, 1000).get(0).get(0);
+        List<LatLng> whole = extract(new ContourExtractor(provider(middle), 0.5),
+                1000, 1000, 1000, 1000).get(0).get(0);
+        assertRing(stitched, true);
+        // The same blob, shifted by half a pixel
+        assertEquals(whole.size(), stitched.size(), 4);
+    }
+
+    public void testClosedAtRegionEdge() {
+        // Cut by the left edge of the region
+        LatLng edge = pixel(1000 * 512 + 3, 1000.5 * 512);
+        List<List<LatLng>> rings = extract(new ContourExtractor(provider(edge), 0.5),
+                1000, 1000, 1000, 1000).get(0);
+        assertEquals(1, rings.size());
+        assertRing(rings.get(0), true);
+    }
+
+    public void testNestedThresholds() {
+        LatLng a = pixel(1000.5 * 512, 1000.5 * 512);
+        LatLng b = pixel(1000.5 * 512 + 25, 1000.5 * 512);
+        LatLng c = pixel(1000.5 * 512 - 200, 1000.5 * 512 + 200);
+        HeatmapTileProvider provider = provider(a, a, b, b, c);
+        final List<List<List<LatLng>>> streamed = new ArrayList<List<List<LatLng>>>();
+        for (int i = 0; i < 3; i++) {
+            streamed.add(new ArrayList<List<LatLng>>());
+        }
+        new ContourExtractor(provider, 0.1, 0.4, 0.8).extract(
+                new LatLngBounds(pixel(1000 * 512, 1001 * 512 - 1),
+                        pixel(1001 * 512 - 1, 1000 * 512)), ZOOM,
+                new ContourExtractor.Listener() {
+                    @Override
+                    public void onContour(int level, List<LatLng> ring) {
+                        streamed.get(level).add(ring);
+                    }
+                });
+        // The pair only merges at the lowest threshold, and the single point fades out at the
+        // highest
+        assertEquals(2, streamed.get(0).size());
+        assertEquals(3, streamed.get(1).size());
+        assertEquals(2, streamed.get(2).size());
+        for (List<List<LatLng>> level : streamed) {
+            for (List<LatLng> ring : level) {
+                assertRing(ring, true);
+            }
+        }
+    }
+
+    public void testHole() {
+        // A ring of points leaves a hole in the middle
+        List<LatLng> points = new ArrayList<LatLng>();
+        for (int i = 0; i < 120; i++) {
+            double angle = Math.toRadians(i * 3);
+            points.add(pixel(1000.5 * 512 + 100 * Math.cos(angle),
+                    1000.5 * 512 + 100 * Math.sin(angle)));
+        }
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder().data(points).build();
+        List<List<LatLng>> rings = extract(new ContourExtractor(provider, 0.3),
+                1000, 1000, 1000, 1000).get(0);
+        assertEquals(2, rings.size());
+        // One outer ring, one hole
+        assertTrue(signedArea(rings.get(0)) * signedArea(rings.get(1)) < 0);
+    }
+
+    public void testInvalidThreshold() {
+        try {
+            new ContourExtractor(provider(pixel(0, 0)), 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * @return the contours of each threshold within a range of tiles
+     */
+    private static List<List<List<LatLng>>> extract(ContourExtractor extractor, int minX,
+                                                    int minY, int maxX, int maxY) {
+        final List<List<List<LatLng>>> contours = new ArrayList<List<List<LatLng>>>();
+        extractor.extract(ZOOM, minX, minY, maxX, maxY, new ContourExtractor.Listener() {
+            @Override
+            public void onContour(int level, List<LatLng> ring) {
+                while (contours.size() <= level) {
+                    contours.add(new ArrayList<List<LatLng>>());
+                }
+                contours.get(level).add(ring);
+            }
+        });
+        return contours;
+    }
+
+    /**
+     * Checks that consecutive vertices of a ring are within a pixel's diagonal of each other,
+     * including the last and the first.
+     */
+    private static void assertRing(List<LatLng> ring, boolean counterClockwise) {
+        assertTrue(ring.size() > 3);
+        for (int i = 0; i < ring.size(); i++) {
+            LatLng next = ring.get((i + 1) % ring.size());
+            assertTrue(pixelDistance(ring.get(i), next) <= Math.sqrt(2) + 1e-6);
+        }
+        assertEquals(counterClockwise, signedArea(ring) > 0);
+    }
+
+    private static double pixelDistance(LatLng a, LatLng b) {
+        Point pointA = PROJECTION.toPoint(a);
+        Point pointB = PROJECTION.toPoint(b);
+        double worldDim = (double) HeatmapTileProvider.TILE_DIM * (1 << ZOOM);
+        return Math.hypot(pointA.x - pointB.x, pointA.y - pointB.y) * worldDim;
+    }
+
+    /**
+     * @return the area of a ring in degrees, positive when counter-clockwise
+     */
+    private static double signedArea(List<LatLng> ring) {
+        double area = 0;
+        for (int i = 0; i < ring.size(); i++) {
+            LatLng a = ring.get(i);
+            LatLng b = ring.get((i + 1) % ring.size());
+            area += a.longitude * b.latitude - b.longitude * a.latitude;
+        }
+        return area / 2;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Tests for the convolution engines, against HeatmapTileProvider.convolve
+ */
+public class ConvolverTest extends TestCase {
+
+    private static final int DIM = 64;
+
+    private static final int RADIUS = 20;
+
+    private double[][] mGrid;
+
+    private double[] mKernel;
+
+    private double[][] mExpected;
+
+    private double mExpectedMax;
+
+    public void setUp() {
+        int paddedDim = DIM + 2 * RADIUS;
+        mGrid = new double[paddedDim][paddedDim];
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            mGrid[random.nextInt(paddedDim)][random.nextInt(paddedDim)] += 1 + random.nextDouble();
+        }
+        mKernel = HeatmapTileProvider.generateKernel(RADIUS, RADIUS / 3.0);
+        mExpected = HeatmapTileProvider.convolve(mGrid, mKernel);
+        mExpectedMax = 0;
+        for (double[] column : mExpected) {
+            for (double val : column) {
+                mExpectedMax = Math.max(mExpectedMax, val);
+            }
+        }
+    }
+
+    private float[] convolve(Convolver convolver) {
+        int paddedDim = mGrid.length;
+        float[] flat = new float[paddedDim * paddedDim];
+        for (int x = 0; x < paddedDim; x++) {
+            for (int y = 0; y < paddedDim; y++) {
+                flat[y * paddedDim + x] = (float) mGrid[x][y];
+            }
+        }
+        float[] output = new float[DIM * DIM];
+        convolver.convolve(flat, paddedDim, mKernel, output);
+        return output;
+    }
+
+    private void assertClose(float[] actual, double tolerance) {
+        for (int x = 0; x < DIM; x++) {
+            for (int y = 0; y < DIM; y++) {
+                assertEquals(mExpected[x][y], actual[y * DIM + x], tolerance);
+            }
+        }
+    }
+
+    public void testExactConvolver() {
+        assertClose(convolve(new ExactConvolver()), mExpectedMax * 1e-5);
+    }
+
+    public void testExactConvolverSmallKernel() {
+        double[][] grid = new double[5][5];
+        grid[2][2] = 2;
+        grid[2][1] = 1;
+        grid[1][2] = 1;
+        grid[2][3] = 1;
+        grid[3][2] = 1;
+        float[] flat = new float[25];
+        for (int x = 0; x < 5; x++) {
+            for (int y = 0; y < 5; y++) {
+                flat[y * 5 + x] = (float) grid[x][y];
+            }
+        }
+        float[] output = new float[9];
+        new ExactConvolver().convolve(flat, 5, new double[]{0.5, 1, 0.5}, output);
+        float[] expected = {1.5f, 2.5f, 1.5f, 2.5f, 4.0f, 2.5f, 1.5f, 2.5f, 1.5f};
+        for (int i = 0; i < 9; i++) {
+            assertEquals(expected[i], output[i], 1e-6f);
+        }
+    }
+
+    public void testBoxBlurConvolver() {
+        // Box blur approximates the Gaussian: allow a few percent of the peak value
+        assertClose(convolve(new BoxBlurConvolver()), mExpectedMax * 0.05);
+    }
+
+    public void testBoxBlurConvolverPreservesWeight() {
+        double expectedSum = 0;
+        for (double[] column : mExpected) {
+            for (double val : column) {
+                expectedSum += val;
+            }
+        }
+        double sum = 0;
+        for (float val : convolve(new BoxBlurConvolver())) {
+            sum += val;
+        }
+        assertEquals(expectedSum, sum, expectedSum * 0.02);
+    }
+
+    public void testBoxRadiiWithinKernelRadius() {
+        for (int radius = 1; radius <= 50; radius++) {
+            double sd = radius / 3.0;
+            int total = 0;
+            for (int boxRadius : BoxBlurConvolver.boxRadii(sd * sd, radius)) {
+                assertTrue(boxRadius >= 0);
+                total += boxRadius;
+            }
+            assertTrue(total <= radius);
+        }
+    }
+
+    /**
+     * Stamps a few cells, including two in the same cell and some in the padding
+     */
+    private void assertStampMatches(Convolver convolver) {
+        int paddedDim = DIM + 2 * RADIUS;
+        int[][] cells = {{0, 0}, {5, 70}, {40, 40}, {40, 40}, {paddedDim - 1, 30}};
+        float[] grid = new float[paddedDim * paddedDim];
+        GridExtent extent = new GridExtent(cells.length);
+        for (int[] cell : cells) {
+            grid[cell[1] * paddedDim + cell[0]] += 1.5f;
+            extent.include(cell[0], cell[1]);
+        }
+        float[] expected = new float[DIM * DIM];
+        convolver.convolve(grid.clone(), paddedDim, mKernel, expected);
+
+        float[] output = new float[DIM * DIM];
+        java.util.Arrays.fill(output, Float.NaN);
+        new KernelFootprint(convolver, mKernel).stamp(grid, paddedDim, extent, output, DIM);
+        for (int i = 0; i < output.length; i++) {
+            // Outside of the extent, output is left as is
+            if (!Float.isNaN(output[i]) || expected[i] != 0) {
+                assertEquals(expected[i], output[i], 1e-6);
+            }
+        }
+    }
+
+    public void testStampExact() {
+        assertStampMatches(new ExactConvolver());
+    }
+
+    public void testStampBoxBlur() {
+        assertStampMatches(new BoxBlurConvolver());
+    }
+}
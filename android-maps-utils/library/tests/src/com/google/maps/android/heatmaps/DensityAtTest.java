@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.SphericalUtil;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.projection.SphericalMercatorProjection;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for evaluating the intensity of heatmaps at positions without rendering tiles
+ */
+public class DensityAtTest extends TestCase {
+
+    private static final SphericalMercatorProjection PROJECTION =
+            new SphericalMercatorProjection(HeatmapTileProvider.WORLD_WIDTH);
+
+    private List<WeightedLatLng> mData;
+
+    public void setUp() {
+        mData = new ArrayList<WeightedLatLng>();
+        Random random = new Random(13);
+        for (int i = 0; i < 500; i++) {
+            mData.add(new WeightedLatLng(new LatLng(51.45 + random.nextDouble() * 0.1,
+                    -0.2 + random.nextDouble() * 0.1), 1 + random.nextInt(3)));
+        }
+    }
+
+    /**
+     * @return the center of a pixel of a tile
+     */
+    private static LatLng pixel(int tileX, int tileY, int zoom, int x, int y) {
+        double worldDim = (double) HeatmapTileProvider.TILE_DIM * (1 << zoom);
+        return PROJECTION.toLatLng(new Point(
+                (tileX * HeatmapTileProvider.TILE_DIM + x + 0.5) / worldDim,
+                (tileY * HeatmapTileProvider.TILE_DIM + y + 0.5) / worldDim));
+    }
+
+    public void testSameAsRendered() {
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .build();
+        HeatmapTileProvider store = new HeatmapTileProvider.Builder()
+                .pointStore(ColumnarPointStore.fromWeightedLatLngs(mData))
+                .build();
+        // From the pyramid and from the points
+        for (int zoom : new int[]{9, 13}) {
+            Point point = mData.get(0).getPoint();
+            int tileX = (int) (point.x * (1 << zoom));
+            int tileY = (int) (point.y * (1 << zoom));
+            float[] rendered = new float[HeatmapTileProvider.TILE_DIM
+                    * HeatmapTileProvider.TILE_DIM];
+            provider.getRelativeIntensity(tileX, tileY, zoom, rendered);
+            double max = provider.getMaxIntensity(zoom);
+            for (int i = 0; i < 50; i++) {
+                int x = (i * 97) % HeatmapTileProvider.TILE_DIM;
+                int y = (i * 211) % HeatmapTileProvider.TILE_DIM;
+                LatLng position = pixel(tileX, tileY, zoom, x, y);
+                double expected = rendered[y * HeatmapTileProvider.TILE_DIM + x] * max;
+                assertEquals(expected, provider.densityAt(position, zoom), 1e-4 * max);
+                assertEquals(expected, store.densityAt(position, zoom), 1e-4 * max);
+            }
+        }
+    }
+
+    public void testBatch() {
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .build();
+        List<LatLng> route = new ArrayList<LatLng>();
+        for (int i = 0; i < 200; i++) {
+            route.add(new LatLng(51.45 + i * 0.0005, -0.2 + (i % 50) * 0.002));
+        }
+        Collections.shuffle(route, new Random(1));
+        double[] densities = provider.densityAt(route, 14);
+        assertEquals(route.size(), densities.length);
+        for (int i = 0; i < route.size(); i++) {
+            assertEquals(provider.densityAt(route.get(i), 14), densities[i], 1e-9);
+        }
+
+        // Along a parallel, where distances are measured at the same latitude
+        List<LatLng> parallel = new ArrayList<LatLng>();
+        for (int i = 0; i < 100; i++) {
+            parallel.add(new LatLng(51.5, -0.2 + i * 0.001));
+        }
+        double[] radiusDensities = provider.densityAtRadius(parallel, 300);
+        for (int i = 0; i < parallel.size(); i++) {
+            assertEquals(provider.densityAtRadius(parallel.get(i), 300), radiusDensities[i],
+                    1e-9);
+        }
+    }
+
+    public void testRadiusInMeters() {
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .build();
+        // The default radius of zoom level 14 on the ground
+        int zoom = 14;
+        LatLng center = new LatLng(51.5, -0.15);
+        double pixelDegrees = 360.0 / (HeatmapTileProvider.TILE_DIM * (double) (1 << zoom));
+        double meters = HeatmapTileProvider.DEFAULT_RADIUS * SphericalUtil.computeDistanceBetween(
+                new LatLng(center.latitude, 0), new LatLng(center.latitude, pixelDegrees));
+        double max = provider.getMaxIntensity(zoom);
+        for (int i = 0; i < 20; i++) {
+            LatLng position = new LatLng(51.46 + i * 0.004, -0.19 + i * 0.004);
+            // Cells of about a pixel, not aligned on pixels
+            assertEquals(provider.densityAt(position, zoom),
+                    provider.densityAtRadius(position, meters), 0.15 * max);
+        }
+    }
+
+    public void testUpdatedWithData() {
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .build();
+        LatLng position = new LatLng(51.5, -0.15);
+        double before = provider.densityAt(position, 12);
+        assertTrue(before > 0);
+        List<WeightedLatLng> added = Collections.singletonList(new WeightedLatLng(position, 5));
+        provider.addWeightedData(added);
+        assertEquals(before + 5, provider.densityAt(position, 12), 1e-6);
+        provider.removeWeightedData(added);
+        assertEquals(before, provider.densityAt(position, 12), 1e-6);
+
+        // Nothing around
+        assertEquals(0.0, provider.densityAt(new LatLng(10, 10), 12));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for heatmaps of the difference between two datasets
+ */
+public class DifferenceHeatmapTileProviderTest extends TestCase {
+
+    private List<WeightedLatLng> mData;
+
+    private int[] mPixels;
+
+    private int[] mPalette;
+
+    public void setUp() {
+        mData = new ArrayList<WeightedLatLng>();
+        Random random = new Random(13);
+        for (int i = 0; i < 300; i++) {
+            mData.add(new WeightedLatLng(new LatLng(59.9 + random.nextDouble() * 0.1,
+                    30.3 + random.nextDouble() * 0.1), 1 + random.nextInt(3)));
+        }
+    }
+
+    private void render(List<WeightedLatLng> from, List<WeightedLatLng> to) {
+        int x = (int) (mData.get(0).getPoint().x * (1 << 13));
+        int y = (int) (mData.get(0).getPoint().y * (1 << 13));
+        render(from, to, x, y, 13);
+    }
+
+    private void render(List<WeightedLatLng> from, List<WeightedLatLng> to, int x, int y,
+                        int zoom) {
+        render(from, to, x, y, zoom, new GaussianKernel());
+    }
+
+    private void render(List<WeightedLatLng> from, List<WeightedLatLng> to, int x, int y,
+                        int zoom, Kernel kernel) {
+        DifferenceHeatmapTileProvider provider = new DifferenceHeatmapTileProvider.Builder()
+                .weightedData(from, to)
+                .kernel(kernel)
+                .tileEncoder(new TileEncoder() {
+                    @Override
+                    public byte[] encode(int[] pixels, int dim, int[] palette) {
+                        mPixels = pixels.clone();
+                        mPalette = palette;
+                        return new byte[0];
+                    }
+                })
+                .build();
+        mPixels = null;
+        provider.getTile(x, y, zoom);
+        assertNotNull(mPixels);
+    }
+
+    public void testSameDataCancelsOut() {
+        render(mData, mData);
+        for (int pixel : mPixels) {
+            assertEquals(0, pixel);
+        }
+    }
+
+    public void testIncreasesAndDecreases() {
+        List<WeightedLatLng> none = Collections.emptyList();
+        render(none, mData);
+        // Palette indices above the middle of the color map are increases
+        int half = (mPalette.length - 1) / 2;
+        int colored = 0;
+        for (int pixel : mPixels) {
+            if (pixel != 0) {
+                assertTrue(pixel > half);
+                colored++;
+            }
+        }
+        assertTrue(colored > 0);
+
+        render(mData, none);
+        for (int pixel : mPixels) {
+            assertTrue(pixel <= half);
+        }
+    }
+
+    /**
+     * At zoom 0 the padded tile crosses both edges of the world: a point at either edge
+     * spreads into the padding of the opposite one.
+     */
+    public void testWrapsAroundBothEdgesAtZoom0() {
+        int dim = HeatmapTileProvider.TILE_DIM;
+        List<WeightedLatLng> none = Collections.emptyList();
+        List<WeightedLatLng> left = Collections.singletonList(
+                new WeightedLatLng(new LatLng(0, -179.9)));
+        List<WeightedLatLng> right = Collections.singletonList(
+                new WeightedLatLng(new LatLng(0, 179.9)));
+        int row = dim / 2;
+
+        // An increase at the left edge shows at the right edge too
+        render(none, left, 0, 0, 0);
+        int half = (mPalette.length - 1) / 2;
+        assertTrue(mPixels[row * dim] > half);
+        assertTrue(mPixels[row * dim + dim - 1] > half);
+
+        // A decrease at the right edge shows at the left edge too
+        render(right, none, 0, 0, 0);
+        assertTrue(mPixels[row * dim + dim - 1] != 0 && mPixels[row * dim + dim - 1] <= half);
+        assertTrue(mPixels[row * dim] != 0 && mPixels[row * dim] <= half);
+    }
+
+    public void testKernel() {
+        List<WeightedLatLng> none = Collections.emptyList();
+        List<WeightedLatLng> point = Collections.singletonList(
+                new WeightedLatLng(new LatLng(0, 0)));
+        // The point is at the corner shared by the four tiles at the center of zoom 1
+        render(none, point, 1, 1, 1);
+        int[] gaussian = mPixels;
+        render(none, point, 1, 1, 1, new EpanechnikovKernel());
+        assertTrue(gaussian[0] != 0 && mPixels[0] != 0);
+        assertFalse(Arrays.equals(gaussian, mPixels));
+    }
+
+    public void testColorizeDifference() {
+        float[] grid = {-2, 0, 0.5f, 2, 4};
+        GridExtent extent = new GridExtent();
+        extent.include(0, 0);
+        extent.include(4, 0);
+        int[] pixels = new int[25];
+        DifferenceHeatmapTileProvider.colorizeDifference(grid, 5, 5, 2, extent, pixels);
+        // Largest decrease, untouched, halfway up, largest increase, clamped
+        assertEquals(1, pixels[0]);
+        assertEquals(0, pixels[1]);
+        assertEquals(4, pixels[2]);
+        assertEquals(5, pixels[3]);
+        assertEquals(5, pixels[4]);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for the dirty tile tracking of HeatmapTileProvider
+ */
+public class DirtyTilesTest extends TestCase {
+
+    private HeatmapTileProvider mProvider;
+
+    public void setUp() {
+        List<WeightedLatLng> data = new ArrayList<WeightedLatLng>();
+        for (int i = 0; i < 100; i++) {
+            data.add(new WeightedLatLng(new LatLng(59.9 + i * 0.001, 30.3 + i * 0.001)));
+        }
+        mProvider = new HeatmapTileProvider.Builder()
+                .weightedData(data)
+                .build();
+    }
+
+    public void testNothingDirtyAfterBuild() {
+        assertTrue(mProvider.drainDirtyTiles(12).isEmpty());
+    }
+
+    public void testDrainPerZoom() {
+        // Away from the other points, so the maximum intensity does not change
+        WeightedLatLng point = new WeightedLatLng(new LatLng(59.99, 30.31));
+        mProvider.addWeightedData(Collections.singletonList(point));
+
+        TileCoordinate tile = new TileCoordinate((int) (point.getPoint().x * (1 << 12)),
+                (int) (point.getPoint().y * (1 << 12)), 12);
+        Set<TileCoordinate> tiles = mProvider.drainDirtyTiles(12);
+        assertTrue(tiles.contains(tile));
+        // Drained for zoom 12 only
+        assertTrue(mProvider.drainDirtyTiles(12).isEmpty());
+        assertFalse(mProvider.drainDirtyTiles(13).isEmpty());
+    }
+
+    public void testWholeZoomDirty() {
+        mProvider.setRadius(30);
+        assertNull(mProvider.drainDirtyTiles(12));
+        assertTrue(mProvider.drainDirtyTiles(12).isEmpty());
+
+        mProvider.setOpacity(0.5);
+        mProvider.addWeightedData(Collections.singletonList(
+                new WeightedLatLng(new LatLng(59.95, 30.35))));
+        assertNull(mProvider.drainDirtyTiles(12));
+    }
+
+    public void testOverflow() {
+        List<WeightedLatLng> data = new ArrayList<WeightedLatLng>();
+        for (int i = 0; i < 20000; i++) {
+            data.add(new WeightedLatLng(new LatLng(59.9, 30.3)));
+        }
+        mProvider.addWeightedData(data);
+        // Too many changes to keep track of
+        assertNull(mProvider.drainDirtyTiles(15));
+    }
+
+    public void testListener() {
+        final List<DirtyTiles> changes = new ArrayList<DirtyTiles>();
+        mProvider.setOnDirtyTilesListener(new HeatmapTileProvider.OnDirtyTilesListener() {
+            @Override
+            public void onDirtyTiles(DirtyTiles dirtyTiles) {
+                changes.add(dirtyTiles);
+            }
+        });
+        DirtyTiles dirty = mProvider.addWeightedData(Collections.singletonList(
+                new WeightedLatLng(new LatLng(59.95, 30.35))));
+        mProvider.setGradient(HeatmapTileProvider.DEFAULT_GRADIENT);
+
+        assertEquals(2, changes.size());
+        assertSame(dirty, changes.get(0));
+        assertTrue(changes.get(1).isZoomDirty(12));
+    }
+}
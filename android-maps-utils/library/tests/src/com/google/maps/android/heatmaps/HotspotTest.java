@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.projection.SphericalMercatorProjection;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for finding the local maxima of heatmaps
+ */
+public class HotspotTest extends TestCase {
+
+    private static final SphericalMercatorProjection PROJECTION =
+            new SphericalMercatorProjection(HeatmapTileProvider.WORLD_WIDTH);
+
+    private static final int ZOOM = 12;
+
+    private static final double WORLD_DIM = (double) HeatmapTileProvider.TILE_DIM * (1 << ZOOM);
+
+    /**
+     * @return the location of a pixel of the zoom level, from the top left corner of the world
+     */
+    private static LatLng pixel(double x, double y) {
+        return PROJECTION.toLatLng(new Point(x / WORLD_DIM, y / WORLD_DIM));
+    }
+
+    private static double pixelDistance(LatLng a, LatLng b) {
+        Point pointA = PROJECTION.toPoint(a);
+        Point pointB = PROJECTION.toPoint(b);
+        return Math.hypot(pointA.x - pointB.x, pointA.y - pointB.y) * WORLD_DIM;
+    }
+
+    /**
+     * @return the bounds of a range of tiles of the zoom level, inclusive
+     */
+    private static LatLngBounds tiles(int minX, int minY, int maxX, int maxY) {
+        return new LatLngBounds(pixel(minX * 512, (maxY + 1) * 512 - 1),
+                pixel((maxX + 1) * 512 - 1, minY * 512));
+    }
+
+    private static List<WeightedLatLng> cluster(LatLng center, int size) {
+        List<WeightedLatLng> points = new ArrayList<WeightedLatLng>();
+        for (int i = 0; i < size; i++) {
+            points.add(new WeightedLatLng(center));
+        }
+        return points;
+    }
+
+    public void testStrongestFirst() {
+        LatLng a = pixel(1000.5 * 512, 1000.5 * 512);
+        LatLng b = pixel(1000.5 * 512 + 150, 1000.5 * 512 - 100);
+        LatLng c = pixel(1001.5 * 512, 1000.5 * 512);
+        List<WeightedLatLng> data = new ArrayList<WeightedLatLng>();
+        data.addAll(cluster(a, 2));
+        data.addAll(cluster(b, 5));
+        data.addAll(cluster(c, 3));
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(data)
+                .build();
+
+        List<Hotspot> hotspots = provider.getHotspots(tiles(1000, 1000, 1001, 1000), ZOOM, 10);
+        assertEquals(3, hotspots.size());
+        assertTrue(pixelDistance(b, hotspots.get(0).getPosition()) < 1);
+        assertTrue(pixelDistance(c, hotspots.get(1).getPosition()) < 1);
+        assertTrue(pixelDistance(a, hotspots.get(2).getPosition()) < 1);
+        assertEquals(1.0, hotspots.get(0).getIntensity(), 0.1);
+        assertTrue(hotspots.get(1).getIntensity() > hotspots.get(2).getIntensity());
+
+        assertEquals(2, provider.getHotspots(tiles(1000, 1000, 1001, 1000), ZOOM, 2).size());
+        // Only within the bounds
+        assertEquals(2, provider.getHotspots(tiles(1000, 1000, 1000, 1000), ZOOM, 10).size());
+    }
+
+    public void testSuppressedWithinRadius() {
+        LatLng a = pixel(1000.5 * 512, 1000.5 * 512);
+        List<WeightedLatLng> data = new ArrayList<WeightedLatLng>();
+        data.addAll(cluster(a, 3));
+        data.addAll(cluster(pixel(1000.5 * 512 + 8, 1000.5 * 512), 2));
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(data)
+                .build();
+        List<Hotspot> hotspots = provider.getHotspots(tiles(1000, 1000, 1000, 1000), ZOOM, 10);
+        assertEquals(1, hotspots.size());
+        assertTrue(pixelDistance(a, hotspots.get(0).getPosition()) < 5);
+    }
+
+    public void testAcrossSeams() {
+        // The last pixel of a tile, and the first one of the tile diagonally below
+        LatLng a = pixel(1000 * 512 - 0.5, 1000 * 512 - 0.5);
+        LatLng b = pixel(1002 * 512 + 0.5, 1000 * 512 + 0.5);
+        List<WeightedLatLng> data = new ArrayList<WeightedLatLng>();
+        data.addAll(cluster(a, 2));
+        data.addAll(cluster(b, 1));
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(data)
+                .build();
+        List<Hotspot> hotspots = provider.getHotspots(tiles(999, 999, 1002, 1000), ZOOM, 10);
+        assertEquals(2, hotspots.size());
+        assertTrue(pixelDistance(a, hotspots.get(0).getPosition()) < 0.01);
+        assertTrue(pixelDistance(b, hotspots.get(1).getPosition()) < 0.01);
+    }
+
+    public void testUpdatedWithData() {
+        LatLng a = pixel(1000.5 * 512, 1000.5 * 512);
+        LatLng b = pixel(1000.5 * 512 + 100, 1000.5 * 512);
+        List<WeightedLatLng> data = new ArrayList<WeightedLatLng>();
+        data.addAll(cluster(a, 3));
+        data.addAll(cluster(b, 2));
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(data)
+                .build();
+        LatLngBounds bounds = tiles(1000, 1000, 1000, 1000);
+        assertTrue(pixelDistance(a, provider.getHotspots(bounds, ZOOM, 1).get(0).getPosition())
+                < 1);
+
+        // Cached peaks of the changed tile are dropped
+        provider.addWeightedData(cluster(b, 2));
+        assertTrue(pixelDistance(b, provider.getHotspots(bounds, ZOOM, 1).get(0).getPosition())
+                < 1);
+    }
+
+    public void testSameAfterCaching() {
+        List<WeightedLatLng> data = new ArrayList<WeightedLatLng>();
+        Random random = new Random(11);
+        for (int i = 0; i < 2000; i++) {
+            data.add(new WeightedLatLng(pixel(1000 * 512 + random.nextDouble() * 1024,
+                    1000 * 512 + random.nextDouble() * 1024)));
+        }
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(data)
+                .build();
+        LatLngBounds bounds = tiles(1000, 1000, 1001, 1001);
+        List<Hotspot> first = provider.getHotspots(bounds, ZOOM, 20);
+        List<Hotspot> second = provider.getHotspots(bounds, ZOOM, 20);
+        assertEquals(20, first.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getPosition(), second.get(i).getPosition());
+        }
+        // Intensities are decreasing
+        List<Double> intensities = new ArrayList<Double>();
+        for (Hotspot hotspot : first) {
+            intensities.add(-hotspot.getIntensity());
+        }
+        List<Double> sorted = new ArrayList<Double>(intensities);
+        Collections.sort(sorted);
+        assertEquals(sorted, intensities);
+    }
+
+    public void testFromRenderedTiles() {
+        List<WeightedLatLng> data = new ArrayList<WeightedLatLng>();
+        Random random = new Random(12);
+        for (int i = 0; i < 2000; i++) {
+            data.add(new WeightedLatLng(pixel(1000 * 512 + random.nextDouble() * 1024,
+                    1000 * 512 + random.nextDouble() * 1024)));
+        }
+        final int[] convolutions = new int[1];
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(data)
+                .sparseThreshold(0)
+                .convolver(new Convolver() {
+                    private final Convolver mExact = new ExactConvolver();
+
+                    @Override
+                    public void convolve(float[] grid, int paddedDim, double[] kernel,
+                                         float[] output) {
+                        convolutions[0]++;
+                        mExact.convolve(grid, paddedDim, kernel, output);
+                    }
+                })
+                .build();
+        // Inside the four tiles, so that rounding does not reach into their neighbours
+        LatLngBounds bounds = new LatLngBounds(pixel(1000 * 512 + 1, 1002 * 512 - 2),
+                pixel(1002 * 512 - 2, 1000 * 512 + 1));
+        List<Hotspot> expected = new HeatmapTileProvider.Builder()
+                .weightedData(data)
+                .build()
+                .getHotspots(bounds, ZOOM, 20);
+
+        // The tiles on screen are searched without convolving them again
+        for (int y = 1000; y <= 1001; y++) {
+            for (int x = 1000; x <= 1001; x++) {
+                provider.getTile(x, y, ZOOM);
+            }
+        }
+        assertEquals(4, convolutions[0]);
+        List<Hotspot> hotspots = provider.getHotspots(bounds, ZOOM, 20);
+        assertEquals(4, convolutions[0]);
+        assertEquals(expected.size(), hotspots.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getPosition(), hotspots.get(i).getPosition());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for adding and removing points of a HeatmapTileProvider in place
+ */
+public class IncrementalDataTest extends TestCase {
+
+    private List<WeightedLatLng> mData;
+
+    private HeatmapTileProvider mProvider;
+
+    public void setUp() {
+        mData = new ArrayList<WeightedLatLng>();
+        for (int i = 0; i < 100; i++) {
+            mData.add(new WeightedLatLng(new LatLng(59.9 + i * 0.001, 30.3 + i * 0.001)));
+        }
+        mProvider = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .tileCacheSize(16 * 1024 * 1024)
+                .build();
+    }
+
+    private static int tileX(WeightedLatLng point, int zoom) {
+        return (int) (point.getPoint().x * (1 << zoom));
+    }
+
+    private static int tileY(WeightedLatLng point, int zoom) {
+        return (int) (point.getPoint().y * (1 << zoom));
+    }
+
+    public void testRemoveAndAddBack() {
+        WeightedLatLng centre = mData.get(50);
+        for (int zoom : new int[]{8, 12}) {
+            int x = tileX(centre, zoom);
+            int y = tileY(centre, zoom);
+            byte[] before = mProvider.getTile(x, y, zoom).data;
+
+            List<WeightedLatLng> removed = mData.subList(40, 60);
+            DirtyTiles dirty = mProvider.removeWeightedData(removed);
+            assertTrue(dirty.getTiles(zoom).contains(new TileCoordinate(x, y, zoom)));
+            assertFalse(Arrays.equals(before, mProvider.getTile(x, y, zoom).data));
+
+            mProvider.addWeightedData(removed);
+            assertTrue(Arrays.equals(before, mProvider.getTile(x, y, zoom).data));
+        }
+    }
+
+    public void testAddOutsideBounds() {
+        WeightedLatLng far = new WeightedLatLng(new LatLng(-33.9, 151.2));
+        int x = tileX(far, 12);
+        int y = tileY(far, 12);
+        assertSame(TileProvider.NO_TILE, mProvider.getTile(x, y, 12));
+
+        mProvider.addWeightedData(Collections.singletonList(far));
+        assertNotSame(TileProvider.NO_TILE, mProvider.getTile(x, y, 12));
+
+        mProvider.removeWeightedData(Collections.singletonList(far));
+        assertSame(TileProvider.NO_TILE, mProvider.getTile(x, y, 12));
+    }
+
+    public void testOnlyNearbyTilesInvalidated() {
+        WeightedLatLng centre = mData.get(50);
+        Tile near = mProvider.getTile(tileX(centre, 12), tileY(centre, 12), 12);
+        Tile other = mProvider.getTile(0, 0, 12);
+
+        // Add a point next to an existing one, so the maximum intensity barely moves
+        mProvider.addWeightedData(Collections.singletonList(
+                new WeightedLatLng(new LatLng(59.95, 30.35))));
+        assertSame(other, mProvider.getTile(0, 0, 12));
+        assertNotSame(near, mProvider.getTile(tileX(centre, 12), tileY(centre, 12), 12));
+    }
+
+    public void testRemoveUnknownPoint() {
+        DirtyTiles dirty = mProvider.removeWeightedData(Collections.singletonList(
+                new WeightedLatLng(new LatLng(10, 10))));
+        assertTrue(dirty.isEmpty());
+    }
+
+    public void testDirtyTilesWrapAround() {
+        // A point on the antimeridian affects tiles on both edges of the world
+        DirtyTiles dirty = new DirtyTiles(new double[]{0}, new double[]{0.5}, 10, 512,
+                new boolean[22]);
+        Set<TileCoordinate> tiles = dirty.getTiles(2);
+        assertEquals(4, tiles.size());
+        assertTrue(tiles.contains(new TileCoordinate(0, 1, 2)));
+        assertTrue(tiles.contains(new TileCoordinate(3, 2, 2)));
+        assertFalse(dirty.isZoomDirty(2));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for IntensityPyramid
+ */
+public class IntensityPyramidTest extends TestCase {
+
+    private static final int TILE_DIM = 512;
+
+    private static final int PADDING = 20;
+
+    private static final int PADDED_DIM = TILE_DIM + 2 * PADDING;
+
+    private float[] fill(IntensityPyramid pyramid, int x, int y, int zoom) {
+        float[] grid = new float[PADDED_DIM * PADDED_DIM];
+        pyramid.fill(x, y, zoom, PADDING, grid, new GridExtent());
+        return grid;
+    }
+
+    private static double sum(float[] grid) {
+        double sum = 0;
+        for (float val : grid) {
+            sum += val;
+        }
+        return sum;
+    }
+
+    public void testMatchesPointsAtEveryLevel() {
+        Random random = new Random(7);
+        List<WeightedLatLng> data = new ArrayList<WeightedLatLng>();
+        for (int i = 0; i < 2000; i++) {
+            data.add(new WeightedLatLng(new LatLng(59.9 + random.nextGaussian() * 0.1,
+                    30.3 + random.nextGaussian() * 0.2), 1 + random.nextDouble()));
+        }
+        IntensityPyramid bulk = new IntensityPyramid(10, TILE_DIM);
+        bulk.addAll(data);
+        IntensityPyramid incremental = new IntensityPyramid(10, TILE_DIM);
+        for (WeightedLatLng point : data) {
+            incremental.add(point.getPoint().x, point.getPoint().y, point.getIntensity());
+        }
+
+        for (int zoom = 0; zoom <= 10; zoom++) {
+            int tiles = 1 << zoom;
+            WeightedLatLng centre = new WeightedLatLng(new LatLng(59.9, 30.3));
+            int x = (int) (centre.getPoint().x * tiles);
+            int y = (int) (centre.getPoint().y * tiles);
+            float[] grid = fill(bulk, x, y, zoom);
+            assertTrue(java.util.Arrays.equals(grid, fill(incremental, x, y, zoom)));
+
+            // Every point inside the padded tile is counted once
+            double tileWidth = 1.0 / tiles;
+            double padding = tileWidth * PADDING / TILE_DIM;
+            double expected = 0;
+            for (WeightedLatLng point : data) {
+                double px = point.getPoint().x;
+                double py = point.getPoint().y;
+                if (px >= x * tileWidth - padding && px < (x + 1) * tileWidth + padding
+                        && py >= y * tileWidth - padding && py < (y + 1) * tileWidth + padding) {
+                    expected += point.getIntensity();
+                }
+            }
+            assertEquals(expected, sum(grid), 1e-3);
+        }
+    }
+
+    public void testBucketPosition() {
+        IntensityPyramid pyramid = new IntensityPyramid(3, TILE_DIM);
+        // Middle of pixel (100, 200) of tile (2, 3) at zoom 3
+        double worldDim = TILE_DIM << 3;
+        pyramid.add((2 * TILE_DIM + 100.5) / worldDim, (3 * TILE_DIM + 200.5) / worldDim, 2);
+        float[] grid = fill(pyramid, 2, 3, 3);
+        assertEquals(2f, grid[(200 + PADDING) * PADDED_DIM + 100 + PADDING], 0f);
+        assertEquals(2.0, sum(grid), 0);
+
+        // Shows up in the padding of the tile to its right, but not further away
+        grid = fill(pyramid, 1, 3, 3);
+        assertEquals(0.0, sum(grid), 0);
+        grid = fill(pyramid, 2, 2, 3);
+        assertEquals(0.0, sum(grid), 0);
+    }
+
+    public void testPaddingAndWraparound() {
+        IntensityPyramid pyramid = new IntensityPyramid(2, TILE_DIM);
+        double worldDim = TILE_DIM << 2;
+        // Last pixel column of the world, on the first tile row
+        pyramid.add((worldDim - 0.5) / worldDim, 10.5 / worldDim, 1);
+        // In the padding of tile 0, across the antimeridian
+        float[] grid = fill(pyramid, 0, 0, 2);
+        assertEquals(1f, grid[(10 + PADDING) * PADDED_DIM + PADDING - 1], 0f);
+        // Inside its own tile
+        grid = fill(pyramid, 3, 0, 2);
+        assertEquals(1f, grid[(10 + PADDING) * PADDED_DIM + PADDING + TILE_DIM - 1], 0f);
+        // Too far from the left neighbour of its own tile
+        assertEquals(0.0, sum(fill(pyramid, 2, 0, 2)), 0);
+    }
+
+    public void testRemove() {
+        IntensityPyramid pyramid = new IntensityPyramid(4, TILE_DIM);
+        pyramid.add(0.3, 0.3, 1);
+        pyramid.add(0.3, 0.3, 2);
+        pyramid.add(0.3, 0.3, -1);
+        float[] grid = fill(pyramid, 4, 4, 4);
+        assertEquals(2.0, sum(grid), 1e-9);
+        pyramid.add(0.3, 0.3, -2);
+        assertFalse(pyramid.fill(4, 4, 4, PADDING, new float[PADDED_DIM * PADDED_DIM],
+                new GridExtent()));
+    }
+}
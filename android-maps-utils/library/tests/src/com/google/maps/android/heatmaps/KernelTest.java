@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.projection.SphericalMercatorProjection;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for the kernel shapes of heatmaps
+ */
+public class KernelTest extends TestCase {
+
+    private static final SphericalMercatorProjection PROJECTION =
+            new SphericalMercatorProjection(HeatmapTileProvider.WORLD_WIDTH);
+
+    private static final int ZOOM = 13;
+
+    private static final int DIM = HeatmapTileProvider.TILE_DIM;
+
+    /**
+     * Tiles rendered by each timing test, in each direction
+     */
+    private static final int TILES = 3;
+
+    private List<WeightedLatLng> mData;
+
+    public void setUp() {
+        mData = new ArrayList<WeightedLatLng>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            mData.add(new WeightedLatLng(new LatLng(40.70 + random.nextDouble() * 0.15,
+                    -74.05 + random.nextDouble() * 0.2), 1 + random.nextInt(3)));
+        }
+    }
+
+    public void testWeights() {
+        Kernel[] kernels = {new GaussianKernel(), new EpanechnikovKernel(), new QuarticKernel()};
+        for (Kernel kernel : kernels) {
+            double[] weights = kernel.getWeights(20);
+            assertEquals(41, weights.length);
+            assertEquals(1, weights[20], 1e-12);
+            for (int i = 0; i < 20; i++) {
+                assertEquals(weights[i], weights[40 - i], 1e-12);
+                assertTrue(weights[i] <= weights[i + 1]);
+            }
+        }
+        assertEquals(0, new EpanechnikovKernel().getWeights(20)[0], 1e-12);
+        assertEquals(0.75, new EpanechnikovKernel().getWeights(20)[10], 1e-12);
+        assertEquals(0, new QuarticKernel().getWeights(20)[0], 1e-12);
+        assertEquals(0.5625, new QuarticKernel().getWeights(20)[10], 1e-12);
+        assertTrue(new GaussianKernel().getWeights(20)[0] > 0);
+    }
+
+    public void testSameAsGenerateKernel() {
+        double[] expected = HeatmapTileProvider.generateKernel(20, 20 / 3.0);
+        double[] actual = new GaussianKernel().getWeights(20);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i], 1e-12);
+        }
+    }
+
+    public void testCachedPerRadius() {
+        Kernel kernel = new QuarticKernel();
+        assertSame(kernel.getWeights(10), kernel.getWeights(10));
+        assertNotSame(kernel.getWeights(10), kernel.getWeights(11));
+        try {
+            kernel.getWeights(HeatmapTileProvider.MAX_RADIUS + 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new GaussianKernel(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testExactConvolverSkipsZeroWeights() {
+        int radius = 10;
+        int dim = 32;
+        int paddedDim = dim + 2 * radius;
+        double[][] grid = new double[paddedDim][paddedDim];
+        Random random = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            grid[random.nextInt(paddedDim)][random.nextInt(paddedDim)] += 1;
+        }
+        double[] kernel = new QuarticKernel().getWeights(radius);
+        double[][] expected = HeatmapTileProvider.convolve(grid, kernel);
+        float[] flat = new float[paddedDim * paddedDim];
+        for (int x = 0; x < paddedDim; x++) {
+            for (int y = 0; y < paddedDim; y++) {
+                flat[y * paddedDim + x] = (float) grid[x][y];
+            }
+        }
+        float[] output = new float[dim * dim];
+        new ExactConvolver().convolve(flat, paddedDim, kernel, output);
+        for (int x = 0; x < dim; x++) {
+            for (int y = 0; y < dim; y++) {
+                assertEquals(expected[x][y], output[y * dim + x], 1e-4);
+            }
+        }
+    }
+
+    public void testCompactSupport() {
+        int tileX = 1205;
+        int tileY = 1539;
+        double worldDim = (double) DIM * (1 << ZOOM);
+        // Center of pixel (128, 128) of the tile
+        LatLng position = PROJECTION.toLatLng(new Point((tileX * DIM + 128.5) / worldDim,
+                (tileY * DIM + 128.5) / worldDim));
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(Collections.singletonList(new WeightedLatLng(position)))
+                .radius(20)
+                .build();
+        float[] intensity = new float[DIM * DIM];
+
+        assertTrue(provider.getRelativeIntensity(tileX, tileY, ZOOM, intensity));
+        assertTrue(intensity[128 * DIM + 148] > 0);
+
+        provider.setKernel(new EpanechnikovKernel());
+        assertTrue(provider.getRelativeIntensity(tileX, tileY, ZOOM, intensity));
+        assertTrue(intensity[128 * DIM + 147] > 0);
+        assertEquals(0, intensity[128 * DIM + 148], 0);
+        assertEquals(0, intensity[108 * DIM + 128], 0);
+        assertEquals(0, intensity[100 * DIM + 100], 0);
+    }
+
+    public void testDensityAtFollowsKernel() {
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .build();
+        LatLng position = new LatLng(40.78, -73.97);
+        double gaussian = provider.densityAt(position, ZOOM);
+        provider.setKernel(new EpanechnikovKernel());
+        double epanechnikov = provider.densityAt(position, ZOOM);
+        assertTrue(gaussian > 0);
+        assertTrue(epanechnikov > 0);
+        assertTrue(Math.abs(gaussian - epanechnikov) > 1e-6 * gaussian);
+    }
+
+    /**
+     * Renders TILES x TILES dense tiles with a kernel of the largest radius.
+     */
+    private void renderTiles(Kernel kernel) {
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .radius(HeatmapTileProvider.MAX_RADIUS)
+                .kernel(kernel)
+                .build();
+        Point corner = PROJECTION.toPoint(new LatLng(40.84, -74.04));
+        int minX = (int) (corner.x * (1 << ZOOM));
+        int minY = (int) (corner.y * (1 << ZOOM));
+        float[] intensity = new float[DIM * DIM];
+        for (int x = minX; x < minX + TILES; x++) {
+            for (int y = minY; y < minY + TILES; y++) {
+                assertTrue(provider.getRelativeIntensity(x, y, ZOOM, intensity));
+            }
+        }
+    }
+
+    /**
+     * Tile latency of the Gaussian kernel, to compare with the other kernels.
+     * Timing results are averaged.
+     */
+    public void testGaussianLatency() {
+        renderTiles(new GaussianKernel());
+    }
+
+    /**
+     * Tile latency of the Epanechnikov kernel, to compare with the other kernels.
+     * Timing results are averaged.
+     */
+    public void testEpanechnikovLatency() {
+        renderTiles(new EpanechnikovKernel());
+    }
+
+    /**
+     * Tile latency of the quartic kernel, to compare with the other kernels.
+     * Timing results are averaged.
+     */
+    public void testQuarticLatency() {
+        renderTiles(new QuarticKernel());
+    }
+}
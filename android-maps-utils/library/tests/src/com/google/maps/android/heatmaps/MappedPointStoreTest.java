@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.geometry.Bounds;
+import com.google.maps.android.geometry.Point;
+import com.google.maps.android.quadtree.PointIndexQuadTree;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for point files read in place
+ */
+public class MappedPointStoreTest extends TestCase {
+
+    private ColumnarPointStore mPoints;
+
+    public void setUp() {
+        mPoints = new ColumnarPointStore();
+        Random random = new Random(11);
+        for (int i = 0; i < 5000; i++) {
+            mPoints.add(new LatLng(59.8 + random.nextDouble() * 0.3,
+                    30.1 + random.nextDouble() * 0.4), 1 + random.nextDouble() * 2);
+        }
+    }
+
+    private static byte[] toBytes(WeightedPointStore points) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MappedPointStore.write(points, out);
+        return out.toByteArray();
+    }
+
+    private void assertSamePoints(WeightedPointStore expected, WeightedPointStore actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            // A step is about 1e-12 of the world for these bounds
+            assertEquals(expected.getX(i), actual.getX(i), 1e-11);
+            assertEquals(expected.getY(i), actual.getY(i), 1e-11);
+            assertEquals((double) (float) expected.getIntensity(i), actual.getIntensity(i), 0);
+        }
+    }
+
+    public void testWrap() throws IOException {
+        byte[] bytes = toBytes(mPoints);
+        assertEquals(MappedPointStore.HEADER_SIZE + 12 * 5000, bytes.length);
+        MappedPointStore store = MappedPointStore.wrap(ByteBuffer.wrap(bytes));
+        assertSamePoints(mPoints, store);
+
+        // Extremes are exact
+        Bounds bounds = store.getBounds();
+        double minX = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < mPoints.size(); i++) {
+            minX = Math.min(minX, mPoints.getX(i));
+            maxY = Math.max(maxY, mPoints.getY(i));
+        }
+        assertEquals(minX, bounds.minX);
+        assertEquals(maxY, bounds.maxY, 1e-15);
+    }
+
+    public void testMap() throws IOException {
+        File file = File.createTempFile("points", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                MappedPointStore.write(mPoints, out);
+            } finally {
+                out.close();
+            }
+            assertSamePoints(mPoints, MappedPointStore.map(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testSameValues() throws IOException {
+        ColumnarPointStore points = new ColumnarPointStore();
+        points.addPoint(0.25, 0.5, 3);
+        points.addPoint(0.25, 0.5, 3);
+        MappedPointStore store = MappedPointStore.wrap(ByteBuffer.wrap(toBytes(points)));
+        assertEquals(2, store.size());
+        assertEquals(0.25, store.getX(1));
+        assertEquals(0.5, store.getY(1));
+        assertEquals(3.0, store.getIntensity(1));
+
+        store = MappedPointStore.wrap(ByteBuffer.wrap(toBytes(new ColumnarPointStore())));
+        assertEquals(0, store.size());
+    }
+
+    public void testWideIntensityRange() throws IOException {
+        ColumnarPointStore points = new ColumnarPointStore();
+        points.addPoint(0.25, 0.5, 1);
+        points.addPoint(0.25, 0.5, 2);
+        points.addPoint(0.25, 0.5, 0.001);
+        points.addPoint(0.25, 0.5, 100001);
+        MappedPointStore store = MappedPointStore.wrap(ByteBuffer.wrap(toBytes(points)));
+        // One outlier does not cost the other intensities their precision
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(points.getIntensity(i), store.getIntensity(i),
+                    points.getIntensity(i) * 1e-7);
+        }
+    }
+
+    public void testInvalid() throws IOException {
+        byte[] bytes = toBytes(mPoints);
+        byte[][] inputs = {new byte[0], new byte[MappedPointStore.HEADER_SIZE],
+                Arrays.copyOf(bytes, bytes.length - 1)};
+        for (byte[] input : inputs) {
+            try {
+                MappedPointStore.wrap(ByteBuffer.wrap(input));
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        bytes[7] = 1;
+        try {
+            MappedPointStore.wrap(ByteBuffer.wrap(bytes));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testSameTiles() throws IOException {
+        HeatmapTileProvider expected = new HeatmapTileProvider.Builder()
+                .pointStore(mPoints)
+                .build();
+        MappedPointStore store = MappedPointStore.wrap(ByteBuffer.wrap(toBytes(mPoints)));
+        HeatmapTileProvider actual = new HeatmapTileProvider.Builder()
+                .pointStore(store, new PointIndexQuadTree(store))
+                .build();
+        int dim = HeatmapTileProvider.TILE_DIM;
+        float[] expectedIntensity = new float[dim * dim];
+        float[] actualIntensity = new float[dim * dim];
+        for (int zoom : new int[]{5, 11}) {
+            Point point = new Point(mPoints.getX(0), mPoints.getY(0));
+            int x = (int) (point.x * (1 << zoom));
+            int y = (int) (point.y * (1 << zoom));
+            assertTrue(expected.getRelativeIntensity(x, y, zoom, expectedIntensity));
+            assertTrue(actual.getRelativeIntensity(x, y, zoom, actualIntensity));
+            for (int i = 0; i < expectedIntensity.length; i++) {
+                assertEquals(expectedIntensity[i], actualIntensity[i], 1e-3);
+            }
+        }
+    }
+
+    public void testIndexOfOtherPoints() throws IOException {
+        MappedPointStore store = MappedPointStore.wrap(ByteBuffer.wrap(toBytes(mPoints)));
+        try {
+            new HeatmapTileProvider.Builder().pointStore(store, new PointIndexQuadTree(mPoints));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for MaxIntensityPyramid
+ */
+public class MaxIntensityPyramidTest extends TestCase {
+
+    private static final int LEVELS = 22;
+
+    private static final int RADIUS = 20;
+
+    private static final int TILE_DIM = 512;
+
+    private List<WeightedLatLng> mData;
+
+    public void setUp() {
+        mData = new ArrayList<WeightedLatLng>();
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            mData.add(new WeightedLatLng(new LatLng(59.9 + random.nextDouble() * 0.1,
+                    30.3 + random.nextDouble() * 0.1), 1 + random.nextInt(3)));
+        }
+    }
+
+    /**
+     * Brute force maximum of a zoom level
+     */
+    private double bruteForceMax(List<WeightedLatLng> data, int zoom) {
+        double cellWidth = 2.0 * RADIUS / TILE_DIM / (1 << zoom);
+        HashMap<String, Double> cells = new HashMap<String, Double>();
+        double max = 0;
+        for (WeightedLatLng l : data) {
+            String key = (long) (l.getPoint().x / cellWidth) + ","
+                    + (long) (l.getPoint().y / cellWidth);
+            Double value = cells.get(key);
+            value = (value == null ? 0 : value) + l.getIntensity();
+            cells.put(key, value);
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    public void testMaximaMatchBruteForce() {
+        double[] maxima = MaxIntensityPyramid.computeMaxima(mData, LEVELS, RADIUS, TILE_DIM);
+        assertEquals(LEVELS, maxima.length);
+        for (int zoom = 0; zoom < LEVELS; zoom++) {
+            assertEquals("zoom " + zoom, bruteForceMax(mData, zoom), maxima[zoom], 1e-9);
+        }
+        // Everything in one cell when zoomed out, single points when zoomed in
+        assertEquals(bruteForceMax(mData, 0), maxima[0], 1e-9);
+        assertTrue(maxima[LEVELS - 1] <= 3);
+    }
+
+    public void testIncremental() {
+        MaxIntensityPyramid pyramid = new MaxIntensityPyramid(LEVELS, RADIUS, TILE_DIM);
+        pyramid.addAll(mData.subList(0, 250));
+        for (WeightedLatLng l : mData.subList(250, 500)) {
+            pyramid.add(l.getPoint().x, l.getPoint().y, l.getIntensity());
+        }
+        for (WeightedLatLng l : mData.subList(0, 100)) {
+            pyramid.add(l.getPoint().x, l.getPoint().y, -l.getIntensity());
+        }
+        List<WeightedLatLng> remaining = mData.subList(100, 500);
+        for (int zoom = 0; zoom < LEVELS; zoom++) {
+            assertEquals("zoom " + zoom, bruteForceMax(remaining, zoom), pyramid.getMax(zoom),
+                    1e-9);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for ParallelTileProvider
+ */
+public class ParallelTileProviderTest extends TestCase {
+
+    /**
+     * Renders tiles once released, counting them
+     */
+    private static class BlockingProvider implements TileProvider {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Tile getTile(int x, int y, int zoom) {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Tile(1, 1, new byte[]{(byte) x, (byte) y, (byte) zoom});
+        }
+    }
+
+    /**
+     * Requests a tile on another thread
+     */
+    private static Thread request(final TileProvider provider, final int x, final int y,
+                                  final int zoom, final AtomicReference<Tile> result) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.set(provider.getTile(x, y, zoom));
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    public void testCoalescing() throws InterruptedException {
+        BlockingProvider blocking = new BlockingProvider();
+        ParallelTileProvider provider = new ParallelTileProvider(blocking, 2);
+        AtomicReference<Tile> first = new AtomicReference<Tile>();
+        AtomicReference<Tile> second = new AtomicReference<Tile>();
+
+        Thread firstThread = request(provider, 1, 2, 3, first);
+        assertTrue(blocking.started.await(10, TimeUnit.SECONDS));
+        Thread secondThread = request(provider, 1, 2, 3, second);
+        while (provider.getCoalescedCount() == 0) {
+            Thread.sleep(1);
+        }
+        blocking.release.countDown();
+        firstThread.join();
+        secondThread.join();
+
+        assertEquals(1, blocking.calls.get());
+        assertSame(first.get(), second.get());
+        assertEquals(1, provider.getRenderCount());
+        // Waiting requests may return just before the task leaves the in-flight map
+        for (int i = 0; i < 1000 && provider.getInFlightCount() > 0; i++) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, provider.getInFlightCount());
+        provider.shutdown();
+    }
+
+    public void testCancelOffScreen() throws InterruptedException {
+        BlockingProvider blocking = new BlockingProvider();
+        ParallelTileProvider provider = new ParallelTileProvider(blocking, 1);
+        AtomicReference<Tile> first = new AtomicReference<Tile>();
+        AtomicReference<Tile> queued = new AtomicReference<Tile>(new Tile(0, 0, null));
+
+        Thread firstThread = request(provider, 0, 0, 3, first);
+        assertTrue(blocking.started.await(10, TimeUnit.SECONDS));
+        Thread queuedThread = request(provider, 7, 7, 3, queued);
+        while (provider.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+
+        // Only the north west of the world is visible
+        provider.setVisibleRegion(new LatLngBounds(new LatLng(60, -170), new LatLng(80, -150)), 3);
+        queuedThread.join();
+        assertNull(queued.get());
+        assertEquals(0, provider.getQueueDepth());
+
+        blocking.release.countDown();
+        firstThread.join();
+        assertNotNull(first.get());
+        assertEquals(1, blocking.calls.get());
+        provider.shutdown();
+    }
+
+    public void testNotVisible() {
+        BlockingProvider blocking = new BlockingProvider();
+        blocking.release.countDown();
+        ParallelTileProvider provider = new ParallelTileProvider(blocking, 1);
+        // Across the antimeridian
+        provider.setVisibleRegion(new LatLngBounds(new LatLng(-10, 170), new LatLng(10, -170)), 4);
+
+        assertNull(provider.getTile(7, 7, 4));
+        assertNull(provider.getTile(0, 7, 3));
+        assertNotNull(provider.getTile(0, 7, 4));
+        assertNotNull(provider.getTile(15, 8, 4));
+        assertEquals(2, provider.getCancelledCount());
+        provider.shutdown();
+    }
+
+    public void testRejectedAfterShutdown() throws InterruptedException {
+        BlockingProvider blocking = new BlockingProvider();
+        blocking.release.countDown();
+        ParallelTileProvider provider = new ParallelTileProvider(blocking, 1);
+        provider.shutdown();
+
+        // The same tile twice: the second request must not wait on the first, rejected one
+        for (int i = 0; i < 2; i++) {
+            AtomicReference<Tile> result = new AtomicReference<Tile>(new Tile(0, 0, null));
+            Thread thread = request(provider, 1, 2, 3, result);
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+            assertNull(result.get());
+        }
+        assertEquals(0, provider.getInFlightCount());
+        assertEquals(0, blocking.calls.get());
+    }
+
+    public void testQueuedCancelledOnShutdown() throws InterruptedException {
+        BlockingProvider blocking = new BlockingProvider();
+        ParallelTileProvider provider = new ParallelTileProvider(blocking, 1);
+        AtomicReference<Tile> first = new AtomicReference<Tile>();
+        AtomicReference<Tile> queued = new AtomicReference<Tile>(new Tile(0, 0, null));
+
+        Thread firstThread = request(provider, 0, 0, 3, first);
+        assertTrue(blocking.started.await(10, TimeUnit.SECONDS));
+        Thread queuedThread = request(provider, 7, 7, 3, queued);
+        while (provider.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+
+        provider.shutdown();
+        queuedThread.join(10000);
+        assertFalse(queuedThread.isAlive());
+        assertNull(queued.get());
+        blocking.release.countDown();
+        firstThread.join();
+        assertEquals(1, blocking.calls.get());
+    }
+}
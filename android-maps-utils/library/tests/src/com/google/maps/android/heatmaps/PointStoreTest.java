@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for rendering heatmaps from a WeightedPointStore
+ */
+public class PointStoreTest extends TestCase {
+
+    private List<WeightedLatLng> mData;
+
+    public void setUp() {
+        mData = new ArrayList<WeightedLatLng>();
+        Random random = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            mData.add(new WeightedLatLng(new LatLng(59.9 + random.nextDouble() * 0.1,
+                    30.3 + random.nextDouble() * 0.1), 1 + random.nextInt(3)));
+        }
+        // Near the antimeridian
+        for (int i = 0; i < 20; i++) {
+            mData.add(new WeightedLatLng(new LatLng(random.nextDouble(),
+                    179.99 + random.nextDouble() * 0.01)));
+        }
+    }
+
+    public void testStore() {
+        ColumnarPointStore store = ColumnarPointStore.fromWeightedLatLngs(mData);
+        assertEquals(mData.size(), store.size());
+        for (int i = 0; i < mData.size(); i++) {
+            assertEquals(mData.get(i).getPoint().x, store.getX(i));
+            assertEquals(mData.get(i).getPoint().y, store.getY(i));
+            assertEquals(mData.get(i).getIntensity(), store.getIntensity(i));
+        }
+
+        ColumnarPointStore latLngs = new ColumnarPointStore(1);
+        latLngs.add(new LatLng(10, 20));
+        latLngs.add(new LatLng(30, 40), -1);
+        latLngs.trimToSize();
+        assertEquals(2, latLngs.size());
+        assertEquals(new WeightedLatLng(new LatLng(30, 40)).getPoint().x, latLngs.getX(1));
+        assertEquals(WeightedLatLng.DEFAULT_INTENSITY, latLngs.getIntensity(1));
+    }
+
+    public void testSameTilesAsWeightedData() {
+        HeatmapTileProvider objects = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .build();
+        HeatmapTileProvider store = new HeatmapTileProvider.Builder()
+                .pointStore(ColumnarPointStore.fromWeightedLatLngs(mData))
+                .build();
+        // From the pyramid, from the points, and across the antimeridian
+        for (int zoom : new int[]{8, 13}) {
+            for (WeightedLatLng l : new WeightedLatLng[]{mData.get(0), mData.get(310)}) {
+                int x = (int) (l.getPoint().x * (1 << zoom));
+                int y = (int) (l.getPoint().y * (1 << zoom));
+                for (int dx = 0; dx <= 1; dx++) {
+                    int wrappedX = (x + dx) % (1 << zoom);
+                    byte[] tile = store.getTile(wrappedX, y, zoom).data;
+                    if (dx == 0) {
+                        assertNotNull(tile);
+                    }
+                    assertTrue(Arrays.equals(objects.getTile(wrappedX, y, zoom).data, tile));
+                }
+            }
+        }
+    }
+
+    public void testNoIncrementalChanges() {
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .pointStore(ColumnarPointStore.fromWeightedLatLngs(mData))
+                .build();
+        try {
+            provider.addWeightedData(Collections.singletonList(mData.get(0)));
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        // Switching back to weighted data allows it again
+        provider.setWeightedData(mData);
+        provider.removeWeightedData(Collections.singletonList(mData.get(0)));
+    }
+}
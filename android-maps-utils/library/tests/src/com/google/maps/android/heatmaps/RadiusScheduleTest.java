@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for heatmap radii that change with the zoom level
+ */
+public class RadiusScheduleTest extends TestCase {
+
+    private List<WeightedLatLng> mData;
+
+    public void setUp() {
+        mData = new ArrayList<WeightedLatLng>();
+        Random random = new Random(3);
+        for (int i = 0; i < 400; i++) {
+            mData.add(new WeightedLatLng(new LatLng(48.8 + random.nextDouble() * 0.1,
+                    2.3 + random.nextDouble() * 0.1), 1 + random.nextInt(3)));
+        }
+    }
+
+    public void testFixed() {
+        RadiusSchedule schedule = RadiusSchedule.fixed(25);
+        assertEquals(25, schedule.getRadius(0));
+        assertEquals(25, schedule.getRadius(21));
+        assertEquals(25, schedule.getMaxRadius());
+        try {
+            RadiusSchedule.fixed(5);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testPerZoom() {
+        RadiusSchedule schedule = RadiusSchedule.perZoom(5, 10, 20);
+        assertEquals(5, schedule.getRadius(0));
+        assertEquals(10, schedule.getRadius(1));
+        assertEquals(20, schedule.getRadius(2));
+        assertEquals(20, schedule.getRadius(21));
+        assertEquals(20, schedule.getMaxRadius());
+        try {
+            RadiusSchedule.perZoom(10, 60);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testMeters() {
+        RadiusSchedule schedule = RadiusSchedule.meters(500, 0);
+        // Zoomed out, half a kilometre is less than a pixel
+        assertEquals(1, schedule.getRadius(0));
+        // A pixel of zoom level 12 spans about 19 m at the equator
+        assertEquals(26, schedule.getRadius(12), 1);
+        assertEquals(schedule.getRadius(11) * 2, schedule.getRadius(12), 1);
+        assertEquals(50, schedule.getRadius(13));
+        assertEquals(50, schedule.getMaxRadius());
+
+        // Pixels span fewer metres away from the equator, so the same distance takes more
+        assertTrue(RadiusSchedule.meters(500, 60).getRadius(11) > schedule.getRadius(11));
+    }
+
+    public void testSameTilesAsFixedRadius() {
+        int[] radii = new int[14];
+        Arrays.fill(radii, 15);
+        radii[13] = 30;
+        HeatmapTileProvider scheduled = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .radiusSchedule(RadiusSchedule.perZoom(radii))
+                .build();
+
+        // From the pyramid and from the points
+        for (int zoom : new int[]{8, 13}) {
+            HeatmapTileProvider fixed = new HeatmapTileProvider.Builder()
+                    .weightedData(mData)
+                    .radius(radii[zoom])
+                    .build();
+            int x = (int) (mData.get(0).getPoint().x * (1 << zoom));
+            int y = (int) (mData.get(0).getPoint().y * (1 << zoom));
+            byte[] tile = fixed.getTile(x, y, zoom).data;
+            assertNotNull(tile);
+            assertTrue(Arrays.equals(tile, scheduled.getTile(x, y, zoom).data));
+        }
+    }
+
+    public void testMaxima() {
+        RadiusSchedule schedule = RadiusSchedule.perZoom(10, 10, 10, 20, 20, 30, 10);
+        double[] max = MaxIntensityPyramids.computeMaxima(mData,
+                HeatmapTileProvider.MAX_ZOOM_LEVEL, schedule, HeatmapTileProvider.TILE_DIM);
+        for (int radius : new int[]{10, 20, 30}) {
+            double[] expected = MaxIntensityPyramid.computeMaxima(mData,
+                    HeatmapTileProvider.MAX_ZOOM_LEVEL, radius, HeatmapTileProvider.TILE_DIM);
+            for (int zoom = 0; zoom < max.length; zoom++) {
+                if (schedule.getRadius(zoom) == radius) {
+                    assertEquals(expected[zoom], max[zoom], 1e-9);
+                }
+            }
+        }
+    }
+}
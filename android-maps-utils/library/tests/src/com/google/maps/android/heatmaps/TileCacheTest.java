@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Tile;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the tile cache of HeatmapTileProvider
+ */
+public class TileCacheTest extends TestCase {
+
+    private HeatmapTileProvider mProvider;
+
+    private int mTileX;
+
+    private int mTileY;
+
+    public void setUp() {
+        List<WeightedLatLng> data = new ArrayList<WeightedLatLng>();
+        for (int i = 0; i < 100; i++) {
+            data.add(new WeightedLatLng(new LatLng(59.9 + i * 0.001, 30.3 + i * 0.001)));
+        }
+        mProvider = new HeatmapTileProvider.Builder()
+                .weightedData(data)
+                .tileCacheSize(16 * 1024 * 1024)
+                .build();
+        WeightedLatLng centre = data.get(50);
+        mTileX = (int) (centre.getPoint().x * (1 << 12));
+        mTileY = (int) (centre.getPoint().y * (1 << 12));
+    }
+
+    public void testHitAndMiss() {
+        Tile first = mProvider.getTile(mTileX, mTileY, 12);
+        assertEquals(0, mProvider.getTileCacheHitCount());
+        assertEquals(1, mProvider.getTileCacheMissCount());
+
+        assertSame(first, mProvider.getTile(mTileX, mTileY, 12));
+        assertEquals(1, mProvider.getTileCacheHitCount());
+        assertEquals(1, mProvider.getTileCacheMissCount());
+    }
+
+    public void testInvalidatedBySetters() {
+        Tile tile = mProvider.getTile(mTileX, mTileY, 12);
+
+        mProvider.setRadius(30);
+        Tile afterRadius = mProvider.getTile(mTileX, mTileY, 12);
+        assertNotSame(tile, afterRadius);
+
+        mProvider.setOpacity(0.5);
+        Tile afterOpacity = mProvider.getTile(mTileX, mTileY, 12);
+        assertNotSame(afterRadius, afterOpacity);
+
+        mProvider.setGradient(HeatmapTileProvider.DEFAULT_GRADIENT);
+        Tile afterGradient = mProvider.getTile(mTileX, mTileY, 12);
+        assertNotSame(afterOpacity, afterGradient);
+
+        List<WeightedLatLng> data = new ArrayList<WeightedLatLng>();
+        data.add(new WeightedLatLng(new LatLng(59.95, 30.35)));
+        mProvider.setWeightedData(data);
+        assertNotSame(afterGradient, mProvider.getTile(mTileX, mTileY, 12));
+
+        assertEquals(0, mProvider.getTileCacheHitCount());
+        assertEquals(5, mProvider.getTileCacheMissCount());
+        assertTrue(mProvider.getTileCacheEvictionCount() >= 4);
+    }
+
+    public void testInvalidatedByDataChange() {
+        Tile tile = mProvider.getTile(mTileX, mTileY, 12);
+        mProvider.getTile(mTileX + 100, mTileY, 12);
+        assertEquals(0, mProvider.getTileCacheEvictionCount());
+
+        mProvider.addWeightedData(java.util.Collections.singletonList(
+                new WeightedLatLng(new LatLng(59.95, 30.35))));
+        // Only the tile around the change is dropped
+        assertEquals(1, mProvider.getTileCacheEvictionCount());
+        assertNotSame(tile, mProvider.getTile(mTileX, mTileY, 12));
+        mProvider.getTile(mTileX + 100, mTileY, 12);
+        assertEquals(1, mProvider.getTileCacheHitCount());
+    }
+
+    public void testByteBudget() {
+        HeatmapTileProvider small = new HeatmapTileProvider.Builder()
+                .data(java.util.Collections.singletonList(new LatLng(59.95, 30.35)))
+                .tileCacheSize(1)
+                .build();
+        WeightedLatLng point = new WeightedLatLng(new LatLng(59.95, 30.35));
+        int x = (int) (point.getPoint().x * (1 << 12));
+        int y = (int) (point.getPoint().y * (1 << 12));
+        // An encoded tile never fits in one byte, so it is evicted straight away
+        small.getTile(x, y, 12);
+        assertEquals(1, small.getTileCacheEvictionCount());
+        small.getTile(x, y, 12);
+        assertEquals(0, small.getTileCacheHitCount());
+        assertEquals(2, small.getTileCacheMissCount());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import android.graphics.Color;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Tests for the PNG tile encoders
+ */
+public class TileEncoderTest extends TestCase {
+
+    private static final int DIM = 16;
+
+    private int[] mPixels;
+
+    private int[] mPalette;
+
+    public void setUp() {
+        mPalette = new int[]{Color.TRANSPARENT, Color.argb(128, 255, 0, 0),
+                Color.argb(255, 0, 255, 0), Color.argb(255, 0, 0, 255)};
+        mPixels = new int[DIM * DIM];
+        for (int i = 0; i < mPixels.length; i++) {
+            mPixels[i] = (i / DIM + i % DIM) % mPalette.length;
+        }
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+    /**
+     * Finds a chunk, checking the CRC of every chunk on the way
+     *
+     * @return the chunk's data, or null if it isn't there
+     */
+    private static byte[] chunk(byte[] png, String type) {
+        int offset = 8;
+        while (offset < png.length) {
+            int length = readInt(png, offset);
+            String chunkType = new String(png, offset + 4, 4);
+            CRC32 crc = new CRC32();
+            crc.update(png, offset + 4, 4 + length);
+            assertEquals((int) crc.getValue(), readInt(png, offset + 8 + length));
+            if (chunkType.equals(type)) {
+                return Arrays.copyOfRange(png, offset + 8, offset + 8 + length);
+            }
+            offset += 12 + length;
+        }
+        return null;
+    }
+
+    private static byte[] inflate(byte[] data) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    public void testRgba() throws DataFormatException {
+        byte[] png = new PngTileEncoder().encode(mPixels, DIM, mPalette);
+        assertEquals((byte) 137, png[0]);
+        assertEquals("PNG", new String(png, 1, 3));
+
+        byte[] header = chunk(png, "IHDR");
+        assertEquals(DIM, readInt(header, 0));
+        assertEquals(DIM, readInt(header, 4));
+        assertEquals(8, header[8]);
+        assertEquals(6, header[9]);
+        assertNotNull(chunk(png, "IEND"));
+
+        byte[] raw = inflate(chunk(png, "IDAT"));
+        assertEquals(DIM * (1 + 4 * DIM), raw.length);
+        for (int y = 0; y < DIM; y++) {
+            assertEquals(0, raw[y * (1 + 4 * DIM)]);
+            for (int x = 0; x < DIM; x++) {
+                int color = mPalette[mPixels[y * DIM + x]];
+                int offset = y * (1 + 4 * DIM) + 1 + 4 * x;
+                assertEquals(Color.red(color), raw[offset] & 0xff);
+                assertEquals(Color.green(color), raw[offset + 1] & 0xff);
+                assertEquals(Color.blue(color), raw[offset + 2] & 0xff);
+                assertEquals(Color.alpha(color), raw[offset + 3] & 0xff);
+            }
+        }
+    }
+
+    public void testIndexed() throws DataFormatException {
+        byte[] png = new IndexedPngTileEncoder(9).encode(mPixels, DIM, mPalette);
+        assertEquals(3, chunk(png, "IHDR")[9]);
+
+        byte[] rgb = chunk(png, "PLTE");
+        byte[] alpha = chunk(png, "tRNS");
+        assertEquals(3 * mPalette.length, rgb.length);
+        assertEquals(mPalette.length, alpha.length);
+        assertEquals(128, alpha[1] & 0xff);
+        assertEquals(255, rgb[3] & 0xff);
+
+        byte[] raw = inflate(chunk(png, "IDAT"));
+        assertEquals(DIM * (1 + DIM), raw.length);
+        for (int y = 0; y < DIM; y++) {
+            for (int x = 0; x < DIM; x++) {
+                assertEquals(mPixels[y * DIM + x], raw[y * (1 + DIM) + 1 + x]);
+            }
+        }
+    }
+
+    public void testPaletteReduction() {
+        int[] palette = new int[1001];
+        for (int i = 1; i < palette.length; i++) {
+            palette[i] = Color.argb(255, i % 256, i / 256, 0);
+        }
+        IndexedPngTileEncoder.ReducedPalette reduced =
+                new IndexedPngTileEncoder.ReducedPalette(palette);
+        assertEquals(3 * 256, reduced.mRgb.length);
+        // Transparent stays apart, the ends of the color map are kept
+        assertEquals(0, reduced.mIndices[0]);
+        assertEquals(1, reduced.mIndices[1]);
+        assertEquals(255, reduced.mIndices[1000] & 0xff);
+        assertEquals(0, reduced.mAlpha[0]);
+        // Indices stay in order
+        for (int i = 2; i < palette.length; i++) {
+            int step = (reduced.mIndices[i] & 0xff) - (reduced.mIndices[i - 1] & 0xff);
+            assertTrue(step == 0 || step == 1);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for fading out heatmap points as they age
+ */
+public class TimeDecayTest extends TestCase {
+
+    private static final long NOW = 10000;
+
+    private List<WeightedLatLng> mData;
+
+    public void setUp() {
+        mData = new ArrayList<WeightedLatLng>();
+        Random random = new Random(7);
+        for (int i = 0; i < 400; i++) {
+            mData.add(new WeightedLatLng(new LatLng(59.9 + random.nextDouble() * 0.1,
+                    30.3 + random.nextDouble() * 0.1), 1 + random.nextInt(3),
+                    NOW - random.nextInt(2000)));
+        }
+    }
+
+    public void testExponentialDecay() {
+        TimeDecay decay = new ExponentialDecay(100);
+        assertEquals(1.0, decay.getWeight(0), 1e-9);
+        assertEquals(0.5, decay.getWeight(100), 1e-9);
+        assertEquals(0.125, decay.getWeight(300), 1e-9);
+        assertEquals(0.0, decay.getWeight(-1));
+    }
+
+    public void testLinearDecay() {
+        TimeDecay decay = new LinearDecay(100);
+        assertEquals(1.0, decay.getWeight(0), 1e-9);
+        assertEquals(0.25, decay.getWeight(75), 1e-9);
+        assertEquals(0.0, decay.getWeight(100));
+        assertEquals(0.0, decay.getWeight(-1));
+    }
+
+    public void testSameTilesAsDecayedWeights() {
+        TimeDecay decay = new ExponentialDecay(500);
+        ColumnarPointStore decayedStore = new ColumnarPointStore();
+        for (WeightedLatLng l : mData) {
+            decayedStore.addPoint(l.getPoint().x, l.getPoint().y,
+                    l.getIntensity() * decay.getWeight(NOW - l.getTime()));
+        }
+        HeatmapTileProvider expected = new HeatmapTileProvider.Builder()
+                .pointStore(decayedStore)
+                .build();
+        HeatmapTileProvider objects = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .timeDecay(decay)
+                .now(NOW)
+                .build();
+        HeatmapTileProvider timed = new HeatmapTileProvider.Builder()
+                .pointStore(TimedPointStore.fromWeightedLatLngs(mData, 100))
+                .timeDecay(decay)
+                .now(NOW)
+                .build();
+
+        // From the pyramid and from the points
+        for (int zoom : new int[]{8, 13}) {
+            int x = (int) (mData.get(0).getPoint().x * (1 << zoom));
+            int y = (int) (mData.get(0).getPoint().y * (1 << zoom));
+            byte[] tile = expected.getTile(x, y, zoom).data;
+            assertNotNull(tile);
+            assertTrue(Arrays.equals(tile, objects.getTile(x, y, zoom).data));
+            assertTrue(Arrays.equals(tile, timed.getTile(x, y, zoom).data));
+        }
+    }
+
+    public void testRefreshOnSchedule() {
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .timeDecay(new LinearDecay(1000))
+                .now(NOW)
+                .decayRefreshInterval(100)
+                .build();
+        int x = (int) (mData.get(0).getPoint().x * (1 << 13));
+        int y = (int) (mData.get(0).getPoint().y * (1 << 13));
+        byte[] tile = provider.getTile(x, y, 13).data;
+
+        // Ticks within the interval keep the tiles
+        assertFalse(provider.setNow(NOW + 60));
+        assertFalse(provider.setNow(NOW + 99));
+        assertTrue(Arrays.equals(tile, provider.getTile(x, y, 13).data));
+
+        assertTrue(provider.setNow(NOW + 400));
+        assertFalse(Arrays.equals(tile, provider.getTile(x, y, 13).data));
+    }
+}
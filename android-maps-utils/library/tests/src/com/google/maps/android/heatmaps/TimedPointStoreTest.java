@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.TileProvider;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for rendering time windows of a TimedPointStore
+ */
+public class TimedPointStoreTest extends TestCase {
+
+    private List<WeightedLatLng> mData;
+
+    public void setUp() {
+        mData = new ArrayList<WeightedLatLng>();
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            mData.add(new WeightedLatLng(new LatLng(59.9 + random.nextDouble() * 0.1,
+                    30.3 + random.nextDouble() * 0.1), 1 + random.nextInt(3),
+                    random.nextInt(1200) - 200));
+        }
+    }
+
+    public void testSortedByTime() {
+        TimedPointStore store = TimedPointStore.fromWeightedLatLngs(mData, 100);
+        assertEquals(mData.size(), store.size());
+        for (int i = 1; i < store.size(); i++) {
+            assertTrue(store.getTime(i - 1) <= store.getTime(i));
+        }
+        // Times in [-200, 1000)
+        assertEquals(12, store.getBucketCount());
+        assertEquals(0, store.indexOf(-1000));
+        assertEquals(store.size(), store.indexOf(1000));
+        assertTrue(store.getTime(store.indexOf(300)) >= 300);
+        assertTrue(store.getTime(store.indexOf(300) - 1) < 300);
+    }
+
+    public void testWindowMatchesPointsOfWindow() {
+        HeatmapTileProvider timed = new HeatmapTileProvider.Builder()
+                .pointStore(TimedPointStore.fromWeightedLatLngs(mData, 100))
+                .build();
+        // Whole buckets, and windows cutting through buckets
+        long[][] windows = {{0, 300}, {-150, 420}, {550, 580}};
+        for (long[] window : windows) {
+            timed.setTimeWindow(window[0], window[1]);
+
+            List<WeightedLatLng> inWindow = new ArrayList<WeightedLatLng>();
+            for (WeightedLatLng l : mData) {
+                if (l.getTime() >= window[0] && l.getTime() < window[1]) {
+                    inWindow.add(l);
+                }
+            }
+            HeatmapTileProvider expected = new HeatmapTileProvider.Builder()
+                    .weightedData(inWindow)
+                    .build();
+
+            // From the pyramid and from the points
+            for (int zoom : new int[]{8, 13}) {
+                WeightedLatLng l = inWindow.get(0);
+                int x = (int) (l.getPoint().x * (1 << zoom));
+                int y = (int) (l.getPoint().y * (1 << zoom));
+                byte[] tile = timed.getTile(x, y, zoom).data;
+                assertNotNull(tile);
+                assertTrue(Arrays.equals(expected.getTile(x, y, zoom).data, tile));
+            }
+        }
+    }
+
+    public void testEmptyWindow() {
+        HeatmapTileProvider timed = new HeatmapTileProvider.Builder()
+                .pointStore(TimedPointStore.fromWeightedLatLngs(mData, 100))
+                .build();
+        timed.setTimeWindow(5000, 6000);
+        int x = (int) (mData.get(0).getPoint().x * (1 << 13));
+        int y = (int) (mData.get(0).getPoint().y * (1 << 13));
+        assertSame(TileProvider.NO_TILE, timed.getTile(x, y, 13));
+    }
+
+    public void testTimeWindowNeedsTimedStore() {
+        HeatmapTileProvider provider = new HeatmapTileProvider.Builder()
+                .weightedData(mData)
+                .build();
+        try {
+            provider.setTimeWindow(0, 100);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
@@ -139,4 +139,35 @@ public class UtilTest extends TestCase {
         expected = new Bounds(x3, x2, y2, y3);
         assertTrue(bounds.contains(expected) && expected.contains(bounds));
     }
+
+    public void testColorize() {
+        float[] grid = {0, 1, 2, 4};
+        int[] pixels = {-1, -1, -1, -1};
+        GridExtent extent = new GridExtent();
+        extent.include(0, 0);
+        extent.include(1, 1);
+        HeatmapTileProvider.colorize(grid, 2, 5, 2, extent, pixels);
+        // 0 is transparent, values past the maximum get the last color
+        assertTrue(Arrays.equals(new int[]{0, 3, 5, 5}, pixels));
+    }
+
+    public void testColorizeSkipsOutsideExtent() {
+        float[] grid = new float[16];
+        Arrays.fill(grid, 1);
+        int[] pixels = new int[16];
+        Arrays.fill(pixels, -1);
+        GridExtent extent = new GridExtent();
+        extent.include(1, -5);
+        extent.include(2, 1);
+        HeatmapTileProvider.colorize(grid, 4, 3, 1, extent, pixels);
+        assertTrue(Arrays.equals(new int[]{
+                0, 3, 3, 0,
+                0, 3, 3, 0,
+                0, 0, 0, 0,
+                0, 0, 0, 0}, pixels));
+
+        Arrays.fill(pixels, -1);
+        HeatmapTileProvider.colorize(grid, 4, 3, 1, new GridExtent(), pixels);
+        assertTrue(Arrays.equals(new int[16], pixels));
+    }
 }
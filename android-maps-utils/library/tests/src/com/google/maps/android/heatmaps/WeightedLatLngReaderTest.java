@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.heatmaps;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.geometry.Bounds;
+import com.google.maps.android.quadtree.PointQuadTree;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Tests for streaming weighted points from JSON
+ */
+public class WeightedLatLngReaderTest extends TestCase {
+
+    private static WeightedLatLngReader reader(String json) {
+        return new WeightedLatLngReader(new ByteArrayInputStream(json.getBytes()));
+    }
+
+    public void testRead() throws IOException {
+        WeightedLatLngReader reader = reader(" [{\"lat\": 59.844715, \"lng\": 30.229946, "
+                + "\"weight\": 1.25},\n{\"lng\":-0.5,\"lat\":-12}, {\"lat\": 1e1, \"lng\": 2.5E-1,"
+                + " \"weight\": 3}]\n");
+        assertTrue(reader.next());
+        assertEquals(59.844715, reader.getLatitude());
+        assertEquals(30.229946, reader.getLongitude());
+        assertEquals(1.25, reader.getWeight());
+        assertTrue(reader.next());
+        assertEquals(-12.0, reader.getLatitude());
+        assertEquals(-0.5, reader.getLongitude());
+        assertEquals(WeightedLatLng.DEFAULT_INTENSITY, reader.getWeight());
+        assertTrue(reader.next());
+        assertEquals(10.0, reader.getLatitude());
+        assertEquals(0.25, reader.getLongitude());
+        assertEquals(3.0, reader.getWeight());
+        assertFalse(reader.next());
+        assertFalse(reader.next());
+
+        assertFalse(reader("[ ]").next());
+    }
+
+    public void testSkipsOtherKeys() throws IOException {
+        WeightedLatLngReader reader = reader("[{\"name\": \"a \\\"}]\", \"lat\": 1, "
+                + "\"tags\": [{\"lat\": 5}, [], \"]\"], \"la\": 7, \"lngs\": 8, \"\\u006cat\": 9, "
+                + "\"ok\": true, \"none\": null, \"lng\": 2}]");
+        assertTrue(reader.next());
+        assertEquals(1.0, reader.getLatitude());
+        assertEquals(2.0, reader.getLongitude());
+        assertFalse(reader.next());
+    }
+
+    public void testSameAsParseDouble() throws IOException {
+        Random random = new Random(5);
+        StringBuilder json = new StringBuilder("[");
+        double[] expected = new double[3000];
+        String[] formats = {"%.6f", "%.13f", "%.17f", "%.3e"};
+        for (int i = 0; i < expected.length; i++) {
+            String number = String.format(Locale.US, formats[i % formats.length],
+                    (random.nextDouble() - 0.5) * 360);
+            expected[i] = Double.parseDouble(number);
+            json.append(i == 0 ? "" : ",").append("{\"lat\":0,\"lng\":").append(number)
+                    .append("}");
+        }
+        json.append("]");
+        WeightedLatLngReader reader = reader(json.toString());
+        for (double value : expected) {
+            assertTrue(reader.next());
+            assertEquals(value, reader.getLongitude());
+        }
+        assertFalse(reader.next());
+    }
+
+    public void testMalformed() {
+        String[] inputs = {"", "{}", "[{\"lat\": 1}]", "[{\"lat\": 1, \"lng\": 2}",
+                "[{\"lat\": 1, \"lng\": 2} {\"lat\": 1, \"lng\": 2}]", "[{\"lat\": x, \"lng\": 2}]",
+                "[{\"lat\": 1, \"lng\": 2, \"weight\": }]", "[{\"lat\" 1, \"lng\": 2}]",
+                "[{\"lat\": 1, \"lng\": 2, \"name\": \"a}]"};
+        for (String input : inputs) {
+            try {
+                WeightedLatLngReader reader = reader(input);
+                while (reader.next()) {
+                    // read all
+                }
+                fail(input);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testReadInto() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i == 0 ? "" : ", ").append("{\"lat\": ").append(-45 + i * 0.09)
+                    .append(", \"lng\": ").append(-90 + i * 0.18).append(", \"weight\": ")
+                    .append(1 + i % 3).append("}");
+        }
+        json.append("]");
+
+        ColumnarPointStore store = new ColumnarPointStore();
+        assertEquals(1000, reader(json.toString()).readInto(store));
+        assertEquals(1000, store.size());
+        ColumnarPointStore expected = new ColumnarPointStore();
+        expected.add(new LatLng(-45 + 999 * 0.09, -90 + 999 * 0.18), 1 + 999 % 3);
+        assertEquals(expected.getX(0), store.getX(999), 1e-12);
+        assertEquals(expected.getY(0), store.getY(999), 1e-12);
+        assertEquals(expected.getIntensity(0), store.getIntensity(999));
+
+        PointQuadTree<WeightedLatLng> tree = new PointQuadTree<WeightedLatLng>(0, 1, 0, 1);
+        assertEquals(1000, reader(json.toString()).readInto(tree));
+        assertEquals(1000, tree.search(new Bounds(0, 1, 0, 1)).size());
+    }
+
+    public void testSmallReads() throws IOException {
+        // Inputs may return fewer bytes than asked for
+        final byte[] json = "[{\"lat\": 12.5, \"lng\": 30.25, \"weight\": 2}]".getBytes();
+        InputStream in = new InputStream() {
+            private int mPosition;
+
+            @Override
+            public int read() {
+                return mPosition < json.length ? json[mPosition++] : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                int c = read();
+                if (c < 0) {
+                    return -1;
+                }
+                buffer[offset] = (byte) c;
+                return 1;
+            }
+        };
+        WeightedLatLngReader reader = new WeightedLatLngReader(in);
+        assertTrue(reader.next());
+        assertEquals(12.5, reader.getLatitude());
+        assertEquals(30.25, reader.getLongitude());
+        assertEquals(2.0, reader.getWeight());
+        assertFalse(reader.next());
+    }
+}
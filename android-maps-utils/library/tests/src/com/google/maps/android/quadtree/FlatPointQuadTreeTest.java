@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.maps.android.quadtree;
+
+import com.google.maps.android.geometry.Bounds;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs the tests of PointQuadTree against FlatPointQuadTree, and compares the two.
+ */
+public class FlatPointQuadTreeTest extends PointQuadTreeTest {
+
+    @Override
+    PointTree<Item> createTree() {
+        return new FlatPointQuadTree<Item>(0, 1, 0, 1);
+    }
+
+    private static Map<Item, Integer> visit(PointTree<Item> tree, Bounds bounds,
+                                            double worldWidth) {
+        final Map<Item, Integer> visits = new HashMap<Item, Integer>();
+        tree.search(bounds, worldWidth, new PointQuadTree.Visitor<Item>() {
+            @Override
+            public void visit(Item item, double xOffset) {
+                Integer count = visits.get(item);
+                visits.put(item, (count == null ? 0 : count) + 1);
+            }
+        });
+        return visits;
+    }
+
+    /**
+     * Adds and removes the same items in both trees, including many at the same point, which
+     * reach the maximum depth, and checks that searches find the same items.
+     */
+    public void testSameAsPointQuadTree() {
+        PointQuadTree<Item> expected = new PointQuadTree<Item>(0, 1, 0, 1);
+        List<Item> items = new ArrayList<Item>();
+        Random random = new Random(17);
+        for (int i = 0; i < 20000; i++) {
+            Item item = i % 10 == 0 ? new Item(0.3, 0.3)
+                    : new Item(random.nextDouble(), random.nextDouble());
+            items.add(item);
+            expected.add(item);
+            mTree.add(item);
+        }
+        for (int i = 0; i < 8000; i++) {
+            Item item = items.remove(random.nextInt(items.size()));
+            assertTrue(expected.remove(item));
+            assertTrue(mTree.remove(item));
+            assertFalse(mTree.remove(item));
+        }
+        for (int i = 0; i < 2000; i++) {
+            Item item = new Item(random.nextDouble(), random.nextDouble());
+            expected.add(item);
+            mTree.add(item);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            double minX = random.nextDouble() * 1.2 - 0.1;
+            double minY = random.nextDouble();
+            Bounds bounds = new Bounds(minX, minX + random.nextDouble() / 3,
+                    minY, minY + random.nextDouble() / 3);
+            Collection<Item> found = mTree.search(bounds);
+            assertEquals(expected.search(bounds).size(), found.size());
+            assertEquals(new HashSet<Item>(expected.search(bounds)), new HashSet<Item>(found));
+            assertEquals(visit(expected, bounds, 1), visit(mTree, bounds, 1));
+        }
+        assertEquals(14000, mTree.search(new Bounds(0, 1, 0, 1)).size());
+        assertEquals(visit(expected, new Bounds(0.3, 0.3, 0.3, 0.3), 0).size(),
+                visit(mTree, new Bounds(0.3, 0.3, 0.3, 0.3), 0).size());
+
+        mTree.clear();
+        assertEquals(0, mTree.search(new Bounds(0, 1, 0, 1)).size());
+        mTree.add(items.get(0));
+        assertEquals(1, mTree.search(new Bounds(0, 1, 0, 1)).size());
+    }
+}
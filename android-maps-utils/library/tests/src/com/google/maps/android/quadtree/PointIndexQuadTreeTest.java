@@ -0,0 +1,298 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.maps.android.quadtree;
+
+import com.google.maps.android.geometry.Bounds;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class PointIndexQuadTreeTest extends TestCase {
+
+    /**
+     * Points in parallel arrays
+     */
+    private static class ArrayPointSet implements PointSet {
+        final double[] x;
+        final double[] y;
+
+        ArrayPointSet(double[] x, double[] y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public int size() {
+            return x.length;
+        }
+
+        @Override
+        public double getX(int index) {
+            return x[index];
+        }
+
+        @Override
+        public double getY(int index) {
+            return y[index];
+        }
+    }
+
+    private static class Collector implements PointIndexQuadTree.Visitor {
+        final List<Integer> indices = new ArrayList<Integer>();
+
+        @Override
+        public void visit(int index) {
+            indices.add(index);
+        }
+    }
+
+    private static List<Integer> search(PointIndexQuadTree tree, Bounds bounds) {
+        Collector collector = new Collector();
+        tree.search(bounds, collector);
+        Collections.sort(collector.indices);
+        return collector.indices;
+    }
+
+    private static ArrayPointSet randomPoints(int count, long seed) {
+        Random random = new Random(seed);
+        double[] x = new double[count];
+        double[] y = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = random.nextDouble();
+            y[i] = random.nextDouble();
+        }
+        return new ArrayPointSet(x, y);
+    }
+
+    public void testSearchMatchesBruteForce() {
+        ArrayPointSet points = randomPoints(10000, 42);
+        PointIndexQuadTree tree = new PointIndexQuadTree(points);
+        assertEquals(10000, tree.size());
+
+        Random random = new Random(7);
+        for (int i = 0; i < 20; i++) {
+            double minX = random.nextDouble();
+            double minY = random.nextDouble();
+            Bounds bounds = new Bounds(minX, minX + random.nextDouble() / 4,
+                    minY, minY + random.nextDouble() / 4);
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int j = 0; j < points.size(); j++) {
+                if (bounds.contains(points.getX(j), points.getY(j))) {
+                    expected.add(j);
+                }
+            }
+            assertEquals(expected, search(tree, bounds));
+        }
+        assertEquals(10000, search(tree, new Bounds(0, 1, 0, 1)).size());
+    }
+
+    public void testEmpty() {
+        PointIndexQuadTree tree = new PointIndexQuadTree(new ArrayPointSet(new double[0],
+                new double[0]));
+        assertEquals(0, search(tree, new Bounds(0, 1, 0, 1)).size());
+    }
+
+    public void testPointsOutsideBounds() {
+        ArrayPointSet points = new ArrayPointSet(new double[]{0.1, 0.5, 2},
+                new double[]{0.1, 0.5, 2});
+        PointIndexQuadTree tree = new PointIndexQuadTree(points, new Bounds(0, 1, 0, 1));
+        assertEquals(2, tree.size());
+        assertEquals(2, search(tree, new Bounds(-5, 5, -5, 5)).size());
+    }
+
+    public void testManyPointsInSameLocation() {
+        // Splitting can't separate them: the depth limit stops it
+        double[] x = new double[1000];
+        double[] y = new double[1000];
+        Arrays.fill(x, 0.25);
+        Arrays.fill(y, 0.75);
+        x[0] = 0;
+        y[0] = 0;
+        x[1] = 1;
+        y[1] = 1;
+        PointIndexQuadTree tree = new PointIndexQuadTree(new ArrayPointSet(x, y));
+        assertEquals(998, search(tree, new Bounds(0.2, 0.3, 0.7, 0.8)).size());
+    }
+
+    private static ByteBuffer snapshot(PointIndexQuadTree tree, long sourceHash)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tree.write(out, sourceHash);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    public void testSnapshot() throws IOException {
+        ArrayPointSet points = randomPoints(10000, 42);
+        PointIndexQuadTree tree = new PointIndexQuadTree(points);
+        long hash = PointIndexQuadTree.hash(points);
+        PointIndexQuadTree read = PointIndexQuadTree.read(points, snapshot(tree, hash), hash);
+        assertNotNull(read);
+        assertEquals(10000, read.size());
+        assertSame(points, read.getPoints());
+        assertEquals(tree.getBounds().minX, read.getBounds().minX);
+        assertEquals(tree.getBounds().maxY, read.getBounds().maxY);
+        Random random = new Random(9);
+        for (int i = 0; i < 20; i++) {
+            double minX = random.nextDouble();
+            double minY = random.nextDouble();
+            Bounds bounds = new Bounds(minX, minX + random.nextDouble() / 4,
+                    minY, minY + random.nextDouble() / 4);
+            assertEquals(search(tree, bounds), search(read, bounds));
+        }
+
+        PointIndexQuadTree empty = new PointIndexQuadTree(new ArrayPointSet(new double[0],
+                new double[0]));
+        read = PointIndexQuadTree.read(empty.getPoints(), snapshot(empty, 0), 0);
+        assertEquals(0, search(read, new Bounds(0, 1, 0, 1)).size());
+    }
+
+    public void testStaleSnapshot() throws IOException {
+        ArrayPointSet points = randomPoints(1000, 1);
+        ArrayPointSet changed = randomPoints(1000, 2);
+        assertTrue(PointIndexQuadTree.hash(points) != PointIndexQuadTree.hash(changed));
+        long hash = PointIndexQuadTree.hash(points);
+        ByteBuffer snapshot = snapshot(new PointIndexQuadTree(points), hash);
+        assertNull(PointIndexQuadTree.read(changed, snapshot, PointIndexQuadTree.hash(changed)));
+        assertNull(PointIndexQuadTree.read(randomPoints(999, 1), snapshot, hash));
+
+        try {
+            PointIndexQuadTree.read(points, ByteBuffer.wrap(new byte[100]), hash);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        snapshot.limit(snapshot.limit() - 4);
+        try {
+            PointIndexQuadTree.read(points, snapshot, hash);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testCorruptSnapshot() throws IOException {
+        ArrayPointSet points = randomPoints(200, 4);
+        ByteBuffer snapshot = snapshot(new PointIndexQuadTree(points), 1);
+        int orderLength = snapshot.getInt(20);
+        int quadCount = snapshot.getInt(24);
+        int body = 64;
+        int firstChild = body + 4 * (orderLength + 2 * quadCount);
+        assertTrue(quadCount > 1);
+
+        // A point index out of range
+        ByteBuffer corrupt = copy(snapshot);
+        corrupt.putInt(body, points.size());
+        assertCorrupt(points, corrupt);
+
+        // The root as its own child, which would make searches loop
+        corrupt = copy(snapshot);
+        corrupt.putInt(firstChild, 0);
+        assertCorrupt(points, corrupt);
+
+        // Any flipped byte is either rejected or still gives a tree that can be searched
+        for (int i = body; i < snapshot.limit(); i++) {
+            corrupt = copy(snapshot);
+            corrupt.put(i, (byte) ~corrupt.get(i));
+            PointIndexQuadTree read;
+            try {
+                read = PointIndexQuadTree.read(points, corrupt, 1);
+            } catch (IOException e) {
+                continue;
+            }
+            for (Integer point : search(read, new Bounds(0, 1, 0, 1))) {
+                assertTrue(point >= 0 && point < points.size());
+            }
+        }
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.limit()];
+        buffer.duplicate().get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static void assertCorrupt(PointSet points, ByteBuffer snapshot) {
+        try {
+            PointIndexQuadTree.read(points, snapshot, 1);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testLoad() throws IOException {
+        File file = File.createTempFile("index", ".bin");
+        try {
+            file.delete();
+            ArrayPointSet points = randomPoints(5000, 3);
+            Bounds bounds = new Bounds(0.2, 0.4, 0.5, 0.9);
+            List<Integer> expected = search(new PointIndexQuadTree(points), bounds);
+
+            // Built and written, then read
+            PointIndexQuadTree tree = PointIndexQuadTree.load(points, file, 1);
+            assertEquals(expected, search(tree, bounds));
+            assertTrue(file.exists());
+            long written = file.lastModified();
+            assertEquals(expected, search(PointIndexQuadTree.load(points, file, 1), bounds));
+            assertEquals(written, file.lastModified());
+
+            // Other points: built again
+            points.x[0] = 0.3;
+            points.y[0] = 0.6;
+            tree = PointIndexQuadTree.load(points, file, 2);
+            assertTrue(search(tree, bounds).contains(0));
+            assertNotNull(PointIndexQuadTree.read(points, snapshotOf(file), 2));
+
+            // Corrupt body: built again
+            RandomAccessFile output = new RandomAccessFile(file, "rw");
+            try {
+                output.seek(64);
+                output.writeInt(-1);
+            } finally {
+                output.close();
+            }
+            tree = PointIndexQuadTree.load(points, file, 2);
+            assertTrue(search(tree, bounds).contains(0));
+            assertNotNull(PointIndexQuadTree.read(points, snapshotOf(file), 2));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static ByteBuffer snapshotOf(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+}
@@ -21,15 +21,25 @@ import com.google.maps.android.geometry.Point;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 
 public class PointQuadTreeTest extends TestCase {
 
-    private PointQuadTree<Item> mTree;
+    PointTree<Item> mTree;
 
     public void setUp() {
-        mTree = new PointQuadTree<Item>(0, 1, 0, 1);
+        mTree = createTree();
+    }
+
+    /**
+     * @return an empty tree bounded by (0, 1, 0, 1), of the implementation under test
+     */
+    PointTree<Item> createTree() {
+        return new PointQuadTree<Item>(0, 1, 0, 1);
     }
 
     public void testAddOnePoint() {
@@ -114,6 +124,59 @@ public class PointQuadTreeTest extends TestCase {
         assertEquals(2, mTree.search(new Bounds(0.0, 0.5, 0.0, 1.0)).size());
     }
 
+    public void testVisitorSearch() {
+        Random random = new Random(5);
+        for (int i = 0; i < 5000; i++) {
+            mTree.add(new Item(random.nextDouble(), random.nextDouble()));
+        }
+        for (Bounds bounds : new Bounds[]{new Bounds(0.3, 0.6, 0.1, 0.4),
+                new Bounds(0.1, 0.2, 0.7, 0.9)}) {
+            final Collection<Item> visited = new ArrayList<Item>();
+            mTree.search(bounds, new PointQuadTree.Visitor<Item>() {
+                @Override
+                public void visit(Item item, double xOffset) {
+                    assertEquals(0.0, xOffset);
+                    visited.add(item);
+                }
+            });
+            Collection<Item> found = mTree.search(bounds);
+            assertEquals(found.size(), visited.size());
+            assertTrue(visited.containsAll(found));
+        }
+    }
+
+    public void testWraparoundSearch() {
+        mTree.add(new Item(0.05, 0.5));
+        mTree.add(new Item(0.5, 0.5));
+        mTree.add(new Item(0.95, 0.5));
+        mTree.add(new Item(0.98, 0.2));
+
+        // Across x = 0, the items near x = 1 come back with an offset of -1
+        final Map<Item, Double> offsets = new HashMap<Item, Double>();
+        PointQuadTree.Visitor<Item> visitor = new PointQuadTree.Visitor<Item>() {
+            @Override
+            public void visit(Item item, double xOffset) {
+                assertNull(offsets.put(item, xOffset));
+            }
+        };
+        mTree.search(new Bounds(-0.1, 0.1, 0.4, 0.6), 1, visitor);
+        assertEquals(2, offsets.size());
+        assertEquals(-1.0, offsets.get(new ArrayList<Item>(mTree.search(
+                new Bounds(0.9, 1, 0.4, 0.6))).get(0)));
+
+        // Across x = 1, the items near x = 0 come back with an offset of 1
+        offsets.clear();
+        mTree.search(new Bounds(0.9, 1.1, 0.4, 0.6), 1, visitor);
+        assertEquals(2, offsets.size());
+        assertEquals(1.0, offsets.get(new ArrayList<Item>(mTree.search(
+                new Bounds(0, 0.1, 0.4, 0.6))).get(0)));
+
+        // Without wrapping around, only the items within the bounds
+        offsets.clear();
+        mTree.search(new Bounds(0.9, 1.1, 0.4, 0.6), visitor);
+        assertEquals(1, offsets.size());
+    }
+
     /**
      * Tests 30,000 items at the same point.
      * Timing results are averaged.
@@ -192,10 +255,10 @@ public class PointQuadTreeTest extends TestCase {
         return mTree.search(new Bounds(0, 1, 0, 1));
     }
 
-    private static class Item implements PointQuadTree.Item {
+    static class Item implements PointQuadTree.Item {
         private final Point mPoint;
 
-        private Item(double x, double y) {
+        Item(double x, double y) {
             this.mPoint = new Point(x, y);
         }
 